@@ -16,11 +16,10 @@
 
 package org.ardverk.coding;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
-import org.ardverk.io.IoUtils;
+import org.ardverk.io.BufferPool;
 
 public class Base2 extends AbstractBaseCoder implements Serializable {
   
@@ -43,37 +42,70 @@ public class Base2 extends AbstractBaseCoder implements Serializable {
   
   @Override
   public byte[] encode(byte[] data, int offset, int length) {
+    checkRange(data, offset, length);
     
-    if (data == null) {
-      throw new NullPointerException("data");
-    }
+    byte[] dst = new byte[length * 8];
+    encode(data, offset, length, dst, 0);
+    return dst;
+  }
+  
+  /**
+   * Encodes the given data into a buffer from the given {@link BufferPool}.
+   * The returned {@link ByteBuffer}'s limit is the length of the encoded 
+   * data and its array should be released to the {@link BufferPool} once
+   * it's no longer needed.
+   */
+  public ByteBuffer encode(byte[] data, int offset, int length, 
+      BufferPool pool) {
+    checkRange(data, offset, length);
     
-    if (offset < 0 || length < 0 || (offset+length) > data.length) {
-      throw new IllegalArgumentException("offset=" + offset + ", length=" 
-          + length + ", data.length=" + data.length);
-    }
+    byte[] dst = pool.acquire(length * 8);
+    int count = encode(data, offset, length, dst, 0);
+    return ByteBuffer.wrap(dst, 0, count);
+  }
+  
+  /**
+   * Encodes the given data into the given {@code byte[]} and returns
+   * the number of bytes that were written.
+   */
+  public int encode(byte[] data, int offset, int length, 
+      byte[] dst, int dstOffset) {
+    checkRange(data, offset, length);
     
-    // For each input byte we will produce four output bytes!
-    ByteArrayOutputStream baos 
-      = new ByteArrayOutputStream(length * 4);
+    // For each input byte we will produce eight output bytes!
+    int count = length * 8;
+    if (dstOffset < 0 || (dstOffset+count) > dst.length) {
+      throw new IllegalArgumentException("dstOffset=" + dstOffset 
+          + ", count=" + count + ", dst.length=" + dst.length);
+    }
     
     int end = offset + length;
+    int position = dstOffset;
     byte value = 0;
     
-    try {
-      for (int i = offset; i < end; i++) {
-        value = data[i];
-        
-        baos.write(BIN[(value >>> 4) & 0xF]);
-        baos.write(BIN[(value    ) & 0xF]);
-      }
-    } catch (IOException err) {
-      throw new IllegalStateException("IOException", err);
-    } finally {
-      IoUtils.close(baos);
+    for (int i = offset; i < end; i++) {
+      value = data[i];
+      
+      byte[] hi = BIN[(value >>> 4) & 0xF];
+      byte[] lo = BIN[(value    ) & 0xF];
+      
+      System.arraycopy(hi, 0, dst, position, 4);
+      System.arraycopy(lo, 0, dst, position + 4, 4);
+      position += 8;
     }
     
-    return baos.toByteArray();
+    return count;
+  }
+  
+  private static void checkRange(byte[] data, int offset, int length) {
+    if (data == null) {
+      throw new NullPointerException("data");
+    }
+    
+    if (offset < 0 || length < 0 || (offset+length) > data.length) {
+      throw new IllegalArgumentException("offset=" + offset + ", length=" 
+          + length + ", data.length=" + data.length);
+    }
   }
   
   @Override
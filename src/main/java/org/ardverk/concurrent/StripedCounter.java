@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.concurrent;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.ardverk.lang.MathUtils;
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A {@code long} counter that is being updated by many {@link Thread}s
+ * but read only rarely. The value is spread over a number of stripes that
+ * are a cache line apart and each {@link Thread} updates the stripe that
+ * its ID maps to.
+ *
+ * <p>Updates don't allocate any memory. The {@link #sum()} is not an
+ * atomic snapshot if there are concurrent updates.
+ */
+public class StripedCounter implements Serializable {
+  
+  private static final long serialVersionUID = 4520957001834361347L;
+  
+  /**
+   * The number of {@code long}s per cache line.
+   */
+  private static final int PADDING = 8;
+  
+  /**
+   * The default number of stripes.
+   */
+  private static final int STRIPES
+    = Runtime.getRuntime().availableProcessors();
+  
+  private final AtomicLongArray cells;
+  
+  private final int mask;
+  
+  /**
+   * Creates a {@link StripedCounter} with one stripe per processor.
+   */
+  public StripedCounter() {
+    this(STRIPES);
+  }
+  
+  /**
+   * Creates a {@link StripedCounter} with the given number of stripes
+   * (rounded to a power of two).
+   */
+  public StripedCounter(int stripes) {
+    Precoditions.argument(0 < stripes, "stripes=%s", stripes);
+    
+    int length = MathUtils.nextPowOfTwo(stripes);
+    this.cells = new AtomicLongArray(length * PADDING);
+    this.mask = length - 1;
+  }
+  
+  /**
+   * Increments the counter by one.
+   */
+  public void increment() {
+    add(1L);
+  }
+  
+  /**
+   * Adds the given value to the counter.
+   */
+  public void add(long delta) {
+    cells.getAndAdd(index(), delta);
+  }
+  
+  /**
+   * Returns the sum of all stripes.
+   */
+  public long sum() {
+    long sum = 0L;
+    for (int i = 0; i < cells.length(); i += PADDING) {
+      sum += cells.get(i);
+    }
+    return sum;
+  }
+  
+  /**
+   * Resets the counter to zero.
+   */
+  public void reset() {
+    for (int i = 0; i < cells.length(); i += PADDING) {
+      cells.set(i, 0L);
+    }
+  }
+  
+  /**
+   * Returns the index of the current {@link Thread}'s stripe.
+   */
+  private int index() {
+    long id = Thread.currentThread().getId();
+    int hash = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+    return ((hash ^ (hash >>> 16)) & mask) * PADDING;
+  }
+  
+  @Override
+  public String toString() {
+    return Long.toString(sum());
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Utilities for virtual threads. They're being looked up at runtime
+ * because this library is compiled against an older Java version.
+ */
+public class VirtualThreadUtils {
+  
+  private static final Method OF_VIRTUAL = getMethod(
+      Thread.class, "ofVirtual");
+  
+  private static final Method NAME = getMethod(
+      "java.lang.Thread$Builder", "name", String.class, long.class);
+  
+  private static final Method FACTORY = getMethod(
+      "java.lang.Thread$Builder", "factory");
+  
+  private static final Method NEW_THREAD_PER_TASK_EXECUTOR = getMethod(
+      Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+  
+  private static final Method IS_VIRTUAL = getMethod(
+      Thread.class, "isVirtual");
+  
+  /**
+   * Virtual threads are a preview feature in Java 19 and 20. The methods
+   * exist but they throw an {@link UnsupportedOperationException} unless
+   * preview features are enabled.
+   */
+  private static final boolean SUPPORTED = probe();
+  
+  private VirtualThreadUtils() {}
+  
+  /**
+   * Returns {@code true} if the runtime supports virtual threads.
+   */
+  public static boolean isSupported() {
+    return SUPPORTED;
+  }
+  
+  /**
+   * Returns {@code true} if the given {@link Thread} is a virtual thread.
+   */
+  public static boolean isVirtual(Thread thread) {
+    if (IS_VIRTUAL == null) {
+      return false;
+    }
+    
+    try {
+      return (Boolean)IS_VIRTUAL.invoke(thread);
+    } catch (Exception err) {
+      return false;
+    }
+  }
+  
+  /**
+   * Returns a {@link ThreadFactory} for virtual threads or {@code null}
+   * if the runtime doesn't support them.
+   */
+  public static ThreadFactory newThreadFactory(String name) {
+    if (!isSupported()) {
+      return null;
+    }
+    
+    try {
+      Object builder = OF_VIRTUAL.invoke(null);
+      builder = NAME.invoke(builder, name + "-", 0L);
+      return (ThreadFactory)FACTORY.invoke(builder);
+    } catch (Exception err) {
+      throw new IllegalStateException(err);
+    }
+  }
+  
+  /**
+   * Returns an {@link Executor} that runs each task in a new virtual
+   * thread if the runtime supports them and an
+   * {@link ExecutorUtils#newCachedThreadPool(String)} otherwise.
+   */
+  public static Executor newExecutor(String name) {
+    if (isSupported()) {
+      try {
+        return (Executor)NEW_THREAD_PER_TASK_EXECUTOR.invoke(
+            null, newThreadFactory(name));
+      } catch (Exception err) {
+        // Fall back to platform threads
+      }
+    }
+    
+    return ExecutorUtils.newCachedThreadPool(name);
+  }
+  
+  /**
+   * Returns {@code true} if a virtual {@link ThreadFactory} can actually
+   * be created.
+   */
+  private static boolean probe() {
+    if (OF_VIRTUAL == null || NAME == null || FACTORY == null
+        || NEW_THREAD_PER_TASK_EXECUTOR == null) {
+      return false;
+    }
+    
+    try {
+      Object builder = OF_VIRTUAL.invoke(null);
+      return FACTORY.invoke(builder) != null;
+    } catch (Exception err) {
+      return false;
+    } catch (LinkageError err) {
+      return false;
+    }
+  }
+  
+  private static Method getMethod(String clazz, String name,
+      Class<?>... parameterTypes) {
+    try {
+      return getMethod(Class.forName(clazz), name, parameterTypes);
+    } catch (ClassNotFoundException err) {
+      return null;
+    }
+  }
+  
+  private static Method getMethod(Class<?> clazz, String name,
+      Class<?>... parameterTypes) {
+    try {
+      return clazz.getMethod(name, parameterTypes);
+    } catch (NoSuchMethodException err) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An abstract implementation of {@link BufferStreamable} that
+ * implements {@link #writeTo(OutputStream)} in terms of
+ * {@link #writeTo(ByteBuffer)}.
+ */
+public abstract class AbstractBufferStreamable implements BufferStreamable {
+  
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(serializedSize());
+    writeTo(buffer);
+    out.write(buffer.array(), 0, buffer.position());
+  }
+}
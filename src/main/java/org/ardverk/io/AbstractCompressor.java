@@ -16,10 +16,24 @@
 
 package org.ardverk.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 /**
  * An abstract implementation of {@link Compressor}.
+ * 
+ * <p>The {@link ByteBuffer} and stream methods are implemented on top of 
+ * {@link #createOutputStream(OutputStream)} and 
+ * {@link #createInputStream(InputStream)}. The default implementations of
+ * these two buffer the entire data and should be replaced by subclasses
+ * that can compress incrementally.
  */
 public abstract class AbstractCompressor implements Compressor {
 
@@ -44,8 +58,221 @@ public abstract class AbstractCompressor implements Compressor {
     return decompress(value, 0, value.length);
   }
   
+  @Override
+  public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    int position = dst.position();
+    try (OutputStream out = createOutputStream(
+        new ByteBufferOutputStream(dst))) {
+      write(src, out);
+    }
+    return dst.position() - position;
+  }
+  
+  @Override
+  public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    int position = dst.position();
+    try (InputStream in = createInputStream(
+        new ByteBufferInputStream(src))) {
+      read(in, dst);
+    }
+    return dst.position() - position;
+  }
+  
+  @Override
+  public long compress(InputStream in, OutputStream out) throws IOException {
+    try (OutputStream cout = createOutputStream(new Shield(out))) {
+      return StreamUtils.copy(in, cout);
+    }
+  }
+  
+  @Override
+  public long decompress(InputStream in, OutputStream out) throws IOException {
+    try (InputStream din = createInputStream(new FilterInputStream(in) {
+      @Override
+      public void close() {
+      }
+    })) {
+      return StreamUtils.copy(din, out);
+    }
+  }
+  
+  @Override
+  public OutputStream createOutputStream(final OutputStream out) 
+      throws IOException {
+    return new ByteArrayOutputStream() {
+      
+      private boolean open = true;
+      
+      @Override
+      public void close() throws IOException {
+        if (open) {
+          open = false;
+          try {
+            out.write(AbstractCompressor.this.compress(buf, 0, count));
+          } finally {
+            out.close();
+          }
+        }
+      }
+    };
+  }
+  
+  @Override
+  public InputStream createInputStream(InputStream in) throws IOException {
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      StreamUtils.copy(in, baos);
+      return new ByteArrayInputStream(decompress(baos.toByteArray()));
+    } finally {
+      IoUtils.close(in);
+    }
+  }
+  
   @Override
   public String toString() {
     return getAlgorithm();
   }
+  
+  /**
+   * Writes the remaining bytes of the {@link ByteBuffer} 
+   * to the {@link OutputStream}.
+   */
+  private static void write(ByteBuffer src, OutputStream out) 
+      throws IOException {
+    
+    if (src.hasArray()) {
+      out.write(src.array(), src.arrayOffset() + src.position(), 
+          src.remaining());
+      src.position(src.limit());
+      return;
+    }
+    
+    BufferPool pool = BufferPool.DEFAULT;
+    byte[] buffer = pool.acquire(StreamUtils.BUFFER_SIZE);
+    try {
+      while (src.hasRemaining()) {
+        int length = Math.min(buffer.length, src.remaining());
+        src.get(buffer, 0, length);
+        out.write(buffer, 0, length);
+      }
+    } finally {
+      pool.release(buffer);
+    }
+  }
+  
+  /**
+   * Reads the {@link InputStream} into the {@link ByteBuffer}.
+   */
+  private static void read(InputStream in, ByteBuffer dst) 
+      throws IOException {
+    
+    if (dst.hasArray()) {
+      byte[] array = dst.array();
+      int offset = dst.arrayOffset();
+      
+      while (dst.hasRemaining()) {
+        int len = in.read(array, offset + dst.position(), dst.remaining());
+        if (len == -1) {
+          return;
+        }
+        dst.position(dst.position() + len);
+      }
+      
+      if (in.read() != -1) {
+        throw new BufferOverflowException();
+      }
+      return;
+    }
+    
+    BufferPool pool = BufferPool.DEFAULT;
+    byte[] buffer = pool.acquire(StreamUtils.BUFFER_SIZE);
+    try {
+      int len = -1;
+      while ((len = in.read(buffer)) != -1) {
+        dst.put(buffer, 0, len);
+      }
+    } finally {
+      pool.release(buffer);
+    }
+  }
+  
+  /**
+   * An {@link OutputStream} that writes into a {@link ByteBuffer}.
+   */
+  private static class ByteBufferOutputStream extends OutputStream {
+    
+    private final ByteBuffer dst;
+    
+    public ByteBufferOutputStream(ByteBuffer dst) {
+      this.dst = dst;
+    }
+    
+    @Override
+    public void write(int b) {
+      dst.put((byte)b);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) {
+      dst.put(b, off, len);
+    }
+  }
+  
+  /**
+   * An {@link InputStream} that reads from a {@link ByteBuffer}.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+    
+    private final ByteBuffer src;
+    
+    public ByteBufferInputStream(ByteBuffer src) {
+      this.src = src;
+    }
+    
+    @Override
+    public int read() {
+      return src.hasRemaining() ? src.get() & 0xFF : -1;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      
+      if (!src.hasRemaining()) {
+        return -1;
+      }
+      
+      len = Math.min(len, src.remaining());
+      src.get(b, off, len);
+      return len;
+    }
+    
+    @Override
+    public int available() {
+      return src.remaining();
+    }
+  }
+  
+  /**
+   * An {@link OutputStream} that flushes but doesn't close 
+   * the underlying {@link OutputStream}.
+   */
+  private static class Shield extends FilterOutputStream {
+    
+    public Shield(OutputStream out) {
+      super(out);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+    
+    @Override
+    public void close() throws IOException {
+      out.flush();
+    }
+  }
 }
\ No newline at end of file
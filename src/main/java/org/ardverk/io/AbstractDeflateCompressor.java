@@ -0,0 +1,397 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An abstract {@link Compressor} for the DEFLATE based formats.
+ *
+ * <p>Each {@link Thread} reuses its own {@link Deflater} and {@link Inflater}
+ * instead of creating (and finalizing) new ones for every call. Data is
+ * being compressed and decompressed straight into {@code byte[]}s without
+ * going through any streams.
+ */
+public abstract class AbstractDeflateCompressor extends AbstractCompressor {
+  
+  private final ThreadLocal<Deflater> deflaters;
+  
+  private final ThreadLocal<Inflater> inflaters;
+  
+  /**
+   * Creates an {@link AbstractDeflateCompressor}.
+   *
+   * @param nowrap Whether or not the {@link Deflater} and {@link Inflater}
+   * produce and consume raw DEFLATE data
+   */
+  protected AbstractDeflateCompressor(String algorithm, final boolean nowrap) {
+    super(algorithm);
+    
+    this.deflaters = new ThreadLocal<Deflater>() {
+      @Override
+      protected Deflater initialValue() {
+        return new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+      }
+    };
+    
+    this.inflaters = new ThreadLocal<Inflater>() {
+      @Override
+      protected Inflater initialValue() {
+        return new Inflater(nowrap);
+      }
+    };
+  }
+  
+  /**
+   * Returns the maximum length of the compressed form
+   * of the given number of bytes.
+   */
+  public int maxCompressedLength(int length) {
+    // See zlib's compressBound()
+    return length + (length >>> 12) + (length >>> 14)
+        + (length >>> 25) + 13 + getWrapperLength();
+  }
+  
+  @Override
+  public byte[] compress(byte[] value, int offset, int length)
+      throws IOException {
+    
+    BufferPool pool = BufferPool.DEFAULT;
+    byte[] buffer = pool.acquire(maxCompressedLength(length));
+    try {
+      int count = compress(value, offset, length, buffer, 0);
+      return Arrays.copyOf(buffer, count);
+    } finally {
+      pool.release(buffer);
+    }
+  }
+  
+  /**
+   * Compresses the given byte-array into the given {@code byte[]} and
+   * returns the number of bytes that were written.
+   *
+   * @throws BufferOverflowException If there is not enough room in
+   * the destination {@code byte[]}.
+   * @see #maxCompressedLength(int)
+   */
+  public int compress(byte[] value, int offset, int length,
+      byte[] dst, int dstOffset) throws IOException {
+    
+    int position = dstOffset + writeHeader(dst, dstOffset);
+    
+    Deflater deflater = deflaters.get();
+    try {
+      init(deflater);
+      deflater.setInput(value, offset, length);
+      deflater.finish();
+      
+      while (!deflater.finished()) {
+        if (position == dst.length) {
+          throw new BufferOverflowException();
+        }
+        position += deflater.deflate(dst, position, dst.length - position);
+      }
+    } finally {
+      deflater.reset();
+    }
+    
+    position += writeTrailer(value, offset, length, dst, position);
+    return position - dstOffset;
+  }
+  
+  /**
+   * Compresses straight from array to array if both {@link ByteBuffer}s
+   * are backed by an array and there is room for the worst case. It
+   * falls back to a stream otherwise.
+   */
+  @Override
+  public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    if (!src.hasArray() || !dst.hasArray()
+        || dst.remaining() < maxCompressedLength(src.remaining())) {
+      return super.compress(src, dst);
+    }
+    
+    int count = compress(src.array(), src.arrayOffset() + src.position(),
+        src.remaining(), dst.array(), dst.arrayOffset() + dst.position());
+    
+    src.position(src.limit());
+    dst.position(dst.position() + count);
+    return count;
+  }
+  
+  @Override
+  public byte[] decompress(byte[] value, int offset, int length)
+      throws IOException {
+    return decompress(value, offset, length, BufferPool.DEFAULT);
+  }
+  
+  /**
+   * Decompresses straight from array to array if both {@link ByteBuffer}s
+   * are backed by an array and falls back to a stream otherwise.
+   */
+  @Override
+  public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    if (!src.hasArray() || !dst.hasArray()) {
+      return super.decompress(src, dst);
+    }
+    
+    Output output = new Output(dst.array(),
+        dst.arrayOffset() + dst.position(), false);
+    output.limit = dst.arrayOffset() + dst.limit();
+    
+    inflate(src.array(), src.arrayOffset() + src.position(),
+        src.remaining(), output);
+    
+    int count = output.position - dst.arrayOffset() - dst.position();
+    src.position(src.limit());
+    dst.position(dst.position() + count);
+    return count;
+  }
+  
+  /**
+   * Decompresses the given byte-array with a scratch buffer from
+   * the given {@link BufferPool}.
+   */
+  public byte[] decompress(byte[] value, int offset, int length,
+      BufferPool pool) throws IOException {
+    
+    byte[] buffer = pool.acquire(guess(length));
+    try {
+      Output output = new Output(buffer, 0, true);
+      inflate(value, offset, length, output);
+      return Arrays.copyOf(output.buffer, output.position);
+    } finally {
+      pool.release(buffer);
+    }
+  }
+  
+  /**
+   * Decompresses the given byte-array. The returned {@code byte[]} is
+   * not being copied if the expected size is exact.
+   *
+   * @param expectedSize The expected size of the decompressed data
+   */
+  public byte[] decompress(byte[] value, int offset, int length,
+      int expectedSize) throws IOException {
+    
+    Output output = new Output(new byte[Math.max(0, expectedSize)], 0, true);
+    inflate(value, offset, length, output);
+    
+    byte[] buffer = output.buffer;
+    if (buffer.length == output.position) {
+      return buffer;
+    }
+    return Arrays.copyOf(buffer, output.position);
+  }
+  
+  /**
+   * Decompresses the given byte-array into the given {@code byte[]}
+   * and returns the number of bytes that were written.
+   *
+   * @throws BufferOverflowException If there is not enough room in
+   * the destination {@code byte[]}.
+   */
+  public int decompress(byte[] value, int offset, int length,
+      byte[] dst, int dstOffset) throws IOException {
+    
+    Output output = new Output(dst, dstOffset, false);
+    inflate(value, offset, length, output);
+    return output.position - dstOffset;
+  }
+  
+  /**
+   * Inflates all members of the given byte-array.
+   */
+  private void inflate(byte[] value, int offset, int length,
+      Output output) throws IOException {
+    
+    int position = offset;
+    int end = offset + length;
+    
+    Inflater inflater = inflaters.get();
+    try {
+      do {
+        int header = readHeader(value, position, end - position);
+        int headerOffset = position;
+        position += header;
+        
+        int start = output.position;
+        
+        inflater.setInput(value, position, end - position);
+        inflate(inflater, output, value, headerOffset, header);
+        
+        position = end - inflater.getRemaining();
+        inflater.reset();
+        
+        position += readTrailer(value, position, end - position,
+            output.buffer, start, output.position - start);
+      
+      } while (hasMember(value, position, end - position));
+    
+    } catch (DataFormatException err) {
+      throw new IOException("DataFormatException", err);
+    } finally {
+      inflater.reset();
+    }
+  }
+  
+  /**
+   * Inflates a single DEFLATE stream.
+   */
+  private void inflate(Inflater inflater, Output output, 
+      byte[] value, int headerOffset, int headerLength) 
+      throws DataFormatException, IOException {
+    
+    while (!inflater.finished()) {
+      byte[] buffer = output.buffer;
+      int position = output.position;
+      
+      int len = inflater.inflate(buffer, position, output.limit - position);
+      output.position += len;
+      
+      if (len == 0 && !inflater.finished()) {
+        if (inflater.needsDictionary()) {
+          setDictionary(inflater, value, headerOffset, headerLength);
+          continue;
+        }
+        
+        if (output.position == output.limit) {
+          output.grow();
+        } else if (inflater.needsInput()) {
+          throw new EOFException("Unexpected end of DEFLATE input stream");
+        } else {
+          throw new IOException("The Inflater made no progress");
+        }
+      }
+    }
+  }
+  
+  /**
+   * Returns the number of bytes the format adds in addition
+   * to the {@link Deflater}'s output.
+   */
+  protected int getWrapperLength() {
+    return 0;
+  }
+  
+  /**
+   * Writes the header of a member and returns its length.
+   */
+  protected int writeHeader(byte[] dst, int offset) {
+    return 0;
+  }
+  
+  /**
+   * Writes the trailer of a member and returns its length.
+   */
+  protected int writeTrailer(byte[] value, int offset, int length,
+      byte[] dst, int dstOffset) {
+    return 0;
+  }
+  
+  /**
+   * Reads the header of a member and returns its length.
+   */
+  protected int readHeader(byte[] value, int offset, int length)
+      throws IOException {
+    return 0;
+  }
+  
+  /**
+   * Reads and checks the trailer of a member and returns its length.
+   *
+   * @param data The member's decompressed data
+   */
+  protected int readTrailer(byte[] value, int offset, int length,
+      byte[] data, int dataOffset, int dataLength) throws IOException {
+    return 0;
+  }
+  
+  /**
+   * Prepares the {@link Deflater} before it compresses a member.
+   */
+  protected void init(Deflater deflater) throws IOException {
+  }
+  
+  /**
+   * Sets the preset dictionary of an {@link Inflater} that asked for one.
+   * The default implementation throws an {@link IOException}.
+   *
+   * @param value The byte-array that holds the member's header
+   * @param offset The offset of the header
+   * @param length The length of the header
+   */
+  protected void setDictionary(Inflater inflater, byte[] value, int offset,
+      int length) throws IOException {
+    throw new IOException("Dictionary required");
+  }
+  
+  /**
+   * Returns {@code true} if there is another member.
+   */
+  protected boolean hasMember(byte[] value, int offset, int length) {
+    return false;
+  }
+  
+  /**
+   * Returns an initial output size for the given input length.
+   */
+  private static int guess(int length) {
+    return (int)Math.min(2L * length, BufferPool.MAX_SIZE);
+  }
+  
+  /**
+   * A decompression target that may grow.
+   */
+  private static class Output {
+    
+    private byte[] buffer;
+    
+    private int position;
+    
+    private int limit;
+    
+    private final boolean grow;
+    
+    public Output(byte[] buffer, int position, boolean grow) {
+      this.buffer = buffer;
+      this.position = position;
+      this.limit = buffer.length;
+      this.grow = grow;
+    }
+    
+    public void grow() {
+      if (!grow) {
+        throw new BufferOverflowException();
+      }
+      
+      int length = Math.max(64, 2 * buffer.length);
+      if (length < 0) {
+        throw new OutOfMemoryError();
+      }
+      buffer = Arrays.copyOf(buffer, length);
+      limit = length;
+    }
+  }
+}
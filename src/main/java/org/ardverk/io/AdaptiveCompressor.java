@@ -0,0 +1,356 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ardverk.concurrent.StripedCounter;
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A {@link Compressor} that stores data as-is if it's unlikely to shrink.
+ *
+ * <p>It estimates the order-0 entropy of a prefix of the data and uses
+ * the underlying {@link Compressor} only if the expected gain is above a
+ * threshold. The data is also stored as-is if it didn't shrink after all.
+ * The first byte of the output tells which way was taken.
+ *
+ * <p>The {@link AdaptiveCompressor} keeps {@link Statistics} for each
+ * type of payload (see {@link #compress(String, byte[], int, int)}) up
+ * to a maximum number of types. Payloads of any further types are
+ * recorded under {@link #OTHER_TYPE}.
+ */
+public class AdaptiveCompressor extends AbstractCompressor {
+  
+  /**
+   * The type of payloads that are compressed without a type.
+   */
+  public static final String DEFAULT_TYPE = "default";
+  
+  /**
+   * The type that collects the {@link Statistics} of all types
+   * beyond the maximum number of types.
+   */
+  public static final String OTHER_TYPE = "other";
+  
+  /**
+   * The default maximum number of types.
+   */
+  public static final int MAX_TYPES = 64;
+  
+  /**
+   * The default number of bytes that are sampled.
+   */
+  public static final int SAMPLE_SIZE = 1024;
+  
+  /**
+   * The default minimum expected gain.
+   */
+  public static final double MIN_GAIN = 0.1;
+  
+  private static final byte RAW = 0;
+  
+  private static final byte COMPRESSED = 1;
+  
+  private static final double LOG2 = Math.log(2.0);
+  
+  private static final ThreadLocal<int[]> HISTOGRAMS = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[256];
+    }
+  };
+  
+  private final ConcurrentMap<String, Statistics> statistics
+    = new ConcurrentHashMap<String, Statistics>();
+  
+  /**
+   * The number of types that have been admitted into the map. 
+   * {@link #OTHER_TYPE} doesn't count.
+   */
+  private final AtomicInteger types = new AtomicInteger();
+  
+  private final Statistics other = new Statistics();
+  
+  private final Compressor compressor;
+  
+  private final int sampleSize;
+  
+  private final double minGain;
+  
+  private final int maxTypes;
+  
+  /**
+   * Creates an {@link AdaptiveCompressor} with default settings.
+   */
+  public AdaptiveCompressor(Compressor compressor) {
+    this(compressor, SAMPLE_SIZE, MIN_GAIN, MAX_TYPES);
+  }
+  
+  /**
+   * Creates an {@link AdaptiveCompressor} with the default 
+   * maximum number of types.
+   *
+   * @param compressor The underlying {@link Compressor}
+   * @param sampleSize The number of bytes that are sampled
+   * @param minGain The minimum expected gain (0.0 to 1.0)
+   */
+  public AdaptiveCompressor(Compressor compressor,
+      int sampleSize, double minGain) {
+    this(compressor, sampleSize, minGain, MAX_TYPES);
+  }
+  
+  /**
+   * Creates an {@link AdaptiveCompressor}.
+   *
+   * @param compressor The underlying {@link Compressor}
+   * @param sampleSize The number of bytes that are sampled
+   * @param minGain The minimum expected gain (0.0 to 1.0)
+   * @param maxTypes The maximum number of types with {@link Statistics}
+   * of their own
+   */
+  public AdaptiveCompressor(Compressor compressor,
+      int sampleSize, double minGain, int maxTypes) {
+    super("ADAPTIVE/" + compressor.getAlgorithm());
+    
+    Precoditions.argument(0 < sampleSize, "sampleSize=%s", sampleSize);
+    Precoditions.argument(0.0 <= minGain && minGain < 1.0,
+        "minGain=%s", minGain);
+    Precoditions.argument(0 <= maxTypes, "maxTypes=%s", maxTypes);
+    
+    this.compressor = compressor;
+    this.sampleSize = sampleSize;
+    this.minGain = minGain;
+    this.maxTypes = maxTypes;
+    
+    statistics.put(OTHER_TYPE, other);
+  }
+  
+  /**
+   * Returns the underlying {@link Compressor}.
+   */
+  public Compressor getCompressor() {
+    return compressor;
+  }
+  
+  @Override
+  public byte[] compress(byte[] value, int offset, int length)
+      throws IOException {
+    return compress(DEFAULT_TYPE, value, offset, length);
+  }
+  
+  /**
+   * Compresses the given byte-array and records the outcome
+   * in the {@link Statistics} of the given type.
+   */
+  public byte[] compress(String type, byte[] value, int offset, int length)
+      throws IOException {
+    
+    Statistics statistics = getOrCreateStatistics(type);
+    
+    byte[] dst = null;
+    if (estimate(value, offset, length) <= 1.0 - minGain) {
+      byte[] compressed = compressor.compress(value, offset, length);
+      
+      if (compressed.length < length) {
+        dst = new byte[1 + compressed.length];
+        dst[0] = COMPRESSED;
+        System.arraycopy(compressed, 0, dst, 1, compressed.length);
+      } else {
+        statistics.rejected.increment();
+      }
+    } else {
+      statistics.skipped.increment();
+    }
+    
+    if (dst == null) {
+      dst = new byte[1 + length];
+      dst[0] = RAW;
+      System.arraycopy(value, offset, dst, 1, length);
+    }
+    
+    statistics.count.increment();
+    statistics.in.add(length);
+    statistics.out.add(dst.length);
+    return dst;
+  }
+  
+  @Override
+  public byte[] decompress(byte[] value, int offset, int length)
+      throws IOException {
+    
+    if (length < 1) {
+      throw new EOFException();
+    }
+    
+    switch (value[offset]) {
+      case RAW:
+        return Arrays.copyOfRange(value, offset + 1, offset + length);
+      case COMPRESSED:
+        return compressor.decompress(value, offset + 1, length - 1);
+      default:
+        throw new IOException("Unknown header: " + value[offset]);
+    }
+  }
+  
+  /**
+   * Returns the {@link Statistics} of the given type
+   * or {@code null} if there are none.
+   */
+  public Statistics getStatistics(String type) {
+    return statistics.get(type);
+  }
+  
+  /**
+   * Returns all types of payload that have {@link Statistics}.
+   */
+  public Set<String> getTypes() {
+    return statistics.keySet();
+  }
+  
+  private Statistics getOrCreateStatistics(String type) {
+    Statistics value = statistics.get(type);
+    if (value != null) {
+      return value;
+    }
+    
+    if (maxTypes < types.incrementAndGet()) {
+      types.decrementAndGet();
+      return other;
+    }
+    
+    value = new Statistics();
+    Statistics existing = statistics.putIfAbsent(type, value);
+    if (existing != null) {
+      types.decrementAndGet();
+      value = existing;
+    }
+    return value;
+  }
+  
+  /**
+   * Returns the expected ratio of compressed to uncompressed size
+   * based on the order-0 entropy of a prefix of the data.
+   */
+  private double estimate(byte[] value, int offset, int length) {
+    int count = Math.min(length, sampleSize);
+    if (count == 0) {
+      return 1.0;
+    }
+    
+    int[] histogram = HISTOGRAMS.get();
+    Arrays.fill(histogram, 0);
+    
+    for (int i = 0; i < count; i++) {
+      ++histogram[value[offset + i] & 0xFF];
+    }
+    
+    int distinct = 0;
+    double entropy = 0.0;
+    for (int frequency : histogram) {
+      if (frequency != 0) {
+        double p = (double)frequency / count;
+        entropy -= p * Math.log(p);
+        ++distinct;
+      }
+    }
+    
+    // Small samples underestimate the entropy (Miller-Madow correction)
+    entropy += (distinct - 1) / (2.0 * count);
+    
+    // Bits per byte divided by eight
+    return Math.min(1.0, entropy / LOG2 / 8.0);
+  }
+  
+  /**
+   * The running statistics of a type of payload.
+   */
+  public static class Statistics {
+    
+    private final StripedCounter count = new StripedCounter();
+    
+    private final StripedCounter skipped = new StripedCounter();
+    
+    private final StripedCounter rejected = new StripedCounter();
+    
+    private final StripedCounter in = new StripedCounter();
+    
+    private final StripedCounter out = new StripedCounter();
+    
+    private Statistics() {
+    }
+    
+    /**
+     * Returns the number of payloads.
+     */
+    public long getCount() {
+      return count.sum();
+    }
+    
+    /**
+     * Returns the number of payloads that were stored as-is
+     * because of their entropy.
+     */
+    public long getSkipped() {
+      return skipped.sum();
+    }
+    
+    /**
+     * Returns the number of payloads that were stored as-is
+     * because they didn't shrink.
+     */
+    public long getRejected() {
+      return rejected.sum();
+    }
+    
+    /**
+     * Returns the number of uncompressed bytes.
+     */
+    public long getBytesIn() {
+      return in.sum();
+    }
+    
+    /**
+     * Returns the number of bytes after compression.
+     */
+    public long getBytesOut() {
+      return out.sum();
+    }
+    
+    /**
+     * Returns the ratio of compressed to uncompressed bytes.
+     */
+    public double getRatio() {
+      long in = getBytesIn();
+      return in != 0L ? (double)getBytesOut() / in : 1.0;
+    }
+    
+    @Override
+    public String toString() {
+      return "count=" + getCount()
+          + ", skipped=" + getSkipped()
+          + ", rejected=" + getRejected()
+          + ", ratio=" + getRatio();
+    }
+  }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.ardverk.utils.StringUtils;
+
+/**
+ * A cursor that reads binary data from a {@code byte[]}.
+ *
+ * <p>All read operations throw an {@link EOFException} if there
+ * aren't enough bytes left.
+ *
+ * @see BinaryWriter
+ */
+public class BinaryReader {
+  
+  private final byte[] buffer;
+  
+  private final ByteBuffer bigEndian;
+  
+  private final ByteBuffer littleEndian;
+  
+  private final int limit;
+  
+  private int position;
+  
+  private InputStream in = null;
+  
+  /**
+   * Creates a {@link BinaryReader} for the given {@code byte[]}.
+   */
+  public BinaryReader(byte[] buffer) {
+    this(buffer, 0, buffer.length);
+  }
+  
+  /**
+   * Creates a {@link BinaryReader} for the given range of the
+   * {@code byte[]}.
+   */
+  public BinaryReader(byte[] buffer, int offset, int length) {
+    if (offset < 0 || length < 0 || buffer.length - offset < length) {
+      throw new IndexOutOfBoundsException(
+          "offset=" + offset + ", length=" + length);
+    }
+    
+    this.buffer = buffer;
+    this.bigEndian = ByteBuffer.wrap(buffer);
+    this.littleEndian = ByteBuffer.wrap(buffer)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    this.position = offset;
+    this.limit = offset + length;
+  }
+  
+  /**
+   * Creates a {@link BinaryReader} for the remaining bytes of the given
+   * {@link ByteBuffer}. The {@link ByteBuffer} is being copied if it's
+   * not backed by an array.
+   */
+  public static BinaryReader create(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      return new BinaryReader(buffer.array(),
+          buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+    
+    byte[] data = new byte[buffer.remaining()];
+    buffer.duplicate().get(data);
+    return new BinaryReader(data);
+  }
+  
+  /**
+   * Makes sure there are at least the given number of bytes left and
+   * returns the current position.
+   */
+  private int require(int count) throws EOFException {
+    if (limit - position < count) {
+      throw new EOFException();
+    }
+    return position;
+  }
+  
+  /**
+   * Returns the number of bytes that are left.
+   */
+  public int remaining() {
+    return limit - position;
+  }
+  
+  /**
+   * Returns {@code true} if there are bytes left.
+   */
+  public boolean hasRemaining() {
+    return position < limit;
+  }
+  
+  /**
+   * Skips the given number of bytes.
+   */
+  public BinaryReader skip(int count) throws EOFException {
+    position = require(count) + count;
+    return this;
+  }
+  
+  public byte readByte() throws EOFException {
+    byte value = buffer[require(DataUtils.BYTE)];
+    ++position;
+    return value;
+  }
+  
+  public int readUnsignedByte() throws EOFException {
+    return readByte() & 0xFF;
+  }
+  
+  public boolean readBoolean() throws EOFException {
+    return readByte() != 0;
+  }
+  
+  public short readShort() throws EOFException {
+    short value = bigEndian.getShort(require(DataUtils.SHORT));
+    position += DataUtils.SHORT;
+    return value;
+  }
+  
+  public short readShortLE() throws EOFException {
+    short value = littleEndian.getShort(require(DataUtils.SHORT));
+    position += DataUtils.SHORT;
+    return value;
+  }
+  
+  public int readUnsignedShort() throws EOFException {
+    return readShort() & 0xFFFF;
+  }
+  
+  public int readUnsignedShortLE() throws EOFException {
+    return readShortLE() & 0xFFFF;
+  }
+  
+  public int readInt() throws EOFException {
+    int value = bigEndian.getInt(require(DataUtils.INT));
+    position += DataUtils.INT;
+    return value;
+  }
+  
+  public int readIntLE() throws EOFException {
+    int value = littleEndian.getInt(require(DataUtils.INT));
+    position += DataUtils.INT;
+    return value;
+  }
+  
+  public long readUnsignedInt() throws EOFException {
+    return readInt() & 0xFFFFFFFFL;
+  }
+  
+  public long readLong() throws EOFException {
+    long value = bigEndian.getLong(require(DataUtils.LONG));
+    position += DataUtils.LONG;
+    return value;
+  }
+  
+  public long readLongLE() throws EOFException {
+    long value = littleEndian.getLong(require(DataUtils.LONG));
+    position += DataUtils.LONG;
+    return value;
+  }
+  
+  public float readFloat() throws EOFException {
+    return Float.intBitsToFloat(readInt());
+  }
+  
+  public float readFloatLE() throws EOFException {
+    return Float.intBitsToFloat(readIntLE());
+  }
+  
+  public double readDouble() throws EOFException {
+    return Double.longBitsToDouble(readLong());
+  }
+  
+  public double readDoubleLE() throws EOFException {
+    return Double.longBitsToDouble(readLongLE());
+  }
+  
+  /**
+   * Reads an unsigned variable length {@code int}.
+   *
+   * @see BinaryWriter#writeVarInt(int)
+   */
+  public int readVarInt() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+      int b = buffer[require(DataUtils.BYTE)];
+      ++position;
+      
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length int");
+  }
+  
+  /**
+   * Reads an unsigned variable length {@code long}.
+   *
+   * @see BinaryWriter#writeVarLong(long)
+   */
+  public long readVarLong() throws IOException {
+    long value = 0L;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      int b = buffer[require(DataUtils.BYTE)];
+      ++position;
+      
+      value |= (b & 0x7FL) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length long");
+  }
+  
+  /**
+   * Reads a signed variable length {@code int}.
+   *
+   * @see BinaryWriter#writeZigZagInt(int)
+   */
+  public int readZigZagInt() throws IOException {
+    return DataUtils.zigzag2int(readVarInt());
+  }
+  
+  /**
+   * Reads a signed variable length {@code long}.
+   *
+   * @see BinaryWriter#writeZigZagLong(long)
+   */
+  public long readZigZagLong() throws IOException {
+    return DataUtils.zigzag2long(readVarLong());
+  }
+  
+  /**
+   * Reads exactly the given number of bytes into the {@code byte[]}.
+   */
+  public byte[] readFully(byte[] dst, int offset, int length)
+      throws EOFException {
+    System.arraycopy(buffer, require(length), dst, offset, length);
+    position += length;
+    return dst;
+  }
+  
+  /**
+   * Reads a length-prefixed {@code byte[]}.
+   *
+   * @see BinaryWriter#writeBytes(byte[])
+   */
+  public byte[] readBytes() throws IOException {
+    int length = readLength();
+    return readFully(new byte[length], 0, length);
+  }
+  
+  /**
+   * Reads a length-prefixed {@code byte[]} and returns a view of it
+   * without copying.
+   */
+  public ByteBuffer readBytesAsBuffer() throws IOException {
+    int length = readLength();
+    ByteBuffer value = ByteBuffer.wrap(buffer, require(length), length);
+    position += length;
+    return value.slice();
+  }
+  
+  /**
+   * Reads a length-prefixed UTF-8 encoded {@link String}.
+   *
+   * @see BinaryWriter#writeString(String)
+   */
+  public String readString() throws IOException {
+    int length = readLength();
+    String value = StringUtils.toString(buffer, require(length), length,
+        StringUtils.UTF8_CHARSET);
+    position += length;
+    return value;
+  }
+  
+  private int readLength() throws IOException {
+    int length = readVarInt();
+    if (length < 0) {
+      throw new IOException("length=" + length);
+    }
+    return length;
+  }
+  
+  /**
+   * Returns an {@link InputStream} that reads from this
+   * {@link BinaryReader}. It's meant for the existing
+   * {@link InputStream} based deserializers of {@link Streamable}s.
+   */
+  public InputStream asInputStream() {
+    if (in == null) {
+      in = new InputStream() {
+        @Override
+        public int read() {
+          return hasRemaining() ? (buffer[position++] & 0xFF) : -1;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+          if (len == 0) {
+            return 0;
+          }
+          
+          int count = Math.min(len, remaining());
+          if (count == 0) {
+            return -1;
+          }
+          
+          System.arraycopy(buffer, position, b, off, count);
+          position += count;
+          return count;
+        }
+        
+        @Override
+        public long skip(long n) {
+          int count = (int)Math.max(0L, Math.min(n, remaining()));
+          position += count;
+          return count;
+        }
+        
+        @Override
+        public int available() {
+          return remaining();
+        }
+      };
+    }
+    return in;
+  }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A cursor that writes binary data into a growable {@code byte[]}
+ * from a {@link BufferPool}.
+ *
+ * <p>Multi-byte primitives are being written through {@link ByteBuffer}
+ * views of the array which the JVM can turn into single stores. The
+ * variable length and length-prefixed formats are compatible with
+ * {@link DataUtils}, {@link ByteUtils} and
+ * {@link org.ardverk.utils.StringUtils}.
+ *
+ * <p>A {@link BinaryWriter} is not thread-safe and should be closed to
+ * return its buffer to the {@link BufferPool}.
+ *
+ * @see BinaryReader
+ */
+public class BinaryWriter implements Closeable {
+  
+  /**
+   * The default initial capacity.
+   */
+  public static final int DEFAULT_CAPACITY = 256;
+  
+  private final BufferPool pool;
+  
+  private byte[] buffer;
+  
+  private ByteBuffer bigEndian;
+  
+  private ByteBuffer littleEndian;
+  
+  private int position = 0;
+  
+  /**
+   * The size as of the last time the cursor was moved. The actual
+   * size is the greater of this and the position.
+   */
+  private int size = 0;
+  
+  private OutputStream out = null;
+  
+  /**
+   * Creates a {@link BinaryWriter} with the default initial capacity.
+   */
+  public BinaryWriter() {
+    this(DEFAULT_CAPACITY);
+  }
+  
+  /**
+   * Creates a {@link BinaryWriter} with the given initial capacity.
+   */
+  public BinaryWriter(int capacity) {
+    this(BufferPool.DEFAULT, capacity);
+  }
+  
+  /**
+   * Creates a {@link BinaryWriter} with a buffer from the given
+   * {@link BufferPool}.
+   */
+  public BinaryWriter(BufferPool pool, int capacity) {
+    Precoditions.argument(0 <= capacity, "capacity=%s", capacity);
+    
+    this.pool = Precoditions.notNull(pool, "pool");
+    wrap(pool.acquire(capacity));
+  }
+  
+  private void wrap(byte[] buffer) {
+    this.buffer = buffer;
+    this.bigEndian = ByteBuffer.wrap(buffer);
+    this.littleEndian = ByteBuffer.wrap(buffer)
+        .order(ByteOrder.LITTLE_ENDIAN);
+  }
+  
+  /**
+   * Makes sure there is room for the given number of bytes.
+   */
+  private void ensure(int count) {
+    if (buffer == null) {
+      throw new IllegalStateException("closed");
+    }
+    
+    int required = position + count;
+    if (required < 0) {
+      throw new OutOfMemoryError();
+    }
+    
+    if (buffer.length < required) {
+      int length = Math.max(required, 2 * buffer.length);
+      if (length < 0) {
+        length = Integer.MAX_VALUE;
+      }
+      
+      byte[] grown = pool.acquire(length);
+      System.arraycopy(buffer, 0, grown, 0, size());
+      pool.release(buffer);
+      wrap(grown);
+    }
+  }
+  
+  /**
+   * Returns the number of bytes that were written.
+   */
+  public int size() {
+    return Math.max(size, position);
+  }
+  
+  /**
+   * Returns the current position.
+   */
+  public int position() {
+    return position;
+  }
+  
+  /**
+   * Moves the cursor to the given position. Moving it backwards
+   * allows to patch values such as a length that wasn't known up front
+   * and doesn't change the {@link #size()}. Moving it beyond the end 
+   * fills the gap with zeros.
+   */
+  public BinaryWriter position(int position) {
+    Precoditions.argument(0 <= position, "position=%s", position);
+    
+    int size = size();
+    ensure(position - this.position);
+    
+    // The buffer is from a pool and may contain someone else's data
+    if (size < position) {
+      Arrays.fill(buffer, size, position, (byte)0);
+    }
+    
+    this.size = size;
+    this.position = position;
+    return this;
+  }
+  
+  /**
+   * Discards everything that was written.
+   */
+  public BinaryWriter reset() {
+    position = 0;
+    size = 0;
+    return this;
+  }
+  
+  public BinaryWriter writeByte(int value) {
+    ensure(DataUtils.BYTE);
+    buffer[position++] = (byte)value;
+    return this;
+  }
+  
+  public BinaryWriter writeBoolean(boolean value) {
+    return writeByte(value ? 1 : 0);
+  }
+  
+  public BinaryWriter writeShort(int value) {
+    ensure(DataUtils.SHORT);
+    bigEndian.putShort(position, (short)value);
+    position += DataUtils.SHORT;
+    return this;
+  }
+  
+  public BinaryWriter writeShortLE(int value) {
+    ensure(DataUtils.SHORT);
+    littleEndian.putShort(position, (short)value);
+    position += DataUtils.SHORT;
+    return this;
+  }
+  
+  public BinaryWriter writeInt(int value) {
+    ensure(DataUtils.INT);
+    bigEndian.putInt(position, value);
+    position += DataUtils.INT;
+    return this;
+  }
+  
+  public BinaryWriter writeIntLE(int value) {
+    ensure(DataUtils.INT);
+    littleEndian.putInt(position, value);
+    position += DataUtils.INT;
+    return this;
+  }
+  
+  public BinaryWriter writeLong(long value) {
+    ensure(DataUtils.LONG);
+    bigEndian.putLong(position, value);
+    position += DataUtils.LONG;
+    return this;
+  }
+  
+  public BinaryWriter writeLongLE(long value) {
+    ensure(DataUtils.LONG);
+    littleEndian.putLong(position, value);
+    position += DataUtils.LONG;
+    return this;
+  }
+  
+  public BinaryWriter writeFloat(float value) {
+    return writeInt(Float.floatToIntBits(value));
+  }
+  
+  public BinaryWriter writeFloatLE(float value) {
+    return writeIntLE(Float.floatToIntBits(value));
+  }
+  
+  public BinaryWriter writeDouble(double value) {
+    return writeLong(Double.doubleToLongBits(value));
+  }
+  
+  public BinaryWriter writeDoubleLE(double value) {
+    return writeLongLE(Double.doubleToLongBits(value));
+  }
+  
+  /**
+   * Writes an unsigned variable length {@code int}.
+   *
+   * @see DataUtils#int2vbeb(int, OutputStream)
+   */
+  public BinaryWriter writeVarInt(int value) {
+    ensure(5);
+    while ((value & ~0x7F) != 0) {
+      buffer[position++] = (byte)((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[position++] = (byte)value;
+    return this;
+  }
+  
+  /**
+   * Writes an unsigned variable length {@code long}.
+   *
+   * @see DataUtils#long2vbeb(long, OutputStream)
+   */
+  public BinaryWriter writeVarLong(long value) {
+    ensure(10);
+    while ((value & ~0x7FL) != 0L) {
+      buffer[position++] = (byte)((value & 0x7FL) | 0x80L);
+      value >>>= 7;
+    }
+    buffer[position++] = (byte)value;
+    return this;
+  }
+  
+  /**
+   * Writes a signed variable length {@code int}.
+   *
+   * @see DataUtils#int2zigzag(int)
+   */
+  public BinaryWriter writeZigZagInt(int value) {
+    return writeVarInt(DataUtils.int2zigzag(value));
+  }
+  
+  /**
+   * Writes a signed variable length {@code long}.
+   *
+   * @see DataUtils#long2zigzag(long)
+   */
+  public BinaryWriter writeZigZagLong(long value) {
+    return writeVarLong(DataUtils.long2zigzag(value));
+  }
+  
+  /**
+   * Writes the given {@code byte[]} as-is.
+   */
+  public BinaryWriter write(byte[] value) {
+    return write(value, 0, value.length);
+  }
+  
+  /**
+   * Writes the given {@code byte[]} as-is.
+   */
+  public BinaryWriter write(byte[] value, int offset, int length) {
+    ensure(length);
+    System.arraycopy(value, offset, buffer, position, length);
+    position += length;
+    return this;
+  }
+  
+  /**
+   * Writes the remaining bytes of the given {@link ByteBuffer} as-is.
+   */
+  public BinaryWriter write(ByteBuffer value) {
+    int length = value.remaining();
+    ensure(length);
+    value.get(buffer, position, length);
+    position += length;
+    return this;
+  }
+  
+  /**
+   * Writes a length-prefixed {@code byte[]}.
+   *
+   * @see ByteUtils#writeBytes(byte[], OutputStream)
+   */
+  public BinaryWriter writeBytes(byte[] value) {
+    return writeBytes(value, 0, value.length);
+  }
+  
+  /**
+   * Writes a length-prefixed {@code byte[]}.
+   *
+   * @see ByteUtils#writeBytes(byte[], int, int, OutputStream)
+   */
+  public BinaryWriter writeBytes(byte[] value, int offset, int length) {
+    writeVarInt(length);
+    return write(value, offset, length);
+  }
+  
+  /**
+   * Writes a length-prefixed UTF-8 encoded {@link String} without
+   * creating an intermediate {@code byte[]}.
+   *
+   * @see org.ardverk.utils.StringUtils#writeString(String, OutputStream)
+   */
+  public BinaryWriter writeString(String value) {
+    int length = value.length();
+    
+    int count = 0;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        count += 1;
+      } else if (c < 0x800) {
+        count += 2;
+      } else if (isSurrogatePair(value, i)) {
+        count += 4;
+        ++i;
+      } else if (Character.isSurrogate(c)) {
+        count += 1;
+      } else {
+        count += 3;
+      }
+    }
+    
+    writeVarInt(count);
+    ensure(count);
+    
+    byte[] buffer = this.buffer;
+    int position = this.position;
+    
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buffer[position++] = (byte)c;
+      } else if (c < 0x800) {
+        buffer[position++] = (byte)(0xC0 | (c >>> 6));
+        buffer[position++] = (byte)(0x80 | (c & 0x3F));
+      } else if (isSurrogatePair(value, i)) {
+        int cp = Character.toCodePoint(c, value.charAt(++i));
+        buffer[position++] = (byte)(0xF0 | (cp >>> 18));
+        buffer[position++] = (byte)(0x80 | ((cp >>> 12) & 0x3F));
+        buffer[position++] = (byte)(0x80 | ((cp >>> 6) & 0x3F));
+        buffer[position++] = (byte)(0x80 | (cp & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // Same as String#getBytes()
+        buffer[position++] = '?';
+      } else {
+        buffer[position++] = (byte)(0xE0 | (c >>> 12));
+        buffer[position++] = (byte)(0x80 | ((c >>> 6) & 0x3F));
+        buffer[position++] = (byte)(0x80 | (c & 0x3F));
+      }
+    }
+    
+    this.position = position;
+    return this;
+  }
+  
+  private static boolean isSurrogatePair(String value, int index) {
+    return Character.isHighSurrogate(value.charAt(index))
+        && index + 1 < value.length()
+        && Character.isLowSurrogate(value.charAt(index + 1));
+  }
+  
+  /**
+   * Writes the given {@link Streamable}.
+   */
+  public BinaryWriter write(Streamable value) throws IOException {
+    if (value instanceof BufferStreamable) {
+      return write((BufferStreamable)value);
+    }
+    
+    value.writeTo(asOutputStream());
+    return this;
+  }
+  
+  /**
+   * Writes the given {@link BufferStreamable} straight into the buffer.
+   */
+  public BinaryWriter write(BufferStreamable value) {
+    int length = value.serializedSize();
+    ensure(length);
+    
+    ByteBuffer dst = ByteBuffer.wrap(buffer, position, length);
+    value.writeTo(dst);
+    position = dst.position();
+    return this;
+  }
+  
+  /**
+   * Returns an {@link OutputStream} that writes into this
+   * {@link BinaryWriter}.
+   */
+  public OutputStream asOutputStream() {
+    if (out == null) {
+      out = new OutputStream() {
+        @Override
+        public void write(int b) {
+          writeByte(b);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+          BinaryWriter.this.write(b, off, len);
+        }
+      };
+    }
+    return out;
+  }
+  
+  /**
+   * Writes everything that was written so far to the
+   * given {@link OutputStream}.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(buffer, 0, size());
+  }
+  
+  /**
+   * Returns a copy of everything that was written so far.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer, size());
+  }
+  
+  /**
+   * Returns a {@link ByteBuffer} view of everything that was written
+   * so far. The view becomes invalid if the {@link BinaryWriter} grows
+   * or gets closed.
+   */
+  public ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(buffer, 0, size());
+  }
+  
+  /**
+   * Returns the buffer to the {@link BufferPool}.
+   */
+  @Override
+  public void close() {
+    byte[] buffer = this.buffer;
+    if (buffer != null) {
+      this.buffer = null;
+      this.bigEndian = null;
+      this.littleEndian = null;
+      pool.release(buffer);
+    }
+  }
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.ardverk.concurrent.VirtualThreadUtils;
+import org.ardverk.lang.ExceptionUtils;
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A pool of heap {@code byte[]}s and direct {@link ByteBuffer}s.
+ *
+ * <p>Buffers come in power of two size classes from {@link #MIN_SIZE}
+ * to {@link #MAX_SIZE}. Each platform {@link Thread} caches a few small 
+ * buffers (up to {@link #LOCAL_MAX_SIZE}) per size class, everything else 
+ * is shared through a bounded, lock-free pool. Virtual threads are too 
+ * short-lived for a cache and use the shared pool only. Larger buffers
+ * are being allocated and dropped as usual.
+ *
+ * <p>The content of an acquired buffer is undefined. A buffer must not
+ * be used after it was released.
+ *
+ * <p>The {@link BufferPool} tracks acquired buffers if the system property
+ * {@code org.ardverk.io.BufferPool.debug} is {@code true}. Buffers that are
+ * garbage collected without having been released are being reported to
+ * {@link ExceptionUtils#exceptionCaught(Throwable)} along with the stack
+ * trace of their acquisition.
+ */
+public class BufferPool {
+  
+  /**
+   * The smallest size class.
+   */
+  public static final int MIN_SIZE = 256;
+  
+  /**
+   * The largest size class.
+   */
+  public static final int MAX_SIZE = 1024 * 1024;
+  
+  private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+  
+  private static final int CLASSES
+    = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+  
+  /**
+   * The largest size class that is being cached per {@link Thread}.
+   */
+  public static final int LOCAL_MAX_SIZE = 32 * 1024;
+  
+  private static final int LOCAL_CLASSES
+    = Integer.numberOfTrailingZeros(LOCAL_MAX_SIZE) - MIN_SHIFT + 1;
+  
+  /**
+   * The number of buffers per size class and {@link Thread}.
+   */
+  private static final int LOCAL_CAPACITY = 4;
+  
+  /**
+   * The default number of shared buffers per size class.
+   */
+  private static final int SHARED_CAPACITY = 32;
+  
+  private static final boolean DEBUG
+    = Boolean.getBoolean("org.ardverk.io.BufferPool.debug");
+  
+  /**
+   * The default {@link BufferPool}.
+   */
+  public static final BufferPool DEFAULT = new BufferPool();
+  
+  private final Pool<byte[]> heap;
+  
+  private final Pool<ByteBuffer> direct;
+  
+  private final Tracker tracker;
+  
+  /**
+   * Creates a {@link BufferPool} with the default capacity.
+   */
+  public BufferPool() {
+    this(SHARED_CAPACITY, DEBUG);
+  }
+  
+  /**
+   * Creates a {@link BufferPool}.
+   *
+   * @param capacity The number of shared buffers per size class
+   * @param debug Whether or not acquired buffers are being tracked
+   */
+  public BufferPool(int capacity, boolean debug) {
+    Precoditions.argument(0 <= capacity, "capacity=%s", capacity);
+    
+    this.tracker = debug ? new Tracker() : null;
+    
+    this.heap = new Pool<byte[]>(capacity) {
+      @Override
+      protected byte[] create(int size) {
+        return new byte[size];
+      }
+    };
+    
+    this.direct = new Pool<ByteBuffer>(capacity) {
+      @Override
+      protected ByteBuffer create(int size) {
+        return ByteBuffer.allocateDirect(size);
+      }
+    };
+  }
+  
+  /**
+   * Returns a {@code byte[]} of at least the given size.
+   */
+  public byte[] acquire(int size) {
+    Precoditions.argument(0 <= size, "size=%s", size);
+    
+    int index = index(size);
+    byte[] buffer = (index != -1 ? heap.acquire(index) : new byte[size]);
+    
+    if (tracker != null) {
+      tracker.acquired(buffer);
+    }
+    return buffer;
+  }
+  
+  /**
+   * Returns the given {@code byte[]} to the {@link BufferPool}.
+   */
+  public void release(byte[] buffer) {
+    if (tracker != null) {
+      tracker.released(buffer);
+    }
+    
+    int index = index(buffer.length);
+    if (index != -1 && buffer.length == size(index)) {
+      heap.release(index, buffer);
+    }
+  }
+  
+  /**
+   * Returns a direct {@link ByteBuffer} whose capacity is at least the
+   * given size. Its position is zero and its limit is the given size.
+   */
+  public ByteBuffer acquireDirect(int size) {
+    Precoditions.argument(0 <= size, "size=%s", size);
+    
+    int index = index(size);
+    ByteBuffer buffer = (index != -1 ? direct.acquire(index)
+        : ByteBuffer.allocateDirect(size));
+    
+    if (tracker != null) {
+      tracker.acquired(buffer);
+    }
+    
+    buffer.clear().limit(size);
+    return buffer;
+  }
+  
+  /**
+   * Returns the given direct {@link ByteBuffer} to the {@link BufferPool}.
+   */
+  public void releaseDirect(ByteBuffer buffer) {
+    if (tracker != null) {
+      tracker.released(buffer);
+    }
+    
+    int capacity = buffer.capacity();
+    int index = index(capacity);
+    if (buffer.isDirect() && index != -1 && capacity == size(index)) {
+      direct.release(index, buffer);
+    }
+  }
+  
+  /**
+   * Returns the number of acquired buffers that haven't been released
+   * yet or -1 if the {@link BufferPool} is not tracking buffers.
+   */
+  public int getOutstanding() {
+    return tracker != null ? tracker.size() : -1;
+  }
+  
+  /**
+   * Returns the size class for the given size or -1 if
+   * it's larger than {@link #MAX_SIZE}.
+   */
+  private static int index(int size) {
+    if (size <= MIN_SIZE) {
+      return 0;
+    }
+    
+    if (size > MAX_SIZE) {
+      return -1;
+    }
+    
+    return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+  }
+  
+  private static int size(int index) {
+    return 1 << (index + MIN_SHIFT);
+  }
+  
+  /**
+   * The thread-local and shared buffers of one kind.
+   */
+  private abstract static class Pool<T> {
+    
+    private static final Object[][] NO_CACHE = new Object[0][];
+    
+    private final AtomicReferenceArray<T>[] shared;
+    
+    private final ThreadLocal<Object[][]> local = new ThreadLocal<Object[][]>() {
+      @Override
+      protected Object[][] initialValue() {
+        if (VirtualThreadUtils.isVirtual(Thread.currentThread())) {
+          return NO_CACHE;
+        }
+        return new Object[LOCAL_CLASSES][LOCAL_CAPACITY];
+      }
+    };
+    
+    @SuppressWarnings("unchecked")
+    public Pool(int capacity) {
+      shared = (AtomicReferenceArray<T>[])
+          new AtomicReferenceArray<?>[CLASSES];
+      for (int i = 0; i < shared.length; i++) {
+        shared[i] = new AtomicReferenceArray<T>(capacity);
+      }
+    }
+    
+    /**
+     * Returns the {@link Thread}'s cache for the given size 
+     * class or {@code null} if it's not being cached.
+     */
+    private Object[] cache(int index) {
+      if (index >= LOCAL_CLASSES) {
+        return null;
+      }
+      
+      Object[][] caches = local.get();
+      return index < caches.length ? caches[index] : null;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public T acquire(int index) {
+      Object[] cache = cache(index);
+      if (cache != null) {
+        for (int i = 0; i < cache.length; i++) {
+          Object buffer = cache[i];
+          if (buffer != null) {
+            cache[i] = null;
+            return (T)buffer;
+          }
+        }
+      }
+      
+      AtomicReferenceArray<T> slots = shared[index];
+      int length = slots.length();
+      int offset = offset(length);
+      
+      for (int i = 0; i < length; i++) {
+        int slot = (offset + i) % length;
+        T buffer = slots.get(slot);
+        if (buffer != null && slots.compareAndSet(slot, buffer, null)) {
+          return buffer;
+        }
+      }
+      
+      return create(size(index));
+    }
+    
+    public void release(int index, T buffer) {
+      Object[] cache = cache(index);
+      if (cache != null) {
+        for (int i = 0; i < cache.length; i++) {
+          if (cache[i] == null) {
+            cache[i] = buffer;
+            return;
+          }
+        }
+      }
+      
+      AtomicReferenceArray<T> slots = shared[index];
+      int length = slots.length();
+      int offset = offset(length);
+      
+      for (int i = 0; i < length; i++) {
+        int slot = (offset + i) % length;
+        if (slots.get(slot) == null
+            && slots.compareAndSet(slot, null, buffer)) {
+          return;
+        }
+      }
+      
+      // The pool is full, leave the buffer to the GC
+    }
+    
+    /**
+     * Spreads the {@link Thread}s over the shared slots.
+     */
+    private static int offset(int length) {
+      if (length == 0) {
+        return 0;
+      }
+      
+      long id = Thread.currentThread().getId();
+      int hash = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+      return ((hash ^ (hash >>> 16)) & 0x7FFFFFFF) % length;
+    }
+    
+    protected abstract T create(int size);
+  }
+  
+  /**
+   * Keeps track of acquired buffers with {@link WeakReference}s.
+   */
+  private static class Tracker {
+    
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    
+    private final Map<Acquisition, Acquisition> acquired
+      = new HashMap<Acquisition, Acquisition>();
+    
+    public void acquired(Object buffer) {
+      Acquisition acquisition = new Acquisition(buffer, queue);
+      
+      synchronized (acquired) {
+        acquired.put(acquisition, acquisition);
+      }
+      
+      poll();
+    }
+    
+    public void released(Object buffer) {
+      Acquisition acquisition = null;
+      synchronized (acquired) {
+        acquisition = acquired.remove(new Acquisition(buffer, null));
+      }
+      
+      if (acquisition == null) {
+        throw new IllegalStateException(
+            "The buffer was released twice or not acquired from this pool");
+      }
+      
+      acquisition.clear();
+    }
+    
+    public int size() {
+      poll();
+      
+      synchronized (acquired) {
+        return acquired.size();
+      }
+    }
+    
+    /**
+     * Reports all buffers that were garbage collected.
+     */
+    private void poll() {
+      Reference<?> ref = null;
+      while ((ref = queue.poll()) != null) {
+        Acquisition acquisition = null;
+        synchronized (acquired) {
+          acquisition = acquired.remove(ref);
+        }
+        
+        if (acquisition != null) {
+          ExceptionUtils.exceptionCaught(new IllegalStateException(
+              "A buffer was not released", acquisition.stackTrace));
+        }
+      }
+    }
+  }
+  
+  /**
+   * A {@link WeakReference} to an acquired buffer that compares by identity.
+   */
+  private static class Acquisition extends WeakReference<Object> {
+    
+    private final int hashCode;
+    
+    private final Throwable stackTrace;
+    
+    public Acquisition(Object buffer, ReferenceQueue<Object> queue) {
+      super(buffer, queue);
+      this.hashCode = System.identityHashCode(buffer);
+      this.stackTrace = (queue != null ? new Throwable("Acquired") : null);
+    }
+    
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      } else if (!(o instanceof Acquisition)) {
+        return false;
+      }
+      
+      Object buffer = get();
+      return buffer != null && buffer == ((Acquisition)o).get();
+    }
+  }
+}
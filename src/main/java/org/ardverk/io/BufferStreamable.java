@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Streamable} that knows its exact serialized size and can
+ * write itself straight into a {@link ByteBuffer}.
+ * 
+ * @see GatheringWriter
+ * @see AbstractBufferStreamable
+ */
+public interface BufferStreamable extends Streamable {
+  
+  /**
+   * Returns the exact number of bytes {@link #writeTo(ByteBuffer)} and
+   * {@link #writeTo(java.io.OutputStream)} will write.
+   */
+  public int serializedSize();
+  
+  /**
+   * Writes this Object to the given {@link ByteBuffer} and advances its
+   * position by {@link #serializedSize()} bytes.
+   * 
+   * @throws BufferOverflowException if there is not enough room
+   */
+  public void writeTo(ByteBuffer dst);
+}
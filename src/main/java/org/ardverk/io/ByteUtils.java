@@ -21,6 +21,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public class ByteUtils {
 
@@ -67,4 +68,33 @@ public class ByteUtils {
     byte[] data = new byte[length];
     return readFully(in, data);
   }
+  
+  /**
+   * Reads a length-prefixed {@code byte[]} into a buffer from the given
+   * {@link BufferPool}. The returned {@link ByteBuffer}'s limit is the
+   * length of the data and its array should be released to the 
+   * {@link BufferPool} once it's no longer needed.
+   * 
+   * @see #writeBytes(byte[], OutputStream)
+   */
+  public static ByteBuffer readBytes(InputStream in, 
+      BufferPool pool) throws IOException {
+    int length = DataUtils.vbeb2int(in);
+    if (length < 0) {
+      throw new IOException("length=" + length);
+    }
+    
+    byte[] data = pool.acquire(length);
+    boolean success = false;
+    try {
+      readFully(in, data, 0, length);
+      success = true;
+    } finally {
+      if (!success) {
+        pool.release(data);
+      }
+    }
+    
+    return ByteBuffer.wrap(data, 0, length);
+  }
 }
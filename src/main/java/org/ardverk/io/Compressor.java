@@ -17,9 +17,14 @@
 package org.ardverk.io;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 /**
  * A {@link Compressor} is a simple byte-array based compression facility.
+ * It supports {@link ByteBuffer}s and streams as well.
  */
 public interface Compressor {
   
@@ -49,4 +54,51 @@ public interface Compressor {
    */
   public byte[] decompress(byte[] value, 
       int offset, int length) throws IOException;
+  
+  /**
+   * Compresses the remaining bytes of the source {@link ByteBuffer} into 
+   * the destination {@link ByteBuffer} and returns the number of bytes 
+   * that were written.
+   * 
+   * @throws BufferOverflowException If there is not enough room in
+   * the destination {@link ByteBuffer}.
+   */
+  public int compress(ByteBuffer src, ByteBuffer dst) throws IOException;
+  
+  /**
+   * Decompresses the remaining bytes of the source {@link ByteBuffer} into 
+   * the destination {@link ByteBuffer} and returns the number of bytes 
+   * that were written.
+   * 
+   * @throws BufferOverflowException If there is not enough room in
+   * the destination {@link ByteBuffer}.
+   */
+  public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException;
+  
+  /**
+   * Compresses everything from the {@link InputStream} into the 
+   * {@link OutputStream} and returns the number of uncompressed bytes.
+   * Neither stream is being closed.
+   */
+  public long compress(InputStream in, OutputStream out) throws IOException;
+  
+  /**
+   * Decompresses everything from the {@link InputStream} into the 
+   * {@link OutputStream} and returns the number of uncompressed bytes.
+   * Neither stream is being closed.
+   */
+  public long decompress(InputStream in, OutputStream out) throws IOException;
+  
+  /**
+   * Returns an {@link OutputStream} that compresses all data that is 
+   * written to it into the given {@link OutputStream}. The compressed 
+   * data is complete once the returned {@link OutputStream} is closed.
+   */
+  public OutputStream createOutputStream(OutputStream out) throws IOException;
+  
+  /**
+   * Returns an {@link InputStream} that decompresses the data 
+   * of the given {@link InputStream}.
+   */
+  public InputStream createInputStream(InputStream in) throws IOException;
 }
\ No newline at end of file
@@ -20,6 +20,12 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.ardverk.lang.Precoditions;
 
 /**
  * A collection of binary operations.
@@ -547,4 +553,387 @@ public class DataUtils {
     assert (b & 0x80) == 0;
     return i | ((b & 0x7F) << 28);
   }
+  
+  /**
+   * Writes a variable length {@code int} to the given {@link ByteBuffer}.
+   * 
+   * @throws BufferOverflowException if there is not enough room in 
+   *    the {@link ByteBuffer}.
+   */
+  public static ByteBuffer int2vbeb(int value, ByteBuffer dst) {
+    while ((value & ~0x7F) != 0) {
+      dst.put((byte)((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    return dst.put((byte)value);
+  }
+  
+  /**
+   * Reads a variable length {@code int} from the given {@link ByteBuffer}.
+   * 
+   * @throws BufferUnderflowException if the {@link ByteBuffer} has
+   *    no remaining bytes.
+   */
+  public static int vbeb2int(ByteBuffer in) {
+    int b = in.get();
+    int i = b & 0x7F;
+    if ((b & 0x80) == 0) return i;
+    b = in.get();
+    i |= (b & 0x7F) << 7;
+    if ((b & 0x80) == 0) return i;
+    b = in.get();
+    i |= (b & 0x7F) << 14;
+    if ((b & 0x80) == 0) return i;
+    b = in.get();
+    i |= (b & 0x7F) << 21;
+    if ((b & 0x80) == 0) return i;
+    b = in.get();
+    assert (b & 0x80) == 0;
+    return i | ((b & 0x7F) << 28);
+  }
+  
+  /**
+   * Maps a signed {@code int} to an unsigned {@code int} such that
+   * small negative values turn into small positive values.
+   */
+  public static int int2zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+  
+  /**
+   * The inverse of {@link #int2zigzag(int)}.
+   */
+  public static int zigzag2int(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+  
+  /**
+   * Maps a signed {@code long} to an unsigned {@code long} such that
+   * small negative values turn into small positive values.
+   */
+  public static long long2zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+  
+  /**
+   * The inverse of {@link #long2zigzag(long)}.
+   */
+  public static long zigzag2long(long value) {
+    return (value >>> 1) ^ -(value & 1L);
+  }
+  
+  public static void long2vbeb(long value, OutputStream out) throws IOException {
+    while ((value & ~0x7FL) != 0L) {
+      out.write((int)((value & 0x7FL) | 0x80L));
+      value >>>= 7;
+    }
+    out.write((int)value);
+  }
+  
+  public static long vbeb2long(InputStream in) throws IOException {
+    long value = 0L;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      int b = read(in);
+      value |= (b & 0x7FL) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length long");
+  }
+  
+  /**
+   * Converts the given {@code short[]} into a {@code byte[]}.
+   */
+  public static byte[] shorts2bytes(short[] src, ByteOrder order) {
+    byte[] dst = new byte[src.length * SHORT];
+    shorts2bytes(src, 0, src.length, dst, 0, order);
+    return dst;
+  }
+  
+  /**
+   * Converts the given range of the {@code short[]} into the {@code byte[]}.
+   */
+  public static void shorts2bytes(short[] src, int offset, int length, 
+      byte[] dst, int dstOffset, ByteOrder order) {
+    ByteBuffer.wrap(dst, dstOffset, length * SHORT).order(order)
+      .asShortBuffer().put(src, offset, length);
+  }
+  
+  /**
+   * Writes the given range of the {@code short[]} into the {@link ByteBuffer} 
+   * and advances its position.
+   */
+  public static void shorts2bytes(short[] src, int offset, int length, 
+      ByteBuffer dst, ByteOrder order) {
+    dst.duplicate().order(order).asShortBuffer().put(src, offset, length);
+    dst.position(dst.position() + length * SHORT);
+  }
+  
+  /**
+   * Converts the given {@code byte[]} into a {@code short[]}.
+   */
+  public static short[] bytes2shorts(byte[] src, ByteOrder order) {
+    Precoditions.argument(src.length % SHORT == 0, 
+        "src.length=%s", src.length);
+    
+    short[] dst = new short[src.length / SHORT];
+    bytes2shorts(src, 0, dst, 0, dst.length, order);
+    return dst;
+  }
+  
+  /**
+   * Converts the {@code byte[]} into the given range of the {@code short[]}.
+   */
+  public static void bytes2shorts(byte[] src, int srcOffset, 
+      short[] dst, int offset, int length, ByteOrder order) {
+    ByteBuffer.wrap(src, srcOffset, length * SHORT).order(order)
+      .asShortBuffer().get(dst, offset, length);
+  }
+  
+  /**
+   * Reads the given range of the {@code short[]} from the {@link ByteBuffer} 
+   * and advances its position.
+   */
+  public static void bytes2shorts(ByteBuffer src, 
+      short[] dst, int offset, int length, ByteOrder order) {
+    src.duplicate().order(order).asShortBuffer().get(dst, offset, length);
+    src.position(src.position() + length * SHORT);
+  }
+  
+  /**
+   * Converts the given {@code int[]} into a {@code byte[]}.
+   */
+  public static byte[] ints2bytes(int[] src, ByteOrder order) {
+    byte[] dst = new byte[src.length * INT];
+    ints2bytes(src, 0, src.length, dst, 0, order);
+    return dst;
+  }
+  
+  /**
+   * Converts the given range of the {@code int[]} into the {@code byte[]}.
+   */
+  public static void ints2bytes(int[] src, int offset, int length, 
+      byte[] dst, int dstOffset, ByteOrder order) {
+    ByteBuffer.wrap(dst, dstOffset, length * INT).order(order)
+      .asIntBuffer().put(src, offset, length);
+  }
+  
+  /**
+   * Writes the given range of the {@code int[]} into the {@link ByteBuffer} 
+   * and advances its position.
+   */
+  public static void ints2bytes(int[] src, int offset, int length, 
+      ByteBuffer dst, ByteOrder order) {
+    dst.duplicate().order(order).asIntBuffer().put(src, offset, length);
+    dst.position(dst.position() + length * INT);
+  }
+  
+  /**
+   * Converts the given {@code byte[]} into a {@code int[]}.
+   */
+  public static int[] bytes2ints(byte[] src, ByteOrder order) {
+    Precoditions.argument(src.length % INT == 0, 
+        "src.length=%s", src.length);
+    
+    int[] dst = new int[src.length / INT];
+    bytes2ints(src, 0, dst, 0, dst.length, order);
+    return dst;
+  }
+  
+  /**
+   * Converts the {@code byte[]} into the given range of the {@code int[]}.
+   */
+  public static void bytes2ints(byte[] src, int srcOffset, 
+      int[] dst, int offset, int length, ByteOrder order) {
+    ByteBuffer.wrap(src, srcOffset, length * INT).order(order)
+      .asIntBuffer().get(dst, offset, length);
+  }
+  
+  /**
+   * Reads the given range of the {@code int[]} from the {@link ByteBuffer} 
+   * and advances its position.
+   */
+  public static void bytes2ints(ByteBuffer src, 
+      int[] dst, int offset, int length, ByteOrder order) {
+    src.duplicate().order(order).asIntBuffer().get(dst, offset, length);
+    src.position(src.position() + length * INT);
+  }
+  
+  /**
+   * Converts the given {@code long[]} into a {@code byte[]}.
+   */
+  public static byte[] longs2bytes(long[] src, ByteOrder order) {
+    byte[] dst = new byte[src.length * LONG];
+    longs2bytes(src, 0, src.length, dst, 0, order);
+    return dst;
+  }
+  
+  /**
+   * Converts the given range of the {@code long[]} into the {@code byte[]}.
+   */
+  public static void longs2bytes(long[] src, int offset, int length, 
+      byte[] dst, int dstOffset, ByteOrder order) {
+    ByteBuffer.wrap(dst, dstOffset, length * LONG).order(order)
+      .asLongBuffer().put(src, offset, length);
+  }
+  
+  /**
+   * Writes the given range of the {@code long[]} into the {@link ByteBuffer} 
+   * and advances its position.
+   */
+  public static void longs2bytes(long[] src, int offset, int length, 
+      ByteBuffer dst, ByteOrder order) {
+    dst.duplicate().order(order).asLongBuffer().put(src, offset, length);
+    dst.position(dst.position() + length * LONG);
+  }
+  
+  /**
+   * Converts the given {@code byte[]} into a {@code long[]}.
+   */
+  public static long[] bytes2longs(byte[] src, ByteOrder order) {
+    Precoditions.argument(src.length % LONG == 0, 
+        "src.length=%s", src.length);
+    
+    long[] dst = new long[src.length / LONG];
+    bytes2longs(src, 0, dst, 0, dst.length, order);
+    return dst;
+  }
+  
+  /**
+   * Converts the {@code byte[]} into the given range of the {@code long[]}.
+   */
+  public static void bytes2longs(byte[] src, int srcOffset, 
+      long[] dst, int offset, int length, ByteOrder order) {
+    ByteBuffer.wrap(src, srcOffset, length * LONG).order(order)
+      .asLongBuffer().get(dst, offset, length);
+  }
+  
+  /**
+   * Reads the given range of the {@code long[]} from the {@link ByteBuffer} 
+   * and advances its position.
+   */
+  public static void bytes2longs(ByteBuffer src, 
+      long[] dst, int offset, int length, ByteOrder order) {
+    src.duplicate().order(order).asLongBuffer().get(dst, offset, length);
+    src.position(src.position() + length * LONG);
+  }
+  
+  /**
+   * Converts the given {@code float[]} into a {@code byte[]}.
+   */
+  public static byte[] floats2bytes(float[] src, ByteOrder order) {
+    byte[] dst = new byte[src.length * FLOAT];
+    floats2bytes(src, 0, src.length, dst, 0, order);
+    return dst;
+  }
+  
+  /**
+   * Converts the given range of the {@code float[]} into the {@code byte[]}.
+   */
+  public static void floats2bytes(float[] src, int offset, int length, 
+      byte[] dst, int dstOffset, ByteOrder order) {
+    ByteBuffer.wrap(dst, dstOffset, length * FLOAT).order(order)
+      .asFloatBuffer().put(src, offset, length);
+  }
+  
+  /**
+   * Writes the given range of the {@code float[]} into the {@link ByteBuffer} 
+   * and advances its position.
+   */
+  public static void floats2bytes(float[] src, int offset, int length, 
+      ByteBuffer dst, ByteOrder order) {
+    dst.duplicate().order(order).asFloatBuffer().put(src, offset, length);
+    dst.position(dst.position() + length * FLOAT);
+  }
+  
+  /**
+   * Converts the given {@code byte[]} into a {@code float[]}.
+   */
+  public static float[] bytes2floats(byte[] src, ByteOrder order) {
+    Precoditions.argument(src.length % FLOAT == 0, 
+        "src.length=%s", src.length);
+    
+    float[] dst = new float[src.length / FLOAT];
+    bytes2floats(src, 0, dst, 0, dst.length, order);
+    return dst;
+  }
+  
+  /**
+   * Converts the {@code byte[]} into the given range of the {@code float[]}.
+   */
+  public static void bytes2floats(byte[] src, int srcOffset, 
+      float[] dst, int offset, int length, ByteOrder order) {
+    ByteBuffer.wrap(src, srcOffset, length * FLOAT).order(order)
+      .asFloatBuffer().get(dst, offset, length);
+  }
+  
+  /**
+   * Reads the given range of the {@code float[]} from the {@link ByteBuffer} 
+   * and advances its position.
+   */
+  public static void bytes2floats(ByteBuffer src, 
+      float[] dst, int offset, int length, ByteOrder order) {
+    src.duplicate().order(order).asFloatBuffer().get(dst, offset, length);
+    src.position(src.position() + length * FLOAT);
+  }
+  
+  /**
+   * Converts the given {@code double[]} into a {@code byte[]}.
+   */
+  public static byte[] doubles2bytes(double[] src, ByteOrder order) {
+    byte[] dst = new byte[src.length * DOUBLE];
+    doubles2bytes(src, 0, src.length, dst, 0, order);
+    return dst;
+  }
+  
+  /**
+   * Converts the given range of the {@code double[]} into the {@code byte[]}.
+   */
+  public static void doubles2bytes(double[] src, int offset, int length, 
+      byte[] dst, int dstOffset, ByteOrder order) {
+    ByteBuffer.wrap(dst, dstOffset, length * DOUBLE).order(order)
+      .asDoubleBuffer().put(src, offset, length);
+  }
+  
+  /**
+   * Writes the given range of the {@code double[]} into the {@link ByteBuffer} 
+   * and advances its position.
+   */
+  public static void doubles2bytes(double[] src, int offset, int length, 
+      ByteBuffer dst, ByteOrder order) {
+    dst.duplicate().order(order).asDoubleBuffer().put(src, offset, length);
+    dst.position(dst.position() + length * DOUBLE);
+  }
+  
+  /**
+   * Converts the given {@code byte[]} into a {@code double[]}.
+   */
+  public static double[] bytes2doubles(byte[] src, ByteOrder order) {
+    Precoditions.argument(src.length % DOUBLE == 0, 
+        "src.length=%s", src.length);
+    
+    double[] dst = new double[src.length / DOUBLE];
+    bytes2doubles(src, 0, dst, 0, dst.length, order);
+    return dst;
+  }
+  
+  /**
+   * Converts the {@code byte[]} into the given range of the {@code double[]}.
+   */
+  public static void bytes2doubles(byte[] src, int srcOffset, 
+      double[] dst, int offset, int length, ByteOrder order) {
+    ByteBuffer.wrap(src, srcOffset, length * DOUBLE).order(order)
+      .asDoubleBuffer().get(dst, offset, length);
+  }
+  
+  /**
+   * Reads the given range of the {@code double[]} from the {@link ByteBuffer} 
+   * and advances its position.
+   */
+  public static void bytes2doubles(ByteBuffer src, 
+      double[] dst, int offset, int length, ByteOrder order) {
+    src.duplicate().order(order).asDoubleBuffer().get(dst, offset, length);
+    src.position(src.position() + length * DOUBLE);
+  }
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A {@link Compressor} that primes DEFLATE with a preset {@link Dictionary}.
+ * Small messages that share a lot of structure compress much better
+ * because they don't start with an empty window.
+ *
+ * <p>The compressed form is the {@link Dictionary}'s ID as a varint
+ * followed by a ZLIB stream. The ZLIB header carries the Adler-32 of
+ * the {@link Dictionary} and the trailer the Adler-32 of the data which
+ * means a mismatched {@link Dictionary} and corrupt data are detected.
+ * Data is always compressed with the current {@link Dictionary} but can 
+ * be decompressed with any of the known {@link Dictionary}s which allows 
+ * rolling out a new version.
+ *
+ * @see DictionaryTrainer
+ */
+public class DictionaryCompressor extends AbstractDeflateCompressor {
+  
+  /**
+   * The maximum length of a varint encoded ID.
+   */
+  private static final int MAX_ID_LENGTH = 5;
+  
+  /**
+   * The FDICT flag of the ZLIB header.
+   */
+  private static final int FDICT = 0x20;
+  
+  /**
+   * The length of the DICTID field of the ZLIB header.
+   */
+  private static final int DICTID_LENGTH = 4;
+  
+  private final Dictionary dictionary;
+  
+  /**
+   * The varint encoded ID of the current {@link Dictionary}.
+   */
+  private final byte[] header;
+  
+  private final Map<Integer, Dictionary> dictionaries;
+  
+  /**
+   * Creates a {@link DictionaryCompressor}.
+   *
+   * @param dictionary The {@link Dictionary} for compression
+   * @param previous Additional {@link Dictionary}s for decompression
+   */
+  public DictionaryCompressor(Dictionary dictionary, Dictionary... previous) {
+    super("DEFLATE/DICTIONARY", false);
+    
+    this.dictionary = Precoditions.notNull(dictionary, "dictionary");
+    
+    ByteBuffer buffer = DataUtils.int2vbeb(dictionary.getId(), 
+        ByteBuffer.allocate(MAX_ID_LENGTH));
+    this.header = Arrays.copyOf(buffer.array(), buffer.position());
+    
+    Map<Integer, Dictionary> dictionaries
+      = new HashMap<Integer, Dictionary>();
+    dictionaries.put(dictionary.getId(), dictionary);
+    
+    for (Dictionary other : previous) {
+      Precoditions.notNull(other, "dictionary");
+      
+      Dictionary existing = dictionaries.put(other.getId(), other);
+      Precoditions.argument(existing == null,
+          "Duplicate dictionary: %s", other.getId());
+    }
+    
+    this.dictionaries = Collections.unmodifiableMap(dictionaries);
+  }
+  
+  /**
+   * Returns the {@link Dictionary} that is used for compression.
+   */
+  public Dictionary getDictionary() {
+    return dictionary;
+  }
+  
+  /**
+   * Returns all {@link Dictionary}s that can be used for decompression.
+   */
+  public Collection<Dictionary> getDictionaries() {
+    return dictionaries.values();
+  }
+  
+  /**
+   * Returns the {@link Dictionary} for the given ID.
+   *
+   * @throws IOException If the {@link Dictionary} is unknown
+   */
+  private Dictionary getDictionary(int id) throws IOException {
+    Dictionary dictionary = dictionaries.get(id);
+    if (dictionary == null) {
+      throw new IOException("Unknown dictionary: " + id);
+    }
+    return dictionary;
+  }
+  
+  /**
+   * Checks the requested {@link Dictionary}'s Adler-32 and sets it.
+   */
+  private static void setDictionary(Inflater inflater, 
+      Dictionary dictionary) throws IOException {
+    if (inflater.getAdler() != dictionary.adler) {
+      throw new IOException("Dictionary mismatch: " + dictionary.getId());
+    }
+    inflater.setDictionary(dictionary.data);
+  }
+  
+  @Override
+  protected int getWrapperLength() {
+    return MAX_ID_LENGTH + DICTID_LENGTH;
+  }
+  
+  @Override
+  protected int writeHeader(byte[] dst, int offset) {
+    if (dst.length - offset < header.length) {
+      throw new BufferOverflowException();
+    }
+    
+    System.arraycopy(header, 0, dst, offset, header.length);
+    return header.length;
+  }
+  
+  @Override
+  protected int readHeader(byte[] value, int offset, int length)
+      throws IOException {
+    
+    int count = Math.min(length, MAX_ID_LENGTH);
+    for (int i = 0; i < count; i++) {
+      if ((value[offset + i] & 0x80) == 0) {
+        return i + 1;
+      }
+    }
+    
+    if (length < MAX_ID_LENGTH) {
+      throw new EOFException();
+    }
+    throw new IOException("Malformed dictionary ID");
+  }
+  
+  @Override
+  protected void init(Deflater deflater) {
+    deflater.setDictionary(dictionary.data);
+  }
+  
+  @Override
+  protected void setDictionary(Inflater inflater, byte[] value, int offset,
+      int length) throws IOException {
+    
+    int id = DataUtils.vbeb2int(ByteBuffer.wrap(value, offset, length));
+    setDictionary(inflater, getDictionary(id));
+  }
+  
+  @Override
+  public OutputStream createOutputStream(OutputStream out) throws IOException {
+    out.write(header);
+    
+    final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    init(deflater);
+    
+    return new DeflaterOutputStream(out, deflater, StreamUtils.BUFFER_SIZE) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          deflater.end();
+        }
+      }
+    };
+  }
+  
+  @Override
+  public InputStream createInputStream(InputStream in) throws IOException {
+    int id = 0;
+    for (int i = 0; ; i++) {
+      if (i == MAX_ID_LENGTH) {
+        throw new IOException("Malformed dictionary ID");
+      }
+      
+      int value = in.read();
+      if (value == -1) {
+        throw new EOFException();
+      }
+      
+      id |= (value & 0x7F) << (7 * i);
+      if ((value & 0x80) == 0) {
+        break;
+      }
+    }
+    
+    final Inflater inflater = new Inflater();
+    try {
+      readZlibHeader(in, inflater, getDictionary(id));
+    } catch (IOException err) {
+      inflater.end();
+      throw err;
+    }
+    
+    return new InflaterInputStream(in, inflater, StreamUtils.BUFFER_SIZE) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          inflater.end();
+        }
+      }
+    };
+  }
+  
+  /**
+   * Feeds the ZLIB header to the {@link Inflater} and sets the
+   * {@link Dictionary} it asks for. {@link InflaterInputStream} 
+   * can't do it because it treats a missing dictionary as EOF.
+   */
+  private static void readZlibHeader(InputStream in, Inflater inflater, 
+      Dictionary dictionary) throws IOException {
+    
+    byte[] header = new byte[2 + DICTID_LENGTH];
+    StreamUtils.readFully(in, header, 0, 2);
+    
+    int length = 2;
+    if ((header[1] & FDICT) != 0) {
+      StreamUtils.readFully(in, header, 2, DICTID_LENGTH);
+      length += DICTID_LENGTH;
+    }
+    
+    inflater.setInput(header, 0, length);
+    try {
+      inflater.inflate(new byte[1]);
+    } catch (DataFormatException err) {
+      throw new IOException("DataFormatException", err);
+    }
+    
+    if (inflater.needsDictionary()) {
+      setDictionary(inflater, dictionary);
+    }
+  }
+  
+  /**
+   * A preset dictionary and its ID.
+   */
+  public static class Dictionary {
+    
+    /**
+     * The maximum useful size of a {@link Dictionary}. DEFLATE can't
+     * reference anything that is further back than its 32KB window.
+     */
+    public static final int MAX_SIZE = 32 * 1024;
+    
+    private final int id;
+    
+    private final byte[] data;
+    
+    private final int adler;
+    
+    /**
+     * Creates a {@link Dictionary}.
+     *
+     * @param id A non-negative ID
+     * @param data The dictionary's content. The most common strings
+     * should be at the end.
+     */
+    public Dictionary(int id, byte[] data) {
+      Precoditions.argument(0 <= id, "id=%s", id);
+      Precoditions.notNull(data, "data");
+      Precoditions.argument(data.length <= MAX_SIZE,
+          "data.length=%s", data.length);
+      
+      this.id = id;
+      this.data = data.clone();
+      
+      Adler32 checksum = new Adler32();
+      checksum.update(this.data);
+      this.adler = (int)checksum.getValue();
+    }
+    
+    /**
+     * Returns the ID.
+     */
+    public int getId() {
+      return id;
+    }
+    
+    /**
+     * Returns a copy of the dictionary's content.
+     */
+    public byte[] getData() {
+      return data.clone();
+    }
+    
+    /**
+     * Returns the size of the dictionary.
+     */
+    public int size() {
+      return data.length;
+    }
+    
+    @Override
+    public String toString() {
+      return "Dictionary(" + id + ", " + data.length + ")";
+    }
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.ardverk.io.DictionaryCompressor.Dictionary;
+import org.ardverk.lang.Precoditions;
+
+/**
+ * Builds a {@link Dictionary} from sample payloads.
+ *
+ * <p>The samples are being cut into short segments and each segment is
+ * scored by how many of its k-mers occur in other samples as well. The
+ * best segments are picked greedily, k-mers that are already covered by
+ * a picked segment don't count again. The best segment ends up at the
+ * end of the {@link Dictionary} where DEFLATE can reach it with the
+ * shortest distances.
+ */
+public class DictionaryTrainer {
+  
+  /**
+   * The default size of a {@link Dictionary}.
+   */
+  public static final int DEFAULT_SIZE = 16 * 1024;
+  
+  /**
+   * The length of a k-mer.
+   */
+  private static final int K = 6;
+  
+  /**
+   * The length of a segment.
+   */
+  private static final int SEGMENT_SIZE = 32;
+  
+  private final List<byte[]> samples = new ArrayList<byte[]>();
+  
+  /**
+   * Adds a sample.
+   */
+  public DictionaryTrainer add(byte[] sample) {
+    return add(sample, 0, sample.length);
+  }
+  
+  /**
+   * Adds a sample.
+   */
+  public DictionaryTrainer add(byte[] sample, int offset, int length) {
+    samples.add(Arrays.copyOfRange(sample, offset, offset + length));
+    return this;
+  }
+  
+  /**
+   * Returns the number of samples.
+   */
+  public int size() {
+    return samples.size();
+  }
+  
+  /**
+   * Builds a {@link Dictionary} with the default size.
+   */
+  public Dictionary train(int id) {
+    return train(id, DEFAULT_SIZE);
+  }
+  
+  /**
+   * Builds a {@link Dictionary} that is at most the given size.
+   */
+  public Dictionary train(int id, int size) {
+    Precoditions.argument(0 < size && size <= Dictionary.MAX_SIZE,
+        "size=%s", size);
+    
+    Map<Long, Frequency> frequencies = frequencies();
+    
+    PriorityQueue<Segment> queue = new PriorityQueue<Segment>();
+    for (int i = 0; i < samples.size(); i++) {
+      byte[] sample = samples.get(i);
+      for (int offset = 0; offset + K <= sample.length;
+          offset += SEGMENT_SIZE) {
+        
+        int length = Math.min(SEGMENT_SIZE, sample.length - offset);
+        Segment segment = new Segment(sample, offset, length);
+        segment.score = score(segment, frequencies);
+        
+        if (0 < segment.score) {
+          queue.add(segment);
+        }
+      }
+    }
+    
+    List<Segment> selected = new ArrayList<Segment>();
+    int total = 0;
+    
+    Segment segment = null;
+    while (total < size && (segment = queue.poll()) != null) {
+      // The score may have dropped since the segment was queued.
+      long score = score(segment, frequencies);
+      if (score != segment.score) {
+        segment.score = score;
+        if (0 < score) {
+          queue.add(segment);
+        }
+        continue;
+      }
+      
+      for (int i = 0; i + K <= segment.length; i++) {
+        Frequency frequency = frequencies.get(
+            kmer(segment.sample, segment.offset + i));
+        frequency.count = 0;
+      }
+      
+      selected.add(segment);
+      total += segment.length;
+    }
+    
+    byte[] data = new byte[Math.min(total, size)];
+    int position = data.length;
+    for (Segment s : selected) {
+      int length = Math.min(s.length, position);
+      position -= length;
+      System.arraycopy(s.sample, s.offset + s.length - length,
+          data, position, length);
+    }
+    
+    return new Dictionary(id, data);
+  }
+  
+  /**
+   * Counts in how many samples each k-mer occurs.
+   */
+  private Map<Long, Frequency> frequencies() {
+    Map<Long, Frequency> frequencies = new HashMap<Long, Frequency>();
+    for (int i = 0; i < samples.size(); i++) {
+      byte[] sample = samples.get(i);
+      for (int j = 0; j + K <= sample.length; j++) {
+        Long kmer = kmer(sample, j);
+        Frequency frequency = frequencies.get(kmer);
+        if (frequency == null) {
+          frequency = new Frequency();
+          frequencies.put(kmer, frequency);
+        }
+        
+        if (frequency.sample != i) {
+          frequency.sample = i;
+          ++frequency.count;
+        }
+      }
+    }
+    return frequencies;
+  }
+  
+  /**
+   * Returns the sum of the frequencies of the segment's k-mers that
+   * occur in more than one sample.
+   */
+  private static long score(Segment segment,
+      Map<Long, Frequency> frequencies) {
+    long score = 0L;
+    for (int i = 0; i + K <= segment.length; i++) {
+      Frequency frequency = frequencies.get(
+          kmer(segment.sample, segment.offset + i));
+      if (1 < frequency.count) {
+        score += frequency.count;
+      }
+    }
+    return score;
+  }
+  
+  /**
+   * Packs the k-mer at the given offset into a {@link Long}.
+   */
+  private static Long kmer(byte[] value, int offset) {
+    long kmer = 0L;
+    for (int i = 0; i < K; i++) {
+      kmer = (kmer << 8) | (value[offset + i] & 0xFFL);
+    }
+    return kmer;
+  }
+  
+  private static class Frequency {
+    
+    private int count = 0;
+    
+    private int sample = -1;
+  }
+  
+  private static class Segment implements Comparable<Segment> {
+    
+    private final byte[] sample;
+    
+    private final int offset;
+    
+    private final int length;
+    
+    private long score;
+    
+    public Segment(byte[] sample, int offset, int length) {
+      this.sample = sample;
+      this.offset = offset;
+      this.length = length;
+    }
+    
+    @Override
+    public int compareTo(Segment o) {
+      // Highest score first
+      return score < o.score ? 1 : (score > o.score ? -1 : 0);
+    }
+  }
+}
@@ -18,9 +18,17 @@ package org.ardverk.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 public class FileUtils {
   
+  private static final Unmapper UNMAPPER = Unmapper.create();
+  
   private FileUtils() {}
   
   /**
@@ -59,6 +67,23 @@ public class FileUtils {
     return mkfile(new File(parent, name), mkdirs);
   }
   
+  /**
+   * Moves the given source {@link File} to the destination {@link File}
+   * replacing the destination if it exists. The move is atomic if the
+   * underlying file system supports it.
+   */
+  public static File replace(File src, File dst) throws IOException {
+    try {
+      Files.move(src.toPath(), dst.toPath(), 
+          StandardCopyOption.ATOMIC_MOVE, 
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException err) {
+      Files.move(src.toPath(), dst.toPath(), 
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+    return dst;
+  }
+  
   private static File mkfile(File file, boolean mkdirs) throws IOException {
     mkdirs(file.getParentFile(), mkdirs);
     return file;
@@ -74,4 +99,100 @@ public class FileUtils {
     }
     return dir;
   }
+  
+  /**
+   * Memory-maps the given {@link File} for reading.
+   */
+  public static MappedFile map(File file) throws IOException {
+    return new MappedFile(file);
+  }
+  
+  /**
+   * Memory-maps the given {@link File} for reading using regions 
+   * of the given size.
+   */
+  public static MappedFile map(File file, int regionSize) throws IOException {
+    return new MappedFile(file, regionSize);
+  }
+  
+  /**
+   * Releases the memory mapping of the given direct {@link ByteBuffer}
+   * without waiting for it to be garbage collected. Returns {@code true} 
+   * on success.
+   * 
+   * NOTE: The {@link ByteBuffer} and all its views must not be accessed 
+   * after they've been unmapped.
+   */
+  public static boolean unmap(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect()) {
+      return false;
+    }
+    return UNMAPPER.unmap(buffer);
+  }
+  
+  /**
+   * There is no public API to release a mapping. Java 9 and later have 
+   * {@code Unsafe#invokeCleaner(ByteBuffer)} and older versions expose
+   * the {@code Cleaner} of the {@code DirectBuffer}.
+   */
+  private static abstract class Unmapper {
+    
+    private static final Unmapper NOP = new Unmapper() {
+      @Override
+      protected void clean(ByteBuffer buffer) {
+        throw new UnsupportedOperationException();
+      }
+    };
+    
+    public static Unmapper create() {
+      try {
+        Class<?> clazz = Class.forName("sun.misc.Unsafe");
+        final Method invokeCleaner = clazz.getMethod(
+            "invokeCleaner", ByteBuffer.class);
+        
+        Field field = clazz.getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        final Object unsafe = field.get(null);
+        
+        return new Unmapper() {
+          @Override
+          protected void clean(ByteBuffer buffer) throws Exception {
+            invokeCleaner.invoke(unsafe, buffer);
+          }
+        };
+      } catch (Exception ignore) {
+      }
+      
+      try {
+        final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer")
+            .getMethod("cleaner");
+        final Method clean = Class.forName("sun.misc.Cleaner")
+            .getMethod("clean");
+        
+        return new Unmapper() {
+          @Override
+          protected void clean(ByteBuffer buffer) throws Exception {
+            Object value = cleaner.invoke(buffer);
+            if (value != null) {
+              clean.invoke(value);
+            }
+          }
+        };
+      } catch (Exception ignore) {
+      }
+      
+      return NOP;
+    }
+    
+    public boolean unmap(ByteBuffer buffer) {
+      try {
+        clean(buffer);
+        return true;
+      } catch (Exception err) {
+        return false;
+      }
+    }
+    
+    protected abstract void clean(ByteBuffer buffer) throws Exception;
+  }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * Assembles a message from many {@link Streamable}s and {@link ByteBuffer}s
+ * and writes it with {@link GatheringByteChannel#write(ByteBuffer[])}.
+ * 
+ * <p>{@link BufferStreamable}s are written into a single, exactly sized
+ * {@link ByteBuffer} and {@link ByteBuffer}s are used as-is. Any other
+ * {@link Streamable} is serialized into a {@code byte[]} as it's being
+ * added.
+ */
+public class GatheringWriter {
+  
+  private static final ByteBuffer[] EMPTY = new ByteBuffer[0];
+  
+  private final List<Object> parts = new ArrayList<Object>();
+  
+  private int arenaSize = 0;
+  
+  private long size = 0L;
+  
+  private ByteBuffer[] buffers = null;
+  
+  private int index = 0;
+  
+  /**
+   * Adds the given {@link Streamable}.
+   */
+  public GatheringWriter add(Streamable value) throws IOException {
+    Precoditions.notNull(value, "value");
+    
+    if (!(value instanceof BufferStreamable)) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      value.writeTo(baos);
+      return add(ByteBuffer.wrap(baos.toByteArray()));
+    }
+    
+    int length = ((BufferStreamable)value).serializedSize();
+    Precoditions.argument(0 <= length
+        && length <= Integer.MAX_VALUE - arenaSize,
+        "serializedSize=%s", length);
+    
+    checkState();
+    parts.add(value);
+    arenaSize += length;
+    size += length;
+    return this;
+  }
+  
+  /**
+   * Adds the remaining bytes of the given {@link ByteBuffer} without
+   * copying them. The {@link ByteBuffer}'s content must not be modified
+   * until it has been written.
+   */
+  public GatheringWriter add(ByteBuffer value) {
+    Precoditions.notNull(value, "value");
+    
+    checkState();
+    parts.add(value.duplicate());
+    size += value.remaining();
+    return this;
+  }
+  
+  /**
+   * Returns the total number of bytes.
+   */
+  public long size() {
+    return size;
+  }
+  
+  /**
+   * Returns {@code true} if there are bytes that haven't been written yet.
+   */
+  public boolean hasRemaining() {
+    ByteBuffer[] buffers = buffers();
+    for (int i = index; i < buffers.length; i++) {
+      if (buffers[i].hasRemaining()) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Returns the message as an array of {@link ByteBuffer}s. No more
+   * parts can be added once this method has been called.
+   */
+  public ByteBuffer[] buffers() {
+    if (buffers == null) {
+      buffers = build();
+    }
+    return buffers;
+  }
+  
+  /**
+   * Writes the message to the given {@link GatheringByteChannel} and
+   * returns the number of bytes that were written. The method returns
+   * early if a non-blocking {@link GatheringByteChannel} didn't accept
+   * any bytes in which case it should be called again later.
+   */
+  public long writeTo(GatheringByteChannel channel) throws IOException {
+    ByteBuffer[] buffers = buffers();
+    
+    long total = 0L;
+    while (index < buffers.length) {
+      long count = channel.write(buffers, index, buffers.length - index);
+      
+      while (index < buffers.length && !buffers[index].hasRemaining()) {
+        ++index;
+      }
+      
+      if (count <= 0L) {
+        break;
+      }
+      
+      total += count;
+    }
+    return total;
+  }
+  
+  private ByteBuffer[] build() {
+    if (parts.isEmpty()) {
+      return EMPTY;
+    }
+    
+    List<ByteBuffer> dst = new ArrayList<ByteBuffer>();
+    ByteBuffer arena = ByteBuffer.allocate(arenaSize);
+    int start = 0;
+    
+    for (Object part : parts) {
+      if (part instanceof ByteBuffer) {
+        slice(arena, start, dst);
+        start = arena.position();
+        dst.add((ByteBuffer)part);
+      
+      } else {
+        BufferStreamable value = (BufferStreamable)part;
+        int position = arena.position();
+        
+        value.writeTo(arena);
+        
+        int length = arena.position() - position;
+        if (length != value.serializedSize()) {
+          throw new IllegalStateException("serializedSize="
+              + value.serializedSize() + ", written=" + length);
+        }
+      }
+    }
+    
+    slice(arena, start, dst);
+    return dst.toArray(new ByteBuffer[0]);
+  }
+  
+  private void checkState() {
+    if (buffers != null) {
+      throw new IllegalStateException("built");
+    }
+  }
+  
+  private static void slice(ByteBuffer arena, int start, List<ByteBuffer> dst) {
+    int end = arena.position();
+    if (start < end) {
+      ByteBuffer slice = arena.duplicate();
+      slice.position(start);
+      slice.limit(end);
+      dst.add(slice.slice());
+    }
+  }
+}
@@ -16,61 +16,172 @@
 
 package org.ardverk.io;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
-
-import org.ardverk.lang.MathUtils;
+import java.util.zip.Inflater;
 
 /**
- * An implementation of {@link Compressor} that uses Java's 
- * {@link GZIPInputStream} and {@link GZIPOutputStream}.
+ * An implementation of {@link Compressor} that produces and consumes 
+ * the GZIP format with Java's {@link Deflater} and {@link Inflater}. 
+ * The output is compatible with {@link GZIPInputStream} and
+ * {@link GZIPOutputStream}, concatenated members are supported.
  */
-public class GzipCompressor extends AbstractCompressor {
+public class GzipCompressor extends AbstractDeflateCompressor {
 
   public static final GzipCompressor GZIP = new GzipCompressor();
   
+  private static final int MAGIC = 0x8B1F;
+  
+  private static final int HEADER_LENGTH = 10;
+  
+  private static final int TRAILER_LENGTH = 8;
+  
+  private static final int FHCRC = 2;
+  
+  private static final int FEXTRA = 4;
+  
+  private static final int FNAME = 8;
+  
+  private static final int FCOMMENT = 16;
+  
   private GzipCompressor() {
-    super("GZIP");
+    super("GZIP", true);
   }
   
   @Override
-  public byte[] compress(byte[] value, int offset, int length)
-      throws IOException {
+  public OutputStream createOutputStream(OutputStream out) throws IOException {
+    return new GZIPOutputStream(out, StreamUtils.BUFFER_SIZE);
+  }
+  
+  @Override
+  public InputStream createInputStream(InputStream in) throws IOException {
+    return new GZIPInputStream(in, StreamUtils.BUFFER_SIZE);
+  }
+  
+  @Override
+  protected int getWrapperLength() {
+    return HEADER_LENGTH + TRAILER_LENGTH;
+  }
+  
+  @Override
+  protected int writeHeader(byte[] dst, int offset) {
+    if (dst.length - offset < HEADER_LENGTH) {
+      throw new BufferOverflowException();
+    }
     
-    ByteArrayOutputStream baos = new ByteArrayOutputStream(MathUtils.nextPowOfTwo(length));
-    try (OutputStream out = new GZIPOutputStream(baos)) {
-      out.write(value, offset, length);
-    } finally {
-      IoUtils.close(baos);
+    // Magic, CM=DEFLATE and everything else zero (same as GZIPOutputStream)
+    dst[offset] = (byte)MAGIC;
+    dst[offset+1] = (byte)(MAGIC >>> 8);
+    dst[offset+2] = Deflater.DEFLATED;
+    for (int i = 3; i < HEADER_LENGTH; i++) {
+      dst[offset+i] = 0;
     }
     
-    return baos.toByteArray();
+    return HEADER_LENGTH;
   }
-
+  
+  @Override
+  protected int writeTrailer(byte[] value, int offset, int length, 
+      byte[] dst, int dstOffset) {
+    if (dst.length - dstOffset < TRAILER_LENGTH) {
+      throw new BufferOverflowException();
+    }
+    
+    CRC32 crc = new CRC32();
+    crc.update(value, offset, length);
+    
+    DataUtils.int2leb((int)crc.getValue(), dst, dstOffset);
+    DataUtils.int2leb(length, dst, dstOffset + 4);
+    return TRAILER_LENGTH;
+  }
+  
   @Override
-  public byte[] decompress(byte[] value, int offset, int length)
+  protected int readHeader(byte[] value, int offset, int length) 
       throws IOException {
     
-    ByteArrayOutputStream baos = new ByteArrayOutputStream(MathUtils.nextPowOfTwo(2 * length));
+    if (length < HEADER_LENGTH) {
+      throw new EOFException();
+    }
     
-    try (ByteArrayInputStream bais = new ByteArrayInputStream(value, offset, length)) {
-      try (InputStream in = new GZIPInputStream(bais)) {
-        byte[] buffer = new byte[Math.min(length, 1024)];
-        int len = -1;
-        
-        while ((len = in.read(buffer)) != -1) {
-          baos.write(buffer, 0, len);
-        }
+    if (DataUtils.leb2short(value, offset) != (short)MAGIC) {
+      throw new IOException("Not in GZIP format");
+    }
+    
+    if (value[offset+2] != Deflater.DEFLATED) {
+      throw new IOException("Unsupported compression method: " 
+          + value[offset+2]);
+    }
+    
+    int flags = value[offset+3] & 0xFF;
+    int position = HEADER_LENGTH;
+    
+    if ((flags & FEXTRA) == FEXTRA) {
+      if (length < position + 2) {
+        throw new EOFException();
       }
-    } finally {
-      IoUtils.close(baos);
+      position += 2 + DataUtils.leb2ushort(value, offset + position);
+    }
+    
+    if ((flags & FNAME) == FNAME) {
+      position = skipString(value, offset, length, position);
+    }
+    
+    if ((flags & FCOMMENT) == FCOMMENT) {
+      position = skipString(value, offset, length, position);
+    }
+    
+    if ((flags & FHCRC) == FHCRC) {
+      position += 2;
+    }
+    
+    if (length < position) {
+      throw new EOFException();
+    }
+    
+    return position;
+  }
+  
+  @Override
+  protected int readTrailer(byte[] value, int offset, int length,
+      byte[] data, int dataOffset, int dataLength) throws IOException {
+    
+    if (length < TRAILER_LENGTH) {
+      throw new EOFException();
+    }
+    
+    CRC32 crc = new CRC32();
+    crc.update(data, dataOffset, dataLength);
+    
+    if (DataUtils.leb2int(value, offset) != (int)crc.getValue()
+        || DataUtils.leb2int(value, offset + 4) != dataLength) {
+      throw new IOException("Corrupt GZIP trailer");
     }
     
-    return baos.toByteArray();
+    return TRAILER_LENGTH;
+  }
+  
+  @Override
+  protected boolean hasMember(byte[] value, int offset, int length) {
+    return 2 <= length && DataUtils.leb2short(value, offset) == (short)MAGIC;
+  }
+  
+  /**
+   * Skips a zero-terminated string and returns the position after it.
+   */
+  private static int skipString(byte[] value, int offset, 
+      int length, int position) throws IOException {
+    while (position < length) {
+      if (value[offset + position++] == 0) {
+        return position;
+      }
+    }
+    throw new EOFException();
   }
 }
\ No newline at end of file
@@ -18,25 +18,21 @@ package org.ardverk.io;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-import org.ardverk.concurrent.ExecutorUtils;
-
 /**
+ * An {@link InputStream} that notifies its {@link IdleCallback} if no
+ * data was read for a certain amount of time.
  * 
+ * <p>All {@link IdleInputStream}s share an {@link IdleTimer} unless one
+ * is given explicitly. Reading from the stream only records the current 
+ * tick of the {@link IdleTimer}'s clock.
  */
 public class IdleInputStream extends ProgressInputStream {
 
-  private static final ScheduledExecutorService EXECUTOR 
-    = ExecutorUtils.newSingleThreadScheduledExecutor("IdleInputStreamThread");
-  
   private static final IdleCallback DEFAULT = new IdleAdapter();
   
-  private volatile long timeStamp = System.currentTimeMillis();
-  
-  private final ScheduledFuture<?> future;
+  private final IdleTimer.Task task;
   
   public IdleInputStream(InputStream in, 
       long initialDelay, long delay, TimeUnit unit) {
@@ -44,29 +40,27 @@ public class IdleInputStream extends ProgressInputStream {
   }
   
   public IdleInputStream(InputStream in, IdleCallback callback, 
-      long initialDelay, final long delay, final TimeUnit unit) {
+      long initialDelay, long delay, TimeUnit unit) {
+    this(in, callback, IdleTimer.DEFAULT, initialDelay, delay, unit);
+  }
+  
+  public IdleInputStream(InputStream in, IdleCallback callback, 
+      IdleTimer timer, long initialDelay, long delay, TimeUnit unit) {
     super(in, callback);
     
-    Runnable task = new Runnable() {
-      
-      private final long timeoutInMillis = unit.toMillis(delay);
-      
+    this.task = new IdleTimer.Task(timer, delay, unit) {
       @Override
-      public void run() {
-        long time = System.currentTimeMillis() - timeStamp;
-        if (time >= timeoutInMillis) {
-          idle(time, TimeUnit.MILLISECONDS);
-        }
+      protected void idle(long time, TimeUnit unit) {
+        IdleInputStream.this.idle(time, unit);
       }
     };
     
-    this.future = EXECUTOR.scheduleWithFixedDelay(
-        task, initialDelay, delay, unit);
+    timer.schedule(task, initialDelay, unit);
   }
 
   @Override
   public void close() throws IOException {
-    future.cancel(true);
+    task.cancel();
     super.close();
   }
 
@@ -76,7 +70,7 @@ public class IdleInputStream extends ProgressInputStream {
   
   @Override
   protected void in(int count) {
-    timeStamp = System.currentTimeMillis();
+    task.touch();
     super.in(count);
   }
   
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.ardverk.concurrent.ExecutorUtils;
+import org.ardverk.lang.ExceptionUtils;
+import org.ardverk.lang.MathUtils;
+import org.ardverk.lang.Precoditions;
+
+/**
+ * The {@link IdleTimer} is a hashed timing wheel that detects idle
+ * {@link Task}s. A {@link Task} records its last activity as a tick of
+ * the {@link IdleTimer}'s coarse clock and a single sweeper walks the
+ * wheel's buckets once per tick.
+ *
+ * <p>Recording an activity is a volatile read and (at most) a volatile
+ * write. There are no per-{@link Task} scheduler entries and the
+ * per-{@link Task} memory overhead is constant.
+ * 
+ * <p>A {@link Task} is never reported idle before its full timeout has 
+ * passed. As activities are recorded with a precision of one tick it may
+ * be reported up to one tick late.
+ */
+public class IdleTimer implements Closeable {
+  
+  private static final ScheduledExecutorService EXECUTOR
+    = ExecutorUtils.newSingleThreadScheduledExecutor("IdleTimerThread");
+  
+  /**
+   * The default duration of a tick in milliseconds.
+   */
+  public static final long TICK = 100L;
+  
+  /**
+   * The default number of buckets.
+   */
+  public static final int WHEEL_SIZE = 512;
+  
+  /**
+   * A shared {@link IdleTimer} with default settings.
+   */
+  public static final IdleTimer DEFAULT
+    = new IdleTimer(TICK, TimeUnit.MILLISECONDS, WHEEL_SIZE);
+  
+  private final long tickInNanos;
+  
+  private final Task[] wheel;
+  
+  private final int mask;
+  
+  /**
+   * New {@link Task}s that haven't been placed into the wheel yet.
+   */
+  private final Queue<Task> pending = new ConcurrentLinkedQueue<Task>();
+  
+  /**
+   * Guards the wheel's buckets.
+   */
+  private final Object lock = new Object();
+  
+  private final ScheduledFuture<?> future;
+  
+  private volatile long ticks = 0L;
+  
+  /**
+   * Creates an {@link IdleTimer} that runs on a shared {@link Thread}.
+   */
+  public IdleTimer(long tick, TimeUnit unit, int wheelSize) {
+    this(EXECUTOR, tick, unit, wheelSize);
+  }
+  
+  /**
+   * Creates an {@link IdleTimer}.
+   *
+   * @param executor The {@link ScheduledExecutorService} that runs the sweeper
+   * @param tick The duration of a tick
+   * @param wheelSize The number of buckets (rounded to a power of two)
+   */
+  public IdleTimer(ScheduledExecutorService executor,
+      long tick, TimeUnit unit, int wheelSize) {
+    this(tick, unit, wheelSize, Precoditions.notNull(executor, "executor"));
+  }
+  
+  /**
+   * Creates an {@link IdleTimer}. The {@link IdleTimer} is only advanced 
+   * by explicit calls to {@link #sweep()} if the executor is {@code null}.
+   */
+  IdleTimer(long tick, TimeUnit unit, int wheelSize, 
+      ScheduledExecutorService executor) {
+    
+    Precoditions.argument(0L < tick, "tick=%s", tick);
+    Precoditions.argument(0 < wheelSize, "wheelSize=%s", wheelSize);
+    
+    this.tickInNanos = unit.toNanos(tick);
+    this.wheel = new Task[MathUtils.nextPowOfTwo(wheelSize)];
+    this.mask = wheel.length - 1;
+    
+    if (executor == null) {
+      this.future = null;
+      return;
+    }
+    
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          sweep();
+        } catch (Throwable t) {
+          ExceptionUtils.exceptionCaught(t);
+        }
+      }
+    };
+    
+    this.future = executor.scheduleAtFixedRate(
+        task, tick, tick, unit);
+  }
+  
+  /**
+   * Returns the current tick.
+   */
+  public long ticks() {
+    return ticks;
+  }
+  
+  /**
+   * Converts the given time into a number of ticks (rounded up).
+   */
+  public long toTicks(long time, TimeUnit unit) {
+    long nanos = unit.toNanos(time);
+    return Math.max(1L, (nanos + tickInNanos - 1L) / tickInNanos);
+  }
+  
+  /**
+   * Schedules the given {@link Task}. It's being checked for the first
+   * time after the given initial delay.
+   */
+  public void schedule(Task task, long initialDelay, TimeUnit unit) {
+    if (task.timer != this) {
+      throw new IllegalArgumentException("task");
+    }
+    
+    long now = ticks;
+    task.lastActivity = now;
+    task.deadline = now + toTicks(initialDelay, unit);
+    pending.offer(task);
+  }
+  
+  @Override
+  public void close() {
+    if (future != null) {
+      future.cancel(false);
+    }
+  }
+  
+  /**
+   * Returns the number of scheduled {@link Task}s.
+   */
+  int size() {
+    int size = pending.size();
+    synchronized (lock) {
+      for (Task task : wheel) {
+        for (; task != null; task = task.next) {
+          ++size;
+        }
+      }
+    }
+    return size;
+  }
+  
+  /**
+   * Advances the clock by one tick and processes the current bucket.
+   * Called by the sweeper {@link Thread} only.
+   */
+  void sweep() {
+    long now = ticks + 1L;
+    ticks = now;
+    
+    Task task = null;
+    synchronized (lock) {
+      while ((task = pending.poll()) != null) {
+        if (!task.cancelled) {
+          place(task, now);
+        }
+      }
+      
+      // Detach the whole bucket, the idle() callbacks are
+      // being called without holding the lock.
+      int index = (int)(now & mask);
+      task = wheel[index];
+      wheel[index] = null;
+      
+      for (Task t = task; t != null; t = t.next) {
+        t.linked = false;
+      }
+    }
+    
+    while (task != null) {
+      Task next = task.next;
+      task.next = null;
+      task.prev = null;
+      
+      if (now >= task.deadline && !task.cancelled) {
+        // The Task was active during the tick of its last activity
+        // and is idle only if more than its timeout has passed since.
+        long idle = now - task.lastActivity;
+        if (idle > task.timeout) {
+          try {
+            task.idle(idle * tickInNanos / 1000000L, TimeUnit.MILLISECONDS);
+          } catch (Throwable t) {
+            ExceptionUtils.exceptionCaught(t);
+          }
+          task.deadline = now + task.timeout;
+        } else {
+          task.deadline = task.lastActivity + task.timeout + 1L;
+        }
+      }
+      
+      synchronized (lock) {
+        if (!task.cancelled) {
+          place(task, now);
+        }
+      }
+      
+      task = next;
+    }
+  }
+  
+  /**
+   * Puts the given {@link Task} into the bucket of its deadline.
+   */
+  private void place(Task task, long now) {
+    if (task.deadline <= now) {
+      task.deadline = now + 1L;
+    }
+    
+    int index = (int)(task.deadline & mask);
+    Task head = wheel[index];
+    if (head != null) {
+      head.prev = task;
+    }
+    
+    task.next = head;
+    task.prev = null;
+    task.linked = true;
+    wheel[index] = task;
+  }
+  
+  /**
+   * Removes the given {@link Task} from the wheel.
+   */
+  private void remove(Task task) {
+    pending.remove(task);
+    
+    synchronized (lock) {
+      if (!task.linked) {
+        return;
+      }
+      
+      if (task.prev != null) {
+        task.prev.next = task.next;
+      } else {
+        wheel[(int)(task.deadline & mask)] = task.next;
+      }
+      
+      if (task.next != null) {
+        task.next.prev = task.prev;
+      }
+      
+      task.next = null;
+      task.prev = null;
+      task.linked = false;
+    }
+  }
+  
+  /**
+   * A {@link Task} is notified if there was no activity for
+   * a certain amount of time.
+   */
+  public abstract static class Task {
+    
+    private final IdleTimer timer;
+    
+    /**
+     * The idle timeout in ticks.
+     */
+    private final long timeout;
+    
+    private volatile long lastActivity = 0L;
+    
+    private volatile boolean cancelled = false;
+    
+    // Guarded by the IdleTimer's lock while the Task is linked
+    private long deadline = 0L;
+    
+    private Task prev = null;
+    
+    private Task next = null;
+    
+    private boolean linked = false;
+    
+    public Task(IdleTimer timer, long timeout, TimeUnit unit) {
+      this.timer = Precoditions.notNull(timer, "timer");
+      this.timeout = timer.toTicks(timeout, unit);
+    }
+    
+    /**
+     * Records an activity.
+     */
+    public void touch() {
+      long now = timer.ticks;
+      if (lastActivity != now) {
+        lastActivity = now;
+      }
+    }
+    
+    /**
+     * Cancels the {@link Task} and removes it from the {@link IdleTimer}.
+     */
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        timer.remove(this);
+      }
+    }
+    
+    public boolean isCancelled() {
+      return cancelled;
+    }
+    
+    /**
+     * Called by the {@link IdleTimer}'s sweeper if there was no activity
+     * for at least the timeout. It's being called again every timeout
+     * for as long as there is no activity.
+     */
+    protected abstract void idle(long time, TimeUnit unit);
+  }
+}
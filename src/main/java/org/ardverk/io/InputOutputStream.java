@@ -19,18 +19,22 @@ package org.ardverk.io;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 
-import org.ardverk.concurrent.ExecutorUtils;
-import org.ardverk.concurrent.ManagedRunnable;
+import org.ardverk.concurrent.VirtualThreadUtils;
 
+/**
+ * An {@link java.io.InputStream} that reads what a {@link Producer} 
+ * writes in the background. The {@link Producer} runs in a virtual 
+ * thread if the runtime supports them or in a shared thread pool 
+ * unless a different {@link Executor} is given. Closing the stream 
+ * cancels the {@link Producer}.
+ */
 public abstract class InputOutputStream extends FilterInputStream {
   
   private static final Executor EXECUTOR 
-    = ExecutorUtils.newCachedThreadPool("InputOutputStreamThread");
+    = VirtualThreadUtils.newExecutor("InputOutputStreamThread");
   
   private static final Producer SELF = new Producer() {
     @Override
@@ -50,16 +54,17 @@ public abstract class InputOutputStream extends FilterInputStream {
     CLOSED;
   }
   
-  private final PipedOutputStream out = new PipedOutputStream();
+  private final OutputStream out;
   
-  private final Runnable task = new ManagedRunnable() {
+  private final StreamTask task = new StreamTask() {
     @Override
-    protected void doRun() throws IOException {
-      try {
-        producer.produce(out);
-      } finally {
-        IoUtils.close(out);
-      }
+    protected void execute() throws IOException {
+      producer.produce(out);
+    }
+    
+    @Override
+    protected void done() {
+      IoUtils.close(out);
     }
 
     @Override
@@ -73,6 +78,8 @@ public abstract class InputOutputStream extends FilterInputStream {
   
   private final Producer producer;
   
+  private final Executor executor;
+  
   public InputOutputStream() {
     this(-1);
   }
@@ -86,12 +93,38 @@ public abstract class InputOutputStream extends FilterInputStream {
   }
   
   public InputOutputStream(Producer producer, int bufferSize) {
-    super(newPipedInputStream(bufferSize));
+    this(producer, bufferSize, EXECUTOR);
+  }
+  
+  public InputOutputStream(Executor executor) {
+    this(-1, executor);
+  }
+  
+  public InputOutputStream(Producer producer, Executor executor) {
+    this(producer, -1, executor);
+  }
+  
+  public InputOutputStream(int bufferSize, Executor executor) {
+    this(SELF, bufferSize, executor);
+  }
+  
+  public InputOutputStream(Producer producer, 
+      int bufferSize, Executor executor) {
+    this(producer, newPipe(bufferSize), executor);
+  }
+  
+  private InputOutputStream(Producer producer, Pipe pipe, 
+      Executor executor) {
+    super(pipe.getInputStream());
     
     if (producer == null) {
       throw new NullPointerException("producer");
     }
     
+    if (executor == null) {
+      throw new NullPointerException("executor");
+    }
+    
     if (producer == SELF) {
       producer = new Producer() {
         @Override
@@ -107,24 +140,20 @@ public abstract class InputOutputStream extends FilterInputStream {
     }
     
     this.producer = producer;
-    
-    try {
-      ((PipedInputStream)in).connect(out);
-    } catch (IOException e) {
-      throw new IllegalStateException(e);
-    }
+    this.executor = executor;
+    this.out = pipe.getOutputStream();
   }
   
-  private static PipedInputStream newPipedInputStream(int bufferSize) {
+  static Pipe newPipe(int bufferSize) {
     if (bufferSize == -1) {
-      return new PipedInputStream();
+      return new Pipe();
     }
-    return new PipedInputStream(bufferSize);
+    return new Pipe(bufferSize);
   }
   
   private void execute() {
     if (state.compareAndSet(State.INIT, State.READY)) {
-      EXECUTOR.execute(task);
+      executor.execute(task);
     }
   }
   
@@ -149,6 +178,7 @@ public abstract class InputOutputStream extends FilterInputStream {
   @Override
   public void close() throws IOException {
     if (state.getAndSet(State.CLOSED) != State.CLOSED) {
+      task.cancel();
       IoUtils.close(out);
       super.close();
     }
@@ -0,0 +1,480 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A fast {@link Compressor} that produces an LZ4 block prefixed with the
+ * uncompressed length (a variable length integer). It trades compression
+ * ratio for speed and is written in plain Java.
+ *
+ * <p>The hash table is a per-{@link Thread} {@code int[]} that is being
+ * reused for every call.
+ */
+public class Lz4Compressor extends AbstractCompressor {
+  
+  public static final Lz4Compressor LZ4 = new Lz4Compressor();
+  
+  private static final int MIN_MATCH = 4;
+  
+  /**
+   * The last match must start at least this many bytes before the end.
+   */
+  private static final int MF_LIMIT = 12;
+  
+  /**
+   * The last bytes of a block are always literals.
+   */
+  private static final int LAST_LITERALS = 5;
+  
+  private static final int MAX_DISTANCE = 0xFFFF;
+  
+  private static final int MIN_HASH_LOG = 8;
+  
+  private static final int MAX_HASH_LOG = 12;
+  
+  /**
+   * The number of misses after which the search starts to skip bytes.
+   */
+  private static final int SKIP_TRIGGER = 6;
+  
+  private static final int ML_BITS = 4;
+  
+  private static final int ML_MASK = (1 << ML_BITS) - 1;
+  
+  private static final int RUN_MASK = ML_MASK;
+  
+  private static final ThreadLocal<int[]> TABLES = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1 << MAX_HASH_LOG];
+    }
+  };
+  
+  private Lz4Compressor() {
+    super("LZ4");
+  }
+  
+  /**
+   * Returns the maximum length of the compressed form
+   * of the given number of bytes.
+   */
+  public int maxCompressedLength(int length) {
+    return 5 + length + (length / 255) + 16;
+  }
+  
+  @Override
+  public byte[] compress(byte[] value, int offset, int length)
+      throws IOException {
+    
+    BufferPool pool = BufferPool.DEFAULT;
+    byte[] buffer = pool.acquire(maxCompressedLength(length));
+    try {
+      int count = compress(value, offset, length, buffer, 0);
+      return Arrays.copyOf(buffer, count);
+    } finally {
+      pool.release(buffer);
+    }
+  }
+  
+  @Override
+  public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    if (!src.hasArray() || !dst.hasArray()
+        || dst.remaining() < maxCompressedLength(src.remaining())) {
+      return super.compress(src, dst);
+    }
+    
+    int count = compress(src.array(), src.arrayOffset() + src.position(),
+        src.remaining(), dst.array(), dst.arrayOffset() + dst.position());
+    
+    src.position(src.limit());
+    dst.position(dst.position() + count);
+    return count;
+  }
+  
+  /**
+   * Compresses the given byte-array into the given {@code byte[]} and
+   * returns the number of bytes that were written.
+   *
+   * @throws BufferOverflowException If there is not enough room in
+   * the destination {@code byte[]}.
+   * @see #maxCompressedLength(int)
+   */
+  public int compress(byte[] src, int srcOffset, int srcLength,
+      byte[] dst, int dstOffset) {
+    
+    if (srcOffset < 0 || srcLength < 0
+        || srcLength > src.length - srcOffset) {
+      throw new IndexOutOfBoundsException("srcOffset=" + srcOffset
+          + ", srcLength=" + srcLength + ", src.length=" + src.length);
+    }
+    
+    int dstEnd = dst.length;
+    int op = writeLength(srcLength, dst, dstOffset);
+    
+    int srcEnd = srcOffset + srcLength;
+    int anchor = srcOffset;
+    
+    if (srcLength >= MF_LIMIT + 1) {
+      int hashLog = hashLog(srcLength);
+      int[] table = TABLES.get();
+      Arrays.fill(table, 0, 1 << hashLog, 0);
+      
+      int mfLimit = srcEnd - MF_LIMIT;
+      int matchLimit = srcEnd - LAST_LITERALS;
+      
+      int ip = srcOffset;
+      table[hash(readInt(src, ip), hashLog)] = ip - srcOffset;
+      ++ip;
+      
+      search:
+      while (true) {
+        int ref = 0;
+        
+        // Find a match
+        int misses = 1 << SKIP_TRIGGER;
+        while (true) {
+          int h = hash(readInt(src, ip), hashLog);
+          ref = srcOffset + table[h];
+          table[h] = ip - srcOffset;
+          
+          if (ip - ref <= MAX_DISTANCE
+              && readInt(src, ref) == readInt(src, ip)) {
+            break;
+          }
+          
+          ip += misses++ >>> SKIP_TRIGGER;
+          if (ip > mfLimit) {
+            break search;
+          }
+        }
+        
+        // Extend the match backwards
+        while (ip > anchor && ref > srcOffset
+            && src[ip - 1] == src[ref - 1]) {
+          --ip;
+          --ref;
+        }
+        
+        // Literals
+        int literals = ip - anchor;
+        checkRoom(dstEnd, op, 1 + extraLength(literals) + literals + 2);
+        
+        int token = op++;
+        op = writeRun(dst, token, literals, op);
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+        
+        while (true) {
+          // Offset
+          dst[op++] = (byte)(ip - ref);
+          dst[op++] = (byte)((ip - ref) >>> 8);
+          
+          // Match length
+          ip += MIN_MATCH;
+          ref += MIN_MATCH;
+          int start = ip;
+          while (ip < matchLimit && src[ip] == src[ref]) {
+            ++ip;
+            ++ref;
+          }
+          
+          int matchLength = ip - start;
+          checkRoom(dstEnd, op, extraLength(matchLength));
+          
+          if (matchLength >= ML_MASK) {
+            dst[token] |= ML_MASK;
+            op = writeLength255(dst, op, matchLength - ML_MASK);
+          } else {
+            dst[token] |= matchLength;
+          }
+          
+          anchor = ip;
+          if (ip > mfLimit) {
+            break search;
+          }
+          
+          table[hash(readInt(src, ip - 2), hashLog)] = ip - 2 - srcOffset;
+          
+          // Is there an immediate match at the current position?
+          int h = hash(readInt(src, ip), hashLog);
+          ref = srcOffset + table[h];
+          table[h] = ip - srcOffset;
+          
+          if (ip - ref > MAX_DISTANCE
+              || readInt(src, ref) != readInt(src, ip)) {
+            ++ip;
+            break;
+          }
+          
+          checkRoom(dstEnd, op, 1 + 2);
+          token = op++;
+          dst[token] = 0;
+        }
+      }
+    }
+    
+    // The last literals
+    int literals = srcEnd - anchor;
+    checkRoom(dstEnd, op, 1 + extraLength(literals) + literals);
+    
+    int token = op++;
+    op = writeRun(dst, token, literals, op);
+    System.arraycopy(src, anchor, dst, op, literals);
+    op += literals;
+    
+    return op - dstOffset;
+  }
+  
+  @Override
+  public byte[] decompress(byte[] value, int offset, int length)
+      throws IOException {
+    
+    int[] header = readLength(value, offset, length);
+    byte[] dst = new byte[header[0]];
+    
+    decompress(value, offset + header[1], length - header[1],
+        dst, 0, dst.length);
+    return dst;
+  }
+  
+  @Override
+  public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+    if (!src.hasArray() || !dst.hasArray()) {
+      return super.decompress(src, dst);
+    }
+    
+    byte[] value = src.array();
+    int offset = src.arrayOffset() + src.position();
+    int length = src.remaining();
+    
+    int[] header = readLength(value, offset, length);
+    if (dst.remaining() < header[0]) {
+      throw new BufferOverflowException();
+    }
+    
+    int count = decompress(value, offset + header[1], length - header[1],
+        dst.array(), dst.arrayOffset() + dst.position(), header[0]);
+    
+    src.position(src.limit());
+    dst.position(dst.position() + count);
+    return count;
+  }
+  
+  /**
+   * Decompresses the given byte-array into the given {@code byte[]}
+   * and returns the number of bytes that were written.
+   *
+   * @throws BufferOverflowException If there is not enough room in
+   * the destination {@code byte[]}.
+   */
+  public int decompress(byte[] value, int offset, int length,
+      byte[] dst, int dstOffset) throws IOException {
+    
+    int[] header = readLength(value, offset, length);
+    if (dst.length - dstOffset < header[0]) {
+      throw new BufferOverflowException();
+    }
+    
+    return decompress(value, offset + header[1], length - header[1],
+        dst, dstOffset, header[0]);
+  }
+  
+  /**
+   * Decodes an LZ4 block of the given uncompressed length.
+   */
+  private static int decompress(byte[] src, int srcOffset, int srcLength,
+      byte[] dst, int dstOffset, int dstLength) throws IOException {
+    
+    int ip = srcOffset;
+    int srcEnd = srcOffset + srcLength;
+    
+    int op = dstOffset;
+    int dstEnd = dstOffset + dstLength;
+    
+    while (true) {
+      if (ip >= srcEnd) {
+        throw new EOFException();
+      }
+      
+      int token = src[ip++] & 0xFF;
+      
+      // Literals
+      int literals = token >>> ML_BITS;
+      if (literals == RUN_MASK) {
+        int len = 0;
+        do {
+          if (ip >= srcEnd) {
+            throw new EOFException();
+          }
+          len = src[ip++] & 0xFF;
+          literals += len;
+        } while (len == 255);
+      }
+      
+      if (literals > srcEnd - ip || literals > dstEnd - op) {
+        throw new IOException("Corrupt LZ4 block");
+      }
+      
+      System.arraycopy(src, ip, dst, op, literals);
+      ip += literals;
+      op += literals;
+      
+      // The last sequence has no match
+      if (ip == srcEnd) {
+        if (op != dstEnd) {
+          throw new IOException("Corrupt LZ4 block");
+        }
+        return dstLength;
+      }
+      
+      // Offset
+      if (srcEnd - ip < 2) {
+        throw new EOFException();
+      }
+      
+      int distance = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+      ip += 2;
+      
+      int ref = op - distance;
+      if (distance == 0 || ref < dstOffset) {
+        throw new IOException("Corrupt LZ4 block");
+      }
+      
+      // Match length
+      int matchLength = token & ML_MASK;
+      if (matchLength == ML_MASK) {
+        int len = 0;
+        do {
+          if (ip >= srcEnd) {
+            throw new EOFException();
+          }
+          len = src[ip++] & 0xFF;
+          matchLength += len;
+        } while (len == 255);
+      }
+      matchLength += MIN_MATCH;
+      
+      if (matchLength > dstEnd - op) {
+        throw new IOException("Corrupt LZ4 block");
+      }
+      
+      // Overlapping matches repeat a pattern of 'distance' bytes
+      while (matchLength > 0) {
+        int count = Math.min(matchLength, op - ref);
+        System.arraycopy(dst, ref, dst, op, count);
+        op += count;
+        matchLength -= count;
+      }
+    }
+  }
+  
+  /**
+   * Writes the literal length into the token and the following bytes.
+   */
+  private static int writeRun(byte[] dst, int token, int literals, int op) {
+    if (literals >= RUN_MASK) {
+      dst[token] = (byte)(RUN_MASK << ML_BITS);
+      return writeLength255(dst, op, literals - RUN_MASK);
+    }
+    
+    dst[token] = (byte)(literals << ML_BITS);
+    return op;
+  }
+  
+  /**
+   * Returns the number of bytes that follow the token for a literal
+   * or match length.
+   */
+  private static int extraLength(int length) {
+    return length >= RUN_MASK ? (length - RUN_MASK) / 255 + 1 : 0;
+  }
+  
+  private static int writeLength255(byte[] dst, int op, int length) {
+    while (length >= 255) {
+      dst[op++] = (byte)255;
+      length -= 255;
+    }
+    dst[op++] = (byte)length;
+    return op;
+  }
+  
+  /**
+   * Writes the uncompressed length and returns the new position.
+   */
+  private static int writeLength(int length, byte[] dst, int offset) {
+    if (offset < 0 || offset > dst.length) {
+      throw new IndexOutOfBoundsException("offset=" + offset
+          + ", dst.length=" + dst.length);
+    }
+    
+    ByteBuffer buffer = ByteBuffer.wrap(dst, offset, dst.length - offset);
+    return DataUtils.int2vbeb(length, buffer).position();
+  }
+  
+  /**
+   * Reads the uncompressed length and returns it along with
+   * the length of the header.
+   */
+  private static int[] readLength(byte[] value, int offset, int length)
+      throws IOException {
+    
+    ByteBuffer buffer = ByteBuffer.wrap(value, offset, length);
+    
+    int result;
+    try {
+      result = DataUtils.vbeb2int(buffer);
+    } catch (BufferUnderflowException err) {
+      throw new EOFException();
+    }
+    
+    // Every input byte yields at most 255 bytes of output
+    if (result < 0 || result > 255L * length) {
+      throw new IOException("length=" + result);
+    }
+    
+    return new int[] { result, buffer.position() - offset };
+  }
+  
+  private static void checkRoom(int end, int position, int count) {
+    if (end - position < count) {
+      throw new BufferOverflowException();
+    }
+  }
+  
+  private static int hashLog(int length) {
+    int bits = 32 - Integer.numberOfLeadingZeros(length - 1);
+    return Math.max(MIN_HASH_LOG, Math.min(MAX_HASH_LOG, bits));
+  }
+  
+  private static int hash(int value, int hashLog) {
+    return (value * -1640531535) >>> (32 - hashLog);
+  }
+  
+  private static int readInt(byte[] src, int offset) {
+    return (src[offset] & 0xFF)
+        | (src[offset + 1] & 0xFF) << 8
+        | (src[offset + 2] & 0xFF) << 16
+        | (src[offset + 3] & 0xFF) << 24;
+  }
+}
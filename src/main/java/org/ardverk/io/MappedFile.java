@@ -0,0 +1,402 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A read-only, memory-mapped {@link File} of arbitrary size.
+ * 
+ * <p>The {@link File} is mapped as a sequence of fixed size regions. Each 
+ * region overlaps its successor by {@link #OVERLAP} bytes which means a 
+ * primitive never straddles two regions and can be read with a single 
+ * absolute get.
+ * 
+ * <p>All reads are absolute and bounds-checked. They're safe to be called 
+ * from multiple {@link Thread}s but the {@link MappedFile} must not be
+ * closed while other {@link Thread}s are still reading from it.
+ * 
+ * @see FileUtils#map(File)
+ */
+public class MappedFile implements Closeable {
+  
+  /**
+   * The default size of a region (1 GiB).
+   */
+  public static final int REGION_SIZE = 1 << 30;
+  
+  /**
+   * The number of bytes each region overlaps its successor.
+   */
+  public static final int OVERLAP = DataUtils.LONG;
+  
+  private static final int PAGE_SIZE = 4096;
+  
+  private final File file;
+  
+  private final long size;
+  
+  private final int shift;
+  
+  private final long mask;
+  
+  private final MappedByteBuffer[] regions;
+  
+  private volatile boolean open = true;
+  
+  /**
+   * The sum of the bytes that {@link #load(long, long)} has touched. It's 
+   * being kept so the reads can't be optimized away.
+   */
+  private volatile int touched = 0;
+  
+  public MappedFile(File file) throws IOException {
+    this(file, REGION_SIZE);
+  }
+  
+  public MappedFile(File file, int regionSize) throws IOException {
+    Precoditions.argument(regionSize >= OVERLAP 
+        && Integer.bitCount(regionSize) == 1, 
+        "regionSize=%s", regionSize);
+    
+    this.file = Precoditions.notNull(file, "file");
+    this.shift = Integer.numberOfTrailingZeros(regionSize);
+    this.mask = regionSize - 1L;
+    
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      this.size = channel.size();
+      
+      int count = (int)((size + mask) >>> shift);
+      this.regions = new MappedByteBuffer[count];
+      
+      try {
+        for (int i = 0; i < count; i++) {
+          long position = (long)i << shift;
+          long length = Math.min(regionSize + (long)OVERLAP, size - position);
+          regions[i] = channel.map(MapMode.READ_ONLY, position, length);
+        }
+      } catch (IOException err) {
+        unmap();
+        throw err;
+      }
+    } finally {
+      IoUtils.close(raf);
+    }
+  }
+  
+  /**
+   * Returns the {@link File}.
+   */
+  public File getFile() {
+    return file;
+  }
+  
+  /**
+   * Returns the size of the {@link File} in bytes.
+   */
+  public long size() {
+    return size;
+  }
+  
+  /**
+   * Returns {@code true} if the {@link MappedFile} is open.
+   */
+  public boolean isOpen() {
+    return open;
+  }
+  
+  /**
+   * Reads and returns a single {@code byte}.
+   */
+  public byte read(long position) throws IOException {
+    return region(position, DataUtils.BYTE).get(index(position));
+  }
+  
+  /**
+   * Reads and returns a {@code boolean}.
+   */
+  public boolean bool(long position) throws IOException {
+    return read(position) != 0;
+  }
+  
+  public int beb2ushort(long position) throws IOException {
+    return beb2short(position) & 0xFFFF;
+  }
+  
+  public int leb2ushort(long position) throws IOException {
+    return leb2short(position) & 0xFFFF;
+  }
+  
+  public short beb2short(long position) throws IOException {
+    return region(position, DataUtils.SHORT).getShort(index(position));
+  }
+  
+  public short leb2short(long position) throws IOException {
+    return Short.reverseBytes(beb2short(position));
+  }
+  
+  public int beb2int(long position) throws IOException {
+    return region(position, DataUtils.INT).getInt(index(position));
+  }
+  
+  public int leb2int(long position) throws IOException {
+    return Integer.reverseBytes(beb2int(position));
+  }
+  
+  public long beb2uint(long position) throws IOException {
+    return beb2int(position) & 0xFFFFFFFFL;
+  }
+  
+  public long leb2uint(long position) throws IOException {
+    return leb2int(position) & 0xFFFFFFFFL;
+  }
+  
+  public long beb2long(long position) throws IOException {
+    return region(position, DataUtils.LONG).getLong(index(position));
+  }
+  
+  public long leb2long(long position) throws IOException {
+    return Long.reverseBytes(beb2long(position));
+  }
+  
+  public float beb2float(long position) throws IOException {
+    return Float.intBitsToFloat(beb2int(position));
+  }
+  
+  public float leb2float(long position) throws IOException {
+    return Float.intBitsToFloat(leb2int(position));
+  }
+  
+  public double beb2double(long position) throws IOException {
+    return Double.longBitsToDouble(beb2long(position));
+  }
+  
+  public double leb2double(long position) throws IOException {
+    return Double.longBitsToDouble(leb2long(position));
+  }
+  
+  /**
+   * Reads and returns {@code length} bytes.
+   */
+  public byte[] bytes(long position, int length) throws IOException {
+    byte[] dst = new byte[length];
+    read(position, dst, 0, dst.length);
+    return dst;
+  }
+  
+  /**
+   * Reads {@code dst.length} bytes into the given {@code byte[]}.
+   */
+  public byte[] read(long position, byte[] dst) throws IOException {
+    return read(position, dst, 0, dst.length);
+  }
+  
+  /**
+   * Reads {@code length} bytes into the given {@code byte[]}.
+   */
+  public byte[] read(long position, byte[] dst, 
+      int offset, int length) throws IOException {
+    
+    if (offset < 0 || length < 0 || offset + length > dst.length) {
+      throw new IndexOutOfBoundsException(
+          "offset=" + offset + ", length=" + length);
+    }
+    
+    checkIndex(position, length);
+    
+    while (0 < length) {
+      ByteBuffer region = duplicate(position);
+      int count = Math.min(length, region.remaining());
+      region.get(dst, offset, count);
+      
+      position += count;
+      offset += count;
+      length -= count;
+    }
+    
+    return dst;
+  }
+  
+  /**
+   * Returns a read-only {@link ByteBuffer} for the given range. The 
+   * {@link ByteBuffer} is a zero-copy view of the mapping if the range 
+   * doesn't span two regions and a copy otherwise.
+   * 
+   * NOTE: Closing the {@link MappedFile} releases the mapping and any
+   * access to a view afterwards crashes the JVM. Use 
+   * {@link #bytes(long, int)} for data that outlives the 
+   * {@link MappedFile}.
+   */
+  public ByteBuffer slice(long position, int length) throws IOException {
+    checkIndex(position, length);
+    
+    if (length == 0) {
+      return ByteBuffer.allocate(0).asReadOnlyBuffer();
+    }
+    
+    ByteBuffer region = duplicate(position);
+    if (length <= region.remaining()) {
+      region.limit(region.position() + length);
+      return region.slice().asReadOnlyBuffer();
+    }
+    
+    return ByteBuffer.wrap(bytes(position, length)).asReadOnlyBuffer();
+  }
+  
+  /**
+   * Loads the whole {@link File} into physical memory.
+   * 
+   * @see MappedByteBuffer#load()
+   */
+  public MappedFile load() throws IOException {
+    return load(0L, size);
+  }
+  
+  /**
+   * Loads the given range into physical memory. Regions that are fully
+   * covered by the range are loaded with {@link MappedByteBuffer#load()}
+   * which issues a {@code MADV_WILLNEED} hint. The pages of the other 
+   * regions are being touched one by one.
+   */
+  public MappedFile load(long position, long length) throws IOException {
+    if (length < 0L) {
+      throw new IndexOutOfBoundsException("length=" + length);
+    }
+    
+    checkIndex(position, length);
+    
+    long end = position + length;
+    int sum = 0;
+    
+    // Start at the beginning of the page or the last page of an 
+    // unaligned range might be skipped.
+    long i = position & ~(PAGE_SIZE - 1L);
+    while (i < end) {
+      int index = (int)(i >>> shift);
+      MappedByteBuffer region = regions[index];
+      
+      long start = (long)index << shift;
+      long limit = start + region.capacity();
+      
+      if (position <= start && limit <= end) {
+        region.load();
+        i = limit;
+      } else {
+        sum += region.get(index(i));
+        i += PAGE_SIZE;
+      }
+    }
+    
+    touched = sum;
+    return this;
+  }
+  
+  /**
+   * Returns the sum of the bytes that the last call to 
+   * {@link #load(long, long)} has touched.
+   */
+  int touched() {
+    return touched;
+  }
+  
+  /**
+   * Returns {@code true} if the whole {@link File} is likely resident 
+   * in physical memory.
+   * 
+   * @see MappedByteBuffer#isLoaded()
+   */
+  public boolean isLoaded() throws IOException {
+    checkOpen();
+    
+    for (MappedByteBuffer region : regions) {
+      if (!region.isLoaded()) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Closes the {@link MappedFile} and releases the mapping.
+   * 
+   * @see FileUtils#unmap(ByteBuffer)
+   */
+  @Override
+  public void close() {
+    if (open) {
+      open = false;
+      unmap();
+    }
+  }
+  
+  private void unmap() {
+    for (int i = 0; i < regions.length; i++) {
+      if (regions[i] != null) {
+        FileUtils.unmap(regions[i]);
+        regions[i] = null;
+      }
+    }
+  }
+  
+  private int index(long position) {
+    return (int)(position & mask);
+  }
+  
+  private MappedByteBuffer region(long position, 
+      int length) throws IOException {
+    checkIndex(position, length);
+    return regions[(int)(position >>> shift)];
+  }
+  
+  private ByteBuffer duplicate(long position) {
+    ByteBuffer region = regions[(int)(position >>> shift)].duplicate();
+    region.position(index(position));
+    return region;
+  }
+  
+  private void checkIndex(long position, long length) throws IOException {
+    checkOpen();
+    
+    if (position < 0L || position > size - length) {
+      throw new IndexOutOfBoundsException("position=" + position 
+          + ", length=" + length + ", size=" + size);
+    }
+  }
+  
+  private void checkOpen() throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+  }
+  
+  @Override
+  public String toString() {
+    return file + ", size=" + size + ", regions=" + regions.length;
+  }
+}
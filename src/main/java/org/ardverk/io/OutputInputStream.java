@@ -19,18 +19,21 @@ package org.ardverk.io;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 
-import org.ardverk.concurrent.ExecutorUtils;
-import org.ardverk.concurrent.ManagedRunnable;
+import org.ardverk.concurrent.VirtualThreadUtils;
 
+/**
+ * An {@link java.io.OutputStream} whose data is being read by a 
+ * {@link Consumer} in the background. The {@link Consumer} runs in a 
+ * virtual thread if the runtime supports them or in a shared thread 
+ * pool unless a different {@link Executor} is given.
+ */
 public abstract class OutputInputStream extends FilterOutputStream {
 
   private static final Executor EXECUTOR 
-    = ExecutorUtils.newCachedThreadPool("OutputInputStreamThread");
+    = VirtualThreadUtils.newExecutor("OutputInputStreamThread");
   
   private static final Consumer SELF = new Consumer() {
     @Override
@@ -55,23 +58,23 @@ public abstract class OutputInputStream extends FilterOutputStream {
   
   private final Object lock = new Object();
   
-  private final PipedInputStream in;
+  private final InputStream in;
   
-  private final Runnable task = new ManagedRunnable() {
+  private final StreamTask task = new StreamTask() {
     
     @Override
-    protected void doRun() throws IOException {
+    protected void execute() throws IOException {
       synchronized (lock) {
-        try {
-          try {
-            consumer.consume(in);
-          } finally {
-            IoUtils.close(in);
-          }
-        } finally {
-          consumed = true;
-          lock.notifyAll();
-        }
+        consumer.consume(in);
+      }
+    }
+    
+    @Override
+    protected void done() {
+      synchronized (lock) {
+        IoUtils.close(in);
+        consumed = true;
+        lock.notifyAll();
       }
     }
 
@@ -83,6 +86,8 @@ public abstract class OutputInputStream extends FilterOutputStream {
   
   private final Consumer consumer;
   
+  private final Executor executor;
+  
   private boolean consumed = false;
   
   public OutputInputStream() {
@@ -98,12 +103,38 @@ public abstract class OutputInputStream extends FilterOutputStream {
   }
   
   public OutputInputStream(Consumer consumer, int bufferSize) {
-    super(new PipedOutputStream());
+    this(consumer, bufferSize, EXECUTOR);
+  }
+  
+  public OutputInputStream(Executor executor) {
+    this(-1, executor);
+  }
+  
+  public OutputInputStream(Consumer consumer, Executor executor) {
+    this(consumer, -1, executor);
+  }
+  
+  public OutputInputStream(int bufferSize, Executor executor) {
+    this(SELF, bufferSize, executor);
+  }
+  
+  public OutputInputStream(Consumer consumer, 
+      int bufferSize, Executor executor) {
+    this(consumer, InputOutputStream.newPipe(bufferSize), executor);
+  }
+  
+  private OutputInputStream(Consumer consumer, Pipe pipe, 
+      Executor executor) {
+    super(pipe.getOutputStream());
     
     if (consumer == null) {
       throw new NullPointerException("consumer");
     }
     
+    if (executor == null) {
+      throw new NullPointerException("executor");
+    }
+    
     if (consumer == SELF) {
       consumer = new Consumer() {
         @Override
@@ -119,25 +150,15 @@ public abstract class OutputInputStream extends FilterOutputStream {
     }
     
     this.consumer = consumer;
-    
-    if (bufferSize == -1) {
-      in = new PipedInputStream();
-    } else {
-      in = new PipedInputStream(bufferSize);
-    }
-    
-    try {
-      ((PipedOutputStream)out).connect(in);
-    } catch (IOException err) {
-      throw new IllegalStateException(err);
-    }
+    this.executor = executor;
+    this.in = pipe.getInputStream();
   }
   
   private void execute() {
     if (state.compareAndSet(State.INIT, State.READY)) {
       boolean success = false;
       try {
-        EXECUTOR.execute(task);
+        executor.execute(task);
         success = true;
       } finally {
         if (!success) {
@@ -153,25 +174,24 @@ public abstract class OutputInputStream extends FilterOutputStream {
   @Override
   public void write(int b) throws IOException {
     execute();
-    super.write(b);
+    out.write(b);
   }
 
   @Override
   public void write(byte[] b) throws IOException {
-    execute();
-    super.write(b);
+    write(b, 0, b.length);
   }
 
   @Override
   public void write(byte[] b, int off, int len) throws IOException {
     execute();
-    super.write(b, off, len);
+    out.write(b, off, len);
   }
 
   @Override
   public void flush() throws IOException {
     execute();
-    super.flush();
+    out.flush();
   }
   
   @Override
@@ -203,6 +223,18 @@ public abstract class OutputInputStream extends FilterOutputStream {
     }
   }
 
+  /**
+   * Closes the stream without waiting for the {@link Consumer} and 
+   * cancels it.
+   */
+  public void cancel() {
+    if (state.getAndSet(State.CLOSED) != State.CLOSED) {
+      task.cancel();
+      IoUtils.close(in);
+      IoUtils.close(out);
+    }
+  }
+  
   public static interface Consumer {
     public void consume(InputStream in) throws IOException;
     
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A {@link Compressor} that splits the data into blocks and compresses
+ * them in parallel on a {@link ForkJoinPool}. Each block becomes a GZIP
+ * member of its own and the members are concatenated in order.
+ *
+ * <p>The output is a standard multi-member GZIP stream that can be decoded
+ * by {@link GzipCompressor} and {@link java.util.zip.GZIPInputStream}.
+ * The blocks don't share a dictionary which costs a little compression
+ * ratio at block boundaries.
+ */
+public class ParallelGzipCompressor extends AbstractCompressor {
+  
+  /**
+   * The default block size.
+   */
+  public static final int BLOCK_SIZE = 1024 * 1024;
+  
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+  
+  /**
+   * A {@link ParallelGzipCompressor} with a shared {@link ForkJoinPool}
+   * and the default block size.
+   */
+  public static final ParallelGzipCompressor PARALLEL_GZIP
+    = new ParallelGzipCompressor(POOL, BLOCK_SIZE);
+  
+  private final ForkJoinPool pool;
+  
+  private final int blockSize;
+  
+  /**
+   * The maximum number of blocks that are in-flight per stream.
+   */
+  private final int maxPending;
+  
+  /**
+   * Creates a {@link ParallelGzipCompressor}.
+   *
+   * @param pool The {@link ForkJoinPool} that compresses the blocks
+   * @param blockSize The size of a block
+   */
+  public ParallelGzipCompressor(ForkJoinPool pool, int blockSize) {
+    super(GzipCompressor.GZIP.getAlgorithm());
+    
+    Precoditions.argument(0 < blockSize, "blockSize=%s", blockSize);
+    
+    this.pool = Precoditions.notNull(pool, "pool");
+    this.blockSize = blockSize;
+    this.maxPending = 2 * this.pool.getParallelism();
+  }
+  
+  /**
+   * Returns the block size.
+   */
+  public int getBlockSize() {
+    return blockSize;
+  }
+  
+  @Override
+  public byte[] compress(byte[] value, int offset, int length)
+      throws IOException {
+    
+    if (length <= blockSize) {
+      return GzipCompressor.GZIP.compress(value, offset, length);
+    }
+    
+    int blocks = (int)((length + (long)blockSize - 1L) / blockSize);
+    
+    List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>(blocks);
+    byte[][] members = new byte[blocks][];
+    long total = 0L;
+    
+    try {
+      for (int i = 0; i < blocks; i++) {
+        int position = offset + i * blockSize;
+        int count = Math.min(blockSize, offset + length - position);
+        futures.add(pool.submit(new Block(value, position, count, null)));
+      }
+      
+      for (int i = 0; i < blocks; i++) {
+        members[i] = get(futures.get(i));
+        total += members[i].length;
+      }
+    } finally {
+      for (Future<byte[]> future : futures) {
+        future.cancel(false);
+      }
+    }
+    
+    if (Integer.MAX_VALUE < total) {
+      throw new IOException("Too large: " + total);
+    }
+    
+    byte[] dst = new byte[(int)total];
+    int position = 0;
+    for (byte[] member : members) {
+      System.arraycopy(member, 0, dst, position, member.length);
+      position += member.length;
+    }
+    
+    return dst;
+  }
+  
+  @Override
+  public byte[] decompress(byte[] value, int offset, int length)
+      throws IOException {
+    return GzipCompressor.GZIP.decompress(value, offset, length);
+  }
+  
+  /**
+   * Returns an {@link OutputStream} that compresses full blocks in the
+   * background. At most two blocks per thread of the {@link ForkJoinPool}
+   * are being buffered.
+   */
+  @Override
+  public OutputStream createOutputStream(OutputStream out) throws IOException {
+    return new BlockOutputStream(out);
+  }
+  
+  @Override
+  public InputStream createInputStream(InputStream in) throws IOException {
+    return GzipCompressor.GZIP.createInputStream(in);
+  }
+  
+  /**
+   * Returns the result of the given {@link Future}.
+   */
+  private static byte[] get(Future<byte[]> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException err) {
+      throw new InterruptedIOException();
+    } catch (ExecutionException err) {
+      Throwable cause = err.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+  
+  /**
+   * Compresses a block into a GZIP member. The block's buffer is being
+   * released to the {@link BufferPool} exactly once, either after it has
+   * been compressed or by {@link #abort()} if it never ran.
+   */
+  private static class Block implements Callable<byte[]> {
+    
+    private final byte[] value;
+    
+    private final int offset;
+    
+    private final int length;
+    
+    /**
+     * The {@link BufferPool} the block's buffer is being released to
+     * (may be {@code null}).
+     */
+    private final BufferPool pool;
+    
+    private final AtomicBoolean started = new AtomicBoolean();
+    
+    private Future<byte[]> future = null;
+    
+    public Block(byte[] value, int offset, int length, BufferPool pool) {
+      this.value = value;
+      this.offset = offset;
+      this.length = length;
+      this.pool = pool;
+    }
+    
+    @Override
+    public byte[] call() throws IOException {
+      if (!started.compareAndSet(false, true)) {
+        throw new CancellationException();
+      }
+      
+      try {
+        return GzipCompressor.GZIP.compress(value, offset, length);
+      } finally {
+        release();
+      }
+    }
+    
+    /**
+     * Cancels the block and releases its buffer unless it's already
+     * being compressed. A cancelled {@link Future} doesn't tell if the
+     * task has started running.
+     */
+    public void abort() {
+      future.cancel(false);
+      if (started.compareAndSet(false, true)) {
+        release();
+      }
+    }
+    
+    private void release() {
+      if (pool != null) {
+        pool.release(value);
+      }
+    }
+  }
+  
+  /**
+   * An {@link OutputStream} that buffers a block at a time and writes the
+   * compressed members in order as they become available.
+   */
+  private class BlockOutputStream extends OutputStream {
+    
+    private final Deque<Block> pending = new ArrayDeque<Block>();
+    
+    private final OutputStream out;
+    
+    private final byte[] single = new byte[1];
+    
+    private byte[] buffer = null;
+    
+    private int count = 0;
+    
+    private boolean empty = true;
+    
+    private boolean open = true;
+    
+    public BlockOutputStream(OutputStream out) {
+      this.out = out;
+    }
+    
+    @Override
+    public void write(int b) throws IOException {
+      single[0] = (byte)b;
+      write(single, 0, 1);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (!open) {
+        throw new IOException("closed");
+      }
+      
+      while (0 < len) {
+        if (buffer == null) {
+          buffer = BufferPool.DEFAULT.acquire(blockSize);
+        }
+        
+        int length = Math.min(len, blockSize - count);
+        System.arraycopy(b, off, buffer, count, length);
+        count += length;
+        off += length;
+        len -= length;
+        
+        if (count == blockSize) {
+          submit();
+        }
+      }
+    }
+    
+    /**
+     * Compresses the current block in the background.
+     */
+    private void submit() throws IOException {
+      Block block = new Block(buffer, 0, count, BufferPool.DEFAULT);
+      block.future = pool.submit(block);
+      pending.add(block);
+      
+      buffer = null;
+      count = 0;
+      empty = false;
+      
+      while (maxPending <= pending.size()) {
+        out.write(get(pending.poll().future));
+      }
+    }
+    
+    /**
+     * Writes all pending members.
+     */
+    private void drain() throws IOException {
+      while (!pending.isEmpty()) {
+        out.write(get(pending.poll().future));
+      }
+    }
+    
+    @Override
+    public void flush() throws IOException {
+      if (0 < count) {
+        submit();
+      }
+      
+      drain();
+      out.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+      if (!open) {
+        return;
+      }
+      
+      open = false;
+      try {
+        if (0 < count || empty) {
+          if (buffer == null) {
+            buffer = BufferPool.DEFAULT.acquire(0);
+          }
+          submit();
+        }
+        
+        drain();
+      } finally {
+        // Don't bother with the rest if something went wrong
+        for (Block block : pending) {
+          block.abort();
+        }
+        pending.clear();
+        
+        if (buffer != null) {
+          BufferPool.DEFAULT.release(buffer);
+          buffer = null;
+        }
+        
+        out.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A single-producer/single-consumer pipe on top of a ring buffer.
+ *
+ * <p>Unlike {@link java.io.PipedInputStream} it copies in bulk, doesn't
+ * lock and a blocked reader or writer is being woken up as soon as
+ * there is data or room instead of polling once a second.
+ *
+ * <p>There must be at most one reading and one writing {@link Thread} at
+ * a time. Either end may be closed from any {@link Thread}.
+ */
+public class Pipe {
+  
+  /**
+   * The default capacity of a {@link Pipe}.
+   */
+  public static final int DEFAULT_CAPACITY = 64 * 1024;
+  
+  private final byte[] buffer;
+  
+  /**
+   * The total number of bytes that were read.
+   */
+  private volatile long head = 0L;
+  
+  /**
+   * The total number of bytes that were written.
+   */
+  private volatile long tail = 0L;
+  
+  private volatile Thread reader = null;
+  
+  private volatile Thread writer = null;
+  
+  private volatile boolean readerClosed = false;
+  
+  private volatile boolean writerClosed = false;
+  
+  private final InputStream in = new InputStream() {
+    
+    private final byte[] single = new byte[1];
+    
+    @Override
+    public int read() throws IOException {
+      int r = read(single, 0, 1);
+      return r == -1 ? -1 : (single[0] & 0xFF);
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return Pipe.this.read(b, off, len);
+    }
+    
+    @Override
+    public int available() throws IOException {
+      return (int)(tail - head);
+    }
+    
+    @Override
+    public void close() {
+      closeReader();
+    }
+  };
+  
+  private final OutputStream out = new OutputStream() {
+    
+    private final byte[] single = new byte[1];
+    
+    @Override
+    public void write(int b) throws IOException {
+      single[0] = (byte)b;
+      write(single, 0, 1);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      Pipe.this.write(b, off, len);
+    }
+    
+    @Override
+    public void close() {
+      closeWriter();
+    }
+  };
+  
+  /**
+   * Creates a {@link Pipe} with the default capacity.
+   */
+  public Pipe() {
+    this(DEFAULT_CAPACITY);
+  }
+  
+  /**
+   * Creates a {@link Pipe} with the given capacity.
+   */
+  public Pipe(int capacity) {
+    Precoditions.argument(0 < capacity, "capacity=%s", capacity);
+    this.buffer = new byte[capacity];
+  }
+  
+  /**
+   * Returns the capacity of the {@link Pipe}.
+   */
+  public int capacity() {
+    return buffer.length;
+  }
+  
+  /**
+   * Returns the reading end of the {@link Pipe}.
+   */
+  public InputStream getInputStream() {
+    return in;
+  }
+  
+  /**
+   * Returns the writing end of the {@link Pipe}.
+   */
+  public OutputStream getOutputStream() {
+    return out;
+  }
+  
+  private int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || b.length - off < len) {
+      throw new IndexOutOfBoundsException();
+    }
+    
+    while (true) {
+      if (readerClosed) {
+        throw new IOException("Pipe closed");
+      }
+      
+      if (len == 0) {
+        return 0;
+      }
+      
+      // Read the flag before the tail. Everything that was written
+      // before the writer got closed is visible then.
+      boolean closed = writerClosed;
+      long head = this.head;
+      int available = (int)(tail - head);
+      
+      if (0 < available) {
+        int count = Math.min(len, available);
+        int capacity = buffer.length;
+        int index = (int)(head % capacity);
+        int first = Math.min(count, capacity - index);
+        
+        System.arraycopy(buffer, index, b, off, first);
+        System.arraycopy(buffer, 0, b, off + first, count - first);
+        
+        this.head = head + count;
+        LockSupport.unpark(writer);
+        return count;
+      }
+      
+      if (closed) {
+        return -1;
+      }
+      
+      reader = Thread.currentThread();
+      try {
+        // Check again after announcing ourselves or a concurrent
+        // write could go unnoticed.
+        if (tail == head && !writerClosed && !readerClosed) {
+          park();
+        }
+      } finally {
+        reader = null;
+      }
+    }
+  }
+  
+  private void write(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || b.length - off < len) {
+      throw new IndexOutOfBoundsException();
+    }
+    
+    while (0 < len) {
+      if (readerClosed || writerClosed) {
+        throw new IOException("Pipe closed");
+      }
+      
+      long tail = this.tail;
+      int capacity = buffer.length;
+      int free = capacity - (int)(tail - head);
+      
+      if (0 < free) {
+        int count = Math.min(len, free);
+        int index = (int)(tail % capacity);
+        int first = Math.min(count, capacity - index);
+        
+        System.arraycopy(b, off, buffer, index, first);
+        System.arraycopy(b, off + first, buffer, 0, count - first);
+        
+        this.tail = tail + count;
+        LockSupport.unpark(reader);
+        
+        off += count;
+        len -= count;
+        continue;
+      }
+      
+      writer = Thread.currentThread();
+      try {
+        if (this.tail - head == capacity && !readerClosed) {
+          park();
+        }
+      } finally {
+        writer = null;
+      }
+    }
+  }
+  
+  private void park() throws InterruptedIOException {
+    LockSupport.park(this);
+    if (Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException();
+    }
+  }
+  
+  private void closeReader() {
+    readerClosed = true;
+    LockSupport.unpark(writer);
+    LockSupport.unpark(reader);
+  }
+  
+  private void closeWriter() {
+    writerClosed = true;
+    LockSupport.unpark(reader);
+    LockSupport.unpark(writer);
+  }
+}
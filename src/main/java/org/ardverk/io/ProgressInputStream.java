@@ -20,13 +20,36 @@ import java.io.EOFException;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 
+import org.ardverk.lang.Precoditions;
+
+/**
+ * An {@link InputStream} that measures the transfer with a 
+ * {@link TransferMeter} and reports the progress to a 
+ * {@link ProgressCallback}.
+ * 
+ * <p>The {@link ProgressCallback} is being called for every read unless 
+ * a batch size or time is given. The number of bytes that were read 
+ * is being reported after at least the given number of bytes or the 
+ * given time since the previous report, whichever comes first.
+ */
 public class ProgressInputStream extends FilterInputStream {
 
   private static final ProgressCallback DEFAULT = new ProgressAdapter();
   
   protected final ProgressCallback callback;
   
+  private final TransferMeter meter = new TransferMeter();
+  
+  private final long batchSize;
+  
+  private final long batchTime;
+  
+  private long pending = 0L;
+  
+  private long lastBatch = System.nanoTime();
+  
   private volatile boolean open = true;
   
   private volatile boolean eof = false;
@@ -36,8 +59,35 @@ public class ProgressInputStream extends FilterInputStream {
   }
   
   public ProgressInputStream(InputStream in, ProgressCallback callback) {
+    this(in, callback, 1, 0L, TimeUnit.MILLISECONDS);
+  }
+  
+  /**
+   * Creates a {@link ProgressInputStream} that batches the calls 
+   * to {@link ProgressCallback#in(InputStream, int)}.
+   * 
+   * @param callback The {@link ProgressCallback} (may be {@code null} if
+   * the protected notification methods are being overridden)
+   * @param batchSize The number of bytes per call
+   * @param batchTime The time between two calls
+   */
+  public ProgressInputStream(InputStream in, ProgressCallback callback, 
+      int batchSize, long batchTime, TimeUnit unit) {
     super(in);
+    
+    Precoditions.argument(0 < batchSize, "batchSize=%s", batchSize);
+    Precoditions.argument(0L <= batchTime, "batchTime=%s", batchTime);
+    
     this.callback = callback;
+    this.batchSize = batchSize;
+    this.batchTime = unit.toNanos(batchTime);
+  }
+  
+  /**
+   * Returns the {@link TransferMeter}.
+   */
+  public TransferMeter getMeter() {
+    return meter;
   }
   
   public boolean isOpen() {
@@ -63,10 +113,11 @@ public class ProgressInputStream extends FilterInputStream {
   @Override
   public int read() throws IOException {
     int value = init();
+    long start = System.nanoTime();
     try {
       value = super.read();
     } finally {
-      process(value, 1);
+      process(value, 1, start);
     }
     return value;
   }
@@ -74,21 +125,43 @@ public class ProgressInputStream extends FilterInputStream {
   @Override
   public int read(byte[] b, int off, int len) throws IOException {
     int r = init();
+    long start = System.nanoTime();
     try {
       r = super.read(b, off, len);
     } finally {
-      process(r, r);
+      process(r, r, start);
     }
     return r;
   }
 
-  private void process(int r, int count) {
+  private void process(int r, int count, long start) {
+    long now = System.nanoTime();
+    
     if (r == -1) {
+      meter.record(0, start, now);
       if (!eof) {
         eof = true;
+        flush(now);
         eof();
       }
     } else {
+      meter.record(count, start, now);
+      
+      pending += count;
+      if (batchSize <= pending || batchTime <= now - lastBatch) {
+        flush(now);
+      }
+    }
+  }
+  
+  /**
+   * Reports the pending bytes.
+   */
+  private void flush(long now) {
+    lastBatch = now;
+    while (0L < pending) {
+      int count = (int)Math.min(pending, Integer.MAX_VALUE);
+      pending -= count;
       in(count);
     }
   }
@@ -100,6 +173,7 @@ public class ProgressInputStream extends FilterInputStream {
       try {
         super.close();
       } finally {
+        flush(System.nanoTime());
         closed();
       }
     }
@@ -107,7 +181,7 @@ public class ProgressInputStream extends FilterInputStream {
   
   /**
    * Called every time some data has been read from 
-   * the {@link ProgressInputStream}.
+   * the {@link ProgressInputStream} or once per batch.
    * 
    * @see #read()
    * @see #read(byte[])
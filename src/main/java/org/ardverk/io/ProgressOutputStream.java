@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * An {@link OutputStream} that measures the transfer with a
+ * {@link TransferMeter} and reports the progress to a
+ * {@link ProgressCallback}.
+ *
+ * @see ProgressInputStream
+ */
+public class ProgressOutputStream extends FilterOutputStream {
+  
+  private static final ProgressCallback DEFAULT = new ProgressAdapter();
+  
+  protected final ProgressCallback callback;
+  
+  private final TransferMeter meter = new TransferMeter();
+  
+  private final long batchSize;
+  
+  private final long batchTime;
+  
+  private long pending = 0L;
+  
+  private long lastBatch = System.nanoTime();
+  
+  private volatile boolean open = true;
+  
+  public ProgressOutputStream(OutputStream out) {
+    this(out, DEFAULT);
+  }
+  
+  public ProgressOutputStream(OutputStream out, ProgressCallback callback) {
+    this(out, callback, 1, 0L, TimeUnit.MILLISECONDS);
+  }
+  
+  /**
+   * Creates a {@link ProgressOutputStream} that batches the calls
+   * to {@link ProgressCallback#out(OutputStream, int)}.
+   *
+   * @param callback The {@link ProgressCallback} (may be {@code null} if
+   * the protected notification methods are being overridden)
+   * @param batchSize The number of bytes per call
+   * @param batchTime The time between two calls
+   */
+  public ProgressOutputStream(OutputStream out, ProgressCallback callback,
+      int batchSize, long batchTime, TimeUnit unit) {
+    super(out);
+    
+    Precoditions.argument(0 < batchSize, "batchSize=%s", batchSize);
+    Precoditions.argument(0L <= batchTime, "batchTime=%s", batchTime);
+    
+    this.callback = callback;
+    this.batchSize = batchSize;
+    this.batchTime = unit.toNanos(batchTime);
+  }
+  
+  /**
+   * Returns the {@link TransferMeter}.
+   */
+  public TransferMeter getMeter() {
+    return meter;
+  }
+  
+  public boolean isOpen() {
+    return open;
+  }
+  
+  private void init() throws IOException {
+    if (!open) {
+      throw new IOException("closed");
+    }
+  }
+  
+  @Override
+  public void write(int b) throws IOException {
+    init();
+    long start = System.nanoTime();
+    out.write(b);
+    process(1, start);
+  }
+  
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    init();
+    long start = System.nanoTime();
+    out.write(b, off, len);
+    process(len, start);
+  }
+  
+  private void process(int count, long start) {
+    long now = System.nanoTime();
+    meter.record(count, start, now);
+    
+    pending += count;
+    if (batchSize <= pending || batchTime <= now - lastBatch) {
+      flush(now);
+    }
+  }
+  
+  /**
+   * Reports the pending bytes.
+   */
+  private void flush(long now) {
+    lastBatch = now;
+    while (0L < pending) {
+      int count = (int)Math.min(pending, Integer.MAX_VALUE);
+      pending -= count;
+      out(count);
+    }
+  }
+  
+  @Override
+  public void close() throws IOException {
+    if (open) {
+      open = false;
+      try {
+        super.close();
+      } finally {
+        flush(System.nanoTime());
+        closed();
+      }
+    }
+  }
+  
+  /**
+   * Called every time some data has been written to
+   * the {@link ProgressOutputStream} or once per batch.
+   */
+  protected void out(int count) {
+    callback.out(this, count);
+  }
+  
+  /**
+   * Called if the {@link ProgressOutputStream} has been closed.
+   *
+   * @see #close()
+   */
+  protected void closed() {
+    callback.closed(this);
+  }
+  
+  /**
+   *
+   */
+  public static interface ProgressCallback {
+    /**
+     * Called every time some data has been written to
+     * the {@link ProgressOutputStream}.
+     */
+    public void out(OutputStream out, int count);
+    
+    /**
+     * Called if the {@link ProgressOutputStream} has been closed.
+     *
+     * @see ProgressOutputStream#close()
+     */
+    public void closed(OutputStream out);
+  }
+  
+  /**
+   *
+   */
+  public static class ProgressAdapter implements ProgressCallback {
+    @Override
+    public void out(OutputStream out, int count) {
+    }
+    
+    @Override
+    public void closed(OutputStream out) {
+    }
+  }
+}
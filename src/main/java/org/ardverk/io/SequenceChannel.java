@@ -0,0 +1,406 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A {@link ReadableByteChannel} that concatenates segments such as
+ * chunk files.
+ *
+ * <p>The next segment is being opened on the given {@link Executor} while
+ * the current one is being read. {@link #transferTo(WritableByteChannel)}
+ * moves all segments in a single call and uses
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)} for
+ * {@link FileChannel} segments.
+ *
+ * <p>Segments are expected to be blocking.
+ * {@link java.nio.channels.Channels#newInputStream(ReadableByteChannel)}
+ * turns a {@link SequenceChannel} into an {@link java.io.InputStream}.
+ *
+ * @see SequenceInputStream
+ */
+public class SequenceChannel implements ReadableByteChannel {
+  
+  private final Iterator<? extends Callable<
+      ? extends ReadableByteChannel>> segments;
+  
+  /**
+   * The {@link Executor} that opens the next segment (may be {@code null}).
+   */
+  private final Executor executor;
+  
+  private ReadableByteChannel current = null;
+  
+  private FutureTask<ReadableByteChannel> next = null;
+  
+  private volatile boolean open = true;
+  
+  /**
+   * Creates a {@link SequenceChannel} of already open channels.
+   */
+  public SequenceChannel(ReadableByteChannel... channels) {
+    this(Arrays.asList(channels).iterator());
+  }
+  
+  /**
+   * Creates a {@link SequenceChannel} of already open channels.
+   */
+  public SequenceChannel(
+      final Iterator<? extends ReadableByteChannel> channels) {
+    this(new Iterator<Callable<ReadableByteChannel>>() {
+      @Override
+      public boolean hasNext() {
+        return channels.hasNext();
+      }
+      
+      @Override
+      public Callable<ReadableByteChannel> next() {
+        final ReadableByteChannel channel
+          = Precoditions.notNull(channels.next(), "channel");
+        
+        return new Callable<ReadableByteChannel>() {
+          @Override
+          public ReadableByteChannel call() {
+            return channel;
+          }
+        };
+      }
+      
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    }, null);
+  }
+  
+  /**
+   * Creates a {@link SequenceChannel} of segments that are being opened
+   * on demand.
+   *
+   * @param segments The {@link Callable}s that open the segments
+   * @param executor The {@link Executor} that opens the next segment
+   * ahead of time or {@code null} to open segments when they're needed
+   */
+  public SequenceChannel(
+      Iterator<? extends Callable<? extends ReadableByteChannel>> segments,
+      Executor executor) {
+    this.segments = Precoditions.notNull(segments, "segments");
+    this.executor = executor;
+    
+    prefetch();
+  }
+  
+  /**
+   * Creates a {@link SequenceChannel} of the given {@link File}s.
+   *
+   * @see #SequenceChannel(Iterator, Executor)
+   */
+  public static SequenceChannel open(Iterable<? extends File> files,
+      Executor executor) {
+    
+    List<Callable<FileChannel>> segments
+      = new ArrayList<Callable<FileChannel>>();
+    for (final File file : files) {
+      segments.add(new Callable<FileChannel>() {
+        @Override
+        public FileChannel call() throws IOException {
+          return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+      });
+    }
+    
+    return new SequenceChannel(segments.iterator(), executor);
+  }
+  
+  /**
+   * Starts opening the next segment.
+   */
+  private void prefetch() {
+    if (!segments.hasNext()) {
+      return;
+    }
+    
+    final Segment segment = new Segment(segments.next());
+    next = new FutureTask<ReadableByteChannel>(segment) {
+      @Override
+      protected void done() {
+        // The result of a cancelled task is being discarded
+        if (isCancelled()) {
+          segment.release();
+        }
+      }
+    };
+    
+    if (executor != null) {
+      executor.execute(next);
+    }
+  }
+  
+  /**
+   * Closes the current segment and moves on to the next one. Returns
+   * {@code false} if there are no more segments.
+   */
+  private boolean advance() throws IOException {
+    if (current != null) {
+      ReadableByteChannel channel = current;
+      current = null;
+      channel.close();
+    }
+    
+    FutureTask<ReadableByteChannel> task = next;
+    if (task == null) {
+      return false;
+    }
+    
+    next = null;
+    
+    // Opens the segment in the caller's Thread if it's not
+    // being or hasn't been opened yet.
+    task.run();
+    
+    current = get(task);
+    prefetch();
+    return true;
+  }
+  
+  private static ReadableByteChannel get(FutureTask<ReadableByteChannel> task)
+      throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException err) {
+      throw new InterruptedIOException();
+    } catch (ExecutionException err) {
+      Throwable cause = err.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+  
+  private void ensureOpen() throws ClosedChannelException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+  }
+  
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    ensureOpen();
+    
+    int total = 0;
+    while (dst.hasRemaining()) {
+      if (current == null && !advance()) {
+        break;
+      }
+      
+      int r = current.read(dst);
+      if (r == -1) {
+        advance();
+        continue;
+      }
+      
+      if (r == 0) {
+        break;
+      }
+      
+      total += r;
+    }
+    
+    if (total == 0 && current == null && next == null) {
+      return dst.hasRemaining() ? -1 : 0;
+    }
+    return total;
+  }
+  
+  /**
+   * Transfers the rest of all segments to the given
+   * {@link WritableByteChannel} and returns the number of bytes
+   * that were transferred.
+   */
+  public long transferTo(WritableByteChannel target) throws IOException {
+    ensureOpen();
+    
+    long total = 0L;
+    ByteBuffer buffer = null;
+    try {
+      while (current != null || advance()) {
+        if (current instanceof FileChannel) {
+          total += transferTo((FileChannel)current, target);
+        } else {
+          if (buffer == null) {
+            buffer = ByteBuffer.wrap(
+                BufferPool.DEFAULT.acquire(StreamUtils.BUFFER_SIZE));
+          }
+          total += transferTo(current, target, buffer);
+        }
+        
+        advance();
+      }
+    } finally {
+      if (buffer != null) {
+        BufferPool.DEFAULT.release(buffer.array());
+      }
+    }
+    
+    return total;
+  }
+  
+  private static long transferTo(FileChannel src,
+      WritableByteChannel target) throws IOException {
+    
+    long position = src.position();
+    long size = src.size();
+    long start = position;
+    
+    try {
+      while (position < size) {
+        long n = src.transferTo(position, size - position, target);
+        if (n <= 0L) {
+          throw new IOException("The target made no progress");
+        }
+        position += n;
+      }
+    } finally {
+      src.position(position);
+    }
+    
+    return position - start;
+  }
+  
+  private static long transferTo(ReadableByteChannel src,
+      WritableByteChannel target, ByteBuffer buffer) throws IOException {
+    
+    long total = 0L;
+    while (true) {
+      buffer.clear();
+      int r = src.read(buffer);
+      if (r == -1) {
+        break;
+      }
+      
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        if (target.write(buffer) <= 0) {
+          throw new IOException("The target made no progress");
+        }
+      }
+      total += r;
+    }
+    return total;
+  }
+  
+  /**
+   * Opens a segment. A segment that finishes opening after the task has 
+   * been cancelled is being closed rather than leaked.
+   */
+  private static class Segment implements Callable<ReadableByteChannel> {
+    
+    private final Callable<? extends ReadableByteChannel> segment;
+    
+    private ReadableByteChannel channel = null;
+    
+    private boolean released = false;
+    
+    public Segment(Callable<? extends ReadableByteChannel> segment) {
+      this.segment = segment;
+    }
+    
+    @Override
+    public ReadableByteChannel call() throws Exception {
+      ReadableByteChannel channel = Precoditions.notNull(
+          segment.call(), "channel");
+      
+      synchronized (this) {
+        if (!released) {
+          this.channel = channel;
+          return channel;
+        }
+      }
+      
+      IoUtils.close(channel);
+      throw new ClosedChannelException();
+    }
+    
+    /**
+     * Closes the segment if it has been opened already or as soon 
+     * as it has been opened.
+     */
+    public void release() {
+      ReadableByteChannel channel = null;
+      synchronized (this) {
+        released = true;
+        channel = this.channel;
+        this.channel = null;
+      }
+      IoUtils.close(channel);
+    }
+  }
+  
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+  
+  /**
+   * Closes the current and the next segment. The remaining
+   * segments are not being opened.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!open) {
+      return;
+    }
+    
+    open = false;
+    
+    FutureTask<ReadableByteChannel> task = next;
+    next = null;
+    
+    if (task != null && !task.cancel(false)) {
+      try {
+        IoUtils.close(task.get());
+      } catch (Exception ignore) {
+      }
+    }
+    
+    if (current != null) {
+      ReadableByteChannel channel = current;
+      current = null;
+      channel.close();
+    }
+  }
+}
@@ -97,18 +97,16 @@ public class SequenceInputStream extends InputStream {
       throw new EOFException();
     }
     
-    if (in == null) {
-      eof = true;
-      return -1;
-    }
-    
-    int value = in.read();
-    if (value < 0) {
+    while (in != null) {
+      int value = in.read();
+      if (value != -1) {
+        return value;
+      }
       advance();
-      return read();
     }
     
-    return value;
+    eof = true;
+    return -1;
   }
   
   @Override
@@ -121,17 +119,16 @@ public class SequenceInputStream extends InputStream {
       throw new EOFException();
     }
     
-    if (in == null) {
-      eof = true;
-      return -1;
-    }
-    
-    int n = in.read(b, off, len);
-    if (n < 0) {
+    while (in != null) {
+      int n = in.read(b, off, len);
+      if (n != -1) {
+        return n;
+      }
       advance();
-      return read(b, off, len);
     }
-    return n;
+    
+    eof = true;
+    return -1;
   }
 
   @Override
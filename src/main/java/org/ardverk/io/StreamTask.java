@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.IOException;
+
+import org.ardverk.concurrent.ManagedRunnable;
+
+/**
+ * The background task of {@link InputOutputStream} and
+ * {@link OutputInputStream} that can be cancelled from another
+ * {@link Thread}.
+ */
+abstract class StreamTask extends ManagedRunnable {
+  
+  private static final Object DONE = new Object();
+  
+  /**
+   * The {@link Thread} that runs the task or {@link #DONE}.
+   */
+  private Object runner = null;
+  
+  @Override
+  protected final void doRun() throws IOException {
+    try {
+      synchronized (this) {
+        if (runner == DONE) {
+          return;
+        }
+        runner = Thread.currentThread();
+      }
+      
+      execute();
+    
+    } finally {
+      try {
+        done();
+      } finally {
+        synchronized (this) {
+          runner = DONE;
+          
+          // Don't leak a cancellation to the Executor's next task
+          Thread.interrupted();
+        }
+      }
+    }
+  }
+  
+  /**
+   * Cancels the task. It won't run if it hasn't started yet and
+   * gets interrupted if it's running.
+   */
+  public synchronized void cancel() {
+    if (runner instanceof Thread) {
+      ((Thread)runner).interrupt();
+    }
+    runner = DONE;
+  }
+  
+  /**
+   * Does the actual work.
+   */
+  protected abstract void execute() throws IOException;
+  
+  /**
+   * Called when the task is done or if it was cancelled before it started.
+   */
+  protected void done() {
+  }
+}
@@ -17,19 +17,32 @@
 package org.ardverk.io;
 
 import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class StreamUtils {
-
+  
   public static final int BUFFER_SIZE = 8 * 1024;
   
   private StreamUtils() {}
   
+  /**
+   * Copies all data from the {@link InputStream} to the {@link OutputStream}.
+   * 
+   * @see #copy(InputStream, OutputStream, long)
+   */
   public static long copy(InputStream in, 
       OutputStream out) throws IOException {
-    return copy(in, out, BUFFER_SIZE);
+    return copy(in, out, -1L);
   }
   
   public static long copy(InputStream in, OutputStream out, 
@@ -42,9 +55,27 @@ public class StreamUtils {
     return copy(in, out, buffer, -1L);
   }
   
+  /**
+   * Copies the given number of bytes (or everything if the length is -1) 
+   * from the {@link InputStream} to the {@link OutputStream}. The data is
+   * being transferred by the OS if both are backed by a {@link FileChannel}
+   * (see {@link FileChannel#transferTo(long, long, WritableByteChannel)}).
+   * 
+   * @throws EOFException If the {@link InputStream} has less than the 
+   * given number of bytes.
+   */
   public static long copy(InputStream in, OutputStream out, 
       long length) throws IOException {
-    return copy(in, out, BUFFER_SIZE, length);
+    
+    FileChannel src = getChannel(in);
+    if (src != null && isTransferable(src)) {
+      FileChannel dst = getChannel(out);
+      if (dst != null) {
+        return transferTo(src, dst, length);
+      }
+    }
+    
+    return copy(in, out, BufferPool.DEFAULT, length);
   }
   
   public static long copy(InputStream in, OutputStream out, 
@@ -82,6 +113,139 @@ public class StreamUtils {
     return total;
   }
   
+  /**
+   * Copies the given number of bytes (or everything if the length is -1) 
+   * from the {@link InputStream} to the {@link OutputStream} with a buffer 
+   * from the given {@link BufferPool}.
+   */
+  public static long copy(InputStream in, OutputStream out, 
+      BufferPool pool, long length) throws IOException {
+    byte[] buffer = pool.acquire(BUFFER_SIZE);
+    try {
+      return copy(in, out, buffer, length);
+    } finally {
+      pool.release(buffer);
+    }
+  }
+  
+  /**
+   * Copies the given number of bytes (or everything if the length is -1) 
+   * from the {@link InputStream} to the {@link WritableByteChannel}. The 
+   * data is being transferred by the OS if the {@link InputStream} is
+   * backed by a {@link FileChannel}.
+   * 
+   * <p>NOTE: The {@link WritableByteChannel} must be in blocking mode.
+   */
+  public static long copy(InputStream in, WritableByteChannel out, 
+      long length) throws IOException {
+    
+    FileChannel src = getChannel(in);
+    if (src != null && isTransferable(src)) {
+      return transferTo(src, out, length);
+    }
+    
+    checkBlocking(out);
+    
+    byte[] buffer = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+    try {
+      ByteBuffer bb = ByteBuffer.wrap(buffer);
+      long total = 0L;
+      
+      while (total < length || length == -1L) {
+        int remaining = remaining(buffer.length, total, length);
+        int len = in.read(buffer, 0, remaining);
+        if (len == -1) {
+          if (length != -1L) {
+            throw new EOFException();
+          }
+          break;
+        }
+        
+        bb.clear().limit(len);
+        while (bb.hasRemaining()) {
+          out.write(bb);
+        }
+        
+        total += len;
+      }
+      
+      return total;
+    } finally {
+      BufferPool.DEFAULT.release(buffer);
+    }
+  }
+  
+  /**
+   * Copies the given number of bytes (or everything if the length is -1) 
+   * from the {@link ReadableByteChannel} to the {@link OutputStream}. The 
+   * data is being transferred by the OS if the {@link OutputStream} is
+   * backed by a {@link FileChannel}.
+   * 
+   * <p>NOTE: The {@link ReadableByteChannel} must be in blocking mode.
+   */
+  public static long copy(ReadableByteChannel in, OutputStream out, 
+      long length) throws IOException {
+    
+    checkBlocking(in);
+    
+    FileChannel dst = getChannel(out);
+    if (dst != null) {
+      return copy(in, dst, length);
+    }
+    
+    byte[] buffer = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+    try {
+      ByteBuffer bb = ByteBuffer.wrap(buffer);
+      long total = 0L;
+      
+      while (total < length || length == -1L) {
+        bb.clear().limit(remaining(buffer.length, total, length));
+        int len = in.read(bb);
+        if (len == -1) {
+          if (length != -1L) {
+            throw new EOFException();
+          }
+          break;
+        }
+        
+        out.write(buffer, 0, len);
+        total += len;
+      }
+      
+      return total;
+    } finally {
+      BufferPool.DEFAULT.release(buffer);
+    }
+  }
+  
+  /**
+   * Copies the given number of bytes (or everything if the length is -1) 
+   * from the {@link ReadableByteChannel} to the {@link WritableByteChannel}.
+   * The data is being transferred by the OS if either of them is a
+   * {@link FileChannel}.
+   * 
+   * <p>NOTE: Both channels must be in blocking mode.
+   */
+  public static long copy(ReadableByteChannel in, WritableByteChannel out, 
+      long length) throws IOException {
+    
+    if (in instanceof FileChannel) {
+      if (isTransferable((FileChannel)in)) {
+        return transferTo((FileChannel)in, out, length);
+      }
+    
+    } else {
+      checkBlocking(in);
+      
+      if (out instanceof FileChannel) {
+        return transferFrom(in, (FileChannel)out, length);
+      }
+    }
+    
+    checkBlocking(out);
+    return copyBuffered(in, out, length);
+  }
+  
   public static byte[] readFully(InputStream in, byte[] dst) throws IOException {
     return readFully(in, dst, 0, dst.length);
   }
@@ -100,4 +264,165 @@ public class StreamUtils {
     
     return dst;
   }
+  
+  /**
+   * Copies the given number of bytes (or everything if the length is -1)
+   * from the {@link ReadableByteChannel} to the {@link WritableByteChannel}
+   * through a buffer.
+   */
+  private static long copyBuffered(ReadableByteChannel in, 
+      WritableByteChannel out, long length) throws IOException {
+    
+    byte[] buffer = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+    try {
+      ByteBuffer bb = ByteBuffer.wrap(buffer);
+      long total = 0L;
+      
+      while (total < length || length == -1L) {
+        bb.clear().limit(remaining(buffer.length, total, length));
+        int len = in.read(bb);
+        if (len == -1) {
+          if (length != -1L) {
+            throw new EOFException();
+          }
+          break;
+        }
+        
+        bb.flip();
+        while (bb.hasRemaining()) {
+          out.write(bb);
+        }
+        
+        total += len;
+      }
+      
+      return total;
+    } finally {
+      BufferPool.DEFAULT.release(buffer);
+    }
+  }
+  
+  /**
+   * Transfers data from the {@link FileChannel}'s current position and
+   * advances its position by the number of transferred bytes. Whatever
+   * is left once the {@link FileChannel}'s size has been reached or if 
+   * the OS stops making progress is being copied through a buffer.
+   */
+  private static long transferTo(FileChannel src, WritableByteChannel dst, 
+      long length) throws IOException {
+    
+    checkBlocking(dst);
+    
+    long position = src.position();
+    long size = src.size();
+    long total = 0L;
+    
+    try {
+      while ((total < length || length == -1L) 
+          && position + total < size) {
+        
+        long count = (length != -1L ? length - total 
+            : size - position - total);
+        
+        long len = src.transferTo(position + total, count, dst);
+        if (len <= 0L) {
+          break;
+        }
+        
+        total += len;
+      }
+    } finally {
+      src.position(position + total);
+    }
+    
+    if (total < length || length == -1L) {
+      total += copyBuffered(src, dst, 
+          length != -1L ? length - total : -1L);
+    }
+    
+    return total;
+  }
+  
+  /**
+   * Transfers data to the {@link FileChannel}'s current position and
+   * advances its position by the number of transferred bytes.
+   */
+  private static long transferFrom(ReadableByteChannel src, FileChannel dst, 
+      long length) throws IOException {
+    
+    long position = dst.position();
+    long total = 0L;
+    
+    try {
+      while (total < length || length == -1L) {
+        long count = (length != -1L ? Math.min(length - total, 
+            Integer.MAX_VALUE) : Integer.MAX_VALUE);
+        
+        long len = dst.transferFrom(src, position + total, count);
+        
+        // A blocking channel transfers nothing only at the end of stream
+        if (len <= 0L) {
+          if (length != -1L) {
+            throw new EOFException();
+          }
+          break;
+        }
+        
+        total += len;
+      }
+    } finally {
+      dst.position(position + total);
+    }
+    
+    return total;
+  }
+  
+  /**
+   * Returns the {@link FileChannel} of the given {@link InputStream}
+   * or {@code null} if it has none.
+   */
+  private static FileChannel getChannel(InputStream in) {
+    if (in instanceof FileInputStream) {
+      return ((FileInputStream)in).getChannel();
+    }
+    return null;
+  }
+  
+  /**
+   * Returns the {@link FileChannel} of the given {@link OutputStream}
+   * or {@code null} if it has none (a {@link java.net.Socket}'s 
+   * {@link OutputStream} extends {@link FileOutputStream} but has 
+   * no {@link FileChannel}).
+   */
+  private static FileChannel getChannel(OutputStream out) {
+    if (out instanceof FileOutputStream) {
+      return ((FileOutputStream)out).getChannel();
+    }
+    return null;
+  }
+  
+  /**
+   * Returns {@code true} if the {@link FileChannel} has data beyond its
+   * position according to its size. Files in procfs or sysfs, FIFOs and
+   * character devices report a size of 0 and must be read instead.
+   */
+  private static boolean isTransferable(FileChannel channel) 
+      throws IOException {
+    long size = channel.size();
+    return 0L < size && channel.position() < size;
+  }
+  
+  private static void checkBlocking(Object channel) {
+    if (channel instanceof SelectableChannel 
+        && !((SelectableChannel)channel).isBlocking()) {
+      throw new IllegalBlockingModeException();
+    }
+  }
+  
+  private static int remaining(int bufferSize, long total, long length) {
+    if (length != -1L) {
+      return (int)Math.min(length-total, bufferSize);
+    }
+    return bufferSize;
+  }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * Factory methods for {@link Channel}s that limit their bandwidth with
+ * a {@link TokenBucket}. The returned {@link Channel}s wait for the
+ * {@link TokenBucket} and are therefore meant for blocking I/O.
+ */
+public class ThrottledChannels {
+  
+  private ThrottledChannels() {}
+  
+  /**
+   * Returns a {@link ReadableByteChannel} that limits the bandwidth
+   * of the given {@link ReadableByteChannel}.
+   */
+  public static ReadableByteChannel newReadableChannel(
+      final ReadableByteChannel channel, final TokenBucket bucket) {
+    
+    Precoditions.notNull(channel, "channel");
+    Precoditions.notNull(bucket, "bucket");
+    
+    return new ReadableByteChannel() {
+      @Override
+      public int read(ByteBuffer dst) throws IOException {
+        int remaining = dst.remaining();
+        if (remaining == 0) {
+          return 0;
+        }
+        
+        int limit = dst.limit();
+        dst.limit(dst.position() + TokenBucket.chunk(bucket, remaining));
+        
+        int r;
+        try {
+          r = channel.read(dst);
+        } finally {
+          dst.limit(limit);
+        }
+        
+        if (0 < r) {
+          TokenBucket.throttle(bucket, r);
+        }
+        return r;
+      }
+      
+      @Override
+      public boolean isOpen() {
+        return channel.isOpen();
+      }
+      
+      @Override
+      public void close() throws IOException {
+        channel.close();
+      }
+    };
+  }
+  
+  /**
+   * Returns a {@link WritableByteChannel} that limits the bandwidth
+   * of the given {@link WritableByteChannel}.
+   */
+  public static WritableByteChannel newWritableChannel(
+      final WritableByteChannel channel, final TokenBucket bucket) {
+    
+    Precoditions.notNull(channel, "channel");
+    Precoditions.notNull(bucket, "bucket");
+    
+    return new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) throws IOException {
+        int total = 0;
+        while (src.hasRemaining()) {
+          int count = TokenBucket.chunk(bucket, src.remaining());
+          TokenBucket.throttle(bucket, count);
+          
+          int limit = src.limit();
+          src.limit(src.position() + count);
+          
+          int w;
+          try {
+            w = channel.write(src);
+          } finally {
+            src.limit(limit);
+          }
+          
+          total += w;
+          if (w < count) {
+            break;
+          }
+        }
+        return total;
+      }
+      
+      @Override
+      public boolean isOpen() {
+        return channel.isOpen();
+      }
+      
+      @Override
+      public void close() throws IOException {
+        channel.close();
+      }
+    };
+  }
+}
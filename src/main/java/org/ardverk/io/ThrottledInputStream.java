@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * An {@link InputStream} that limits its bandwidth with a
+ * {@link TokenBucket}. Reads are capped at the smallest burst size
+ * of the {@link TokenBucket} hierarchy.
+ */
+public class ThrottledInputStream extends FilterInputStream {
+  
+  private final TokenBucket bucket;
+  
+  public ThrottledInputStream(InputStream in, TokenBucket bucket) {
+    super(in);
+    this.bucket = Precoditions.notNull(bucket, "bucket");
+  }
+  
+  /**
+   * Returns the {@link TokenBucket}.
+   */
+  public TokenBucket getTokenBucket() {
+    return bucket;
+  }
+  
+  @Override
+  public int read() throws IOException {
+    int value = super.read();
+    if (value != -1) {
+      TokenBucket.throttle(bucket, 1);
+    }
+    return value;
+  }
+  
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    
+    int r = super.read(b, off, TokenBucket.chunk(bucket, len));
+    if (0 < r) {
+      TokenBucket.throttle(bucket, r);
+    }
+    return r;
+  }
+  
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = super.skip(Math.min(n,
+        TokenBucket.chunk(bucket, Integer.MAX_VALUE)));
+    if (0L < skipped) {
+      TokenBucket.throttle(bucket, (int)skipped);
+    }
+    return skipped;
+  }
+}
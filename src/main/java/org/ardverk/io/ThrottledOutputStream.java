@@ -0,0 +1,63 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * An {@link OutputStream} that limits its bandwidth with a
+ * {@link TokenBucket}. Writes are being split into chunks of the
+ * smallest burst size of the {@link TokenBucket} hierarchy.
+ */
+public class ThrottledOutputStream extends FilterOutputStream {
+  
+  private final TokenBucket bucket;
+  
+  public ThrottledOutputStream(OutputStream out, TokenBucket bucket) {
+    super(out);
+    this.bucket = Precoditions.notNull(bucket, "bucket");
+  }
+  
+  /**
+   * Returns the {@link TokenBucket}.
+   */
+  public TokenBucket getTokenBucket() {
+    return bucket;
+  }
+  
+  @Override
+  public void write(int b) throws IOException {
+    TokenBucket.throttle(bucket, 1);
+    out.write(b);
+  }
+  
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (0 < len) {
+      int count = TokenBucket.chunk(bucket, len);
+      TokenBucket.throttle(bucket, count);
+      out.write(b, off, count);
+      
+      off += count;
+      len -= count;
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A token bucket that limits the bandwidth in bytes per second.
+ *
+ * <p>{@link TokenBucket}s form a hierarchy (e.g. global, per-peer and
+ * per-stream) and bytes are being drawn from a bucket and all of its
+ * parents. The state of a bucket is the time at which it will be empty
+ * and it's being updated with a single CAS. Callers are being served in
+ * the order of their reservations and the rate and burst may be changed
+ * at any time.
+ *
+ * @see ThrottledInputStream
+ * @see ThrottledOutputStream
+ * @see ThrottledChannels
+ */
+public class TokenBucket {
+  
+  /**
+   * A {@link Clock} that is based on {@link System#nanoTime()}.
+   */
+  public static final Clock SYSTEM = new Clock() {
+    @Override
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+    
+    @Override
+    public void sleep(long nanos) throws InterruptedException {
+      long deadline = System.nanoTime() + nanos;
+      while (0L < nanos) {
+        LockSupport.parkNanos(this, nanos);
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        nanos = deadline - System.nanoTime();
+      }
+    }
+  };
+  
+  private final TokenBucket parent;
+  
+  private final Clock clock;
+  
+  /**
+   * The time at which the bucket is empty. The bucket is full if
+   * it's {@link #burst} bytes worth of time in the past.
+   */
+  private final AtomicLong empty;
+  
+  private volatile long rate;
+  
+  private volatile long burst;
+  
+  /**
+   * Creates a root {@link TokenBucket}.
+   *
+   * @param rate The number of bytes per second
+   * @param burst The maximum number of bytes that may be drawn at once
+   */
+  public TokenBucket(long rate, long burst) {
+    this(null, rate, burst, SYSTEM);
+  }
+  
+  /**
+   * Creates a {@link TokenBucket} that draws from the given parent
+   * and uses its {@link Clock}.
+   */
+  public TokenBucket(TokenBucket parent, long rate, long burst) {
+    this(parent, rate, burst, Precoditions.notNull(parent, "parent").clock);
+  }
+  
+  /**
+   * Creates a {@link TokenBucket}.
+   *
+   * @param parent The parent {@link TokenBucket} (may be {@code null})
+   * @param rate The number of bytes per second
+   * @param burst The maximum number of bytes that may be drawn at once
+   * @param clock The {@link Clock}
+   */
+  public TokenBucket(TokenBucket parent, long rate, long burst, Clock clock) {
+    this.parent = parent;
+    this.clock = Precoditions.notNull(clock, "clock");
+    
+    setRate(rate);
+    setBurst(burst);
+    
+    // Start with a full bucket
+    this.empty = new AtomicLong(clock.nanoTime() - burstNanos());
+  }
+  
+  /**
+   * Returns the parent {@link TokenBucket} or {@code null}.
+   */
+  public TokenBucket getParent() {
+    return parent;
+  }
+  
+  /**
+   * Returns the {@link Clock}.
+   */
+  public Clock getClock() {
+    return clock;
+  }
+  
+  /**
+   * Returns the number of bytes per second.
+   */
+  public long getRate() {
+    return rate;
+  }
+  
+  /**
+   * Sets the number of bytes per second.
+   */
+  public void setRate(long rate) {
+    Precoditions.argument(0L < rate, "rate=%s", rate);
+    this.rate = rate;
+  }
+  
+  /**
+   * Returns the maximum number of bytes that may be drawn at once.
+   */
+  public long getBurst() {
+    return burst;
+  }
+  
+  /**
+   * Sets the maximum number of bytes that may be drawn at once.
+   */
+  public void setBurst(long burst) {
+    Precoditions.argument(0L < burst, "burst=%s", burst);
+    this.burst = burst;
+  }
+  
+  /**
+   * Returns the number of bytes that may be drawn without waiting.
+   */
+  public long getAvailable() {
+    long nanos = clock.nanoTime() - empty.get();
+    return Math.max(0L, Math.min(burst, toBytes(nanos)));
+  }
+  
+  /**
+   * Draws the given number of bytes from this bucket and its parents
+   * and returns how many nanoseconds the caller has to wait before
+   * it may transfer them.
+   */
+  public long reserve(int count) {
+    Precoditions.argument(0 <= count, "count=%s", count);
+    
+    long wait = 0L;
+    for (TokenBucket bucket = this; bucket != null; bucket = bucket.parent) {
+      wait = Math.max(wait, bucket.reserve0(count));
+    }
+    return wait;
+  }
+  
+  private long reserve0(int count) {
+    long cost = toNanos(count);
+    while (true) {
+      long now = clock.nanoTime();
+      long empty = this.empty.get();
+      
+      long next = Math.max(empty, now - burstNanos()) + cost;
+      if (this.empty.compareAndSet(empty, next)) {
+        return Math.max(0L, next - now);
+      }
+    }
+  }
+  
+  /**
+   * Draws the given number of bytes and waits until they
+   * may be transferred.
+   */
+  public void acquire(int count) throws InterruptedException {
+    long wait = reserve(count);
+    if (0L < wait) {
+      clock.sleep(wait);
+    }
+  }
+  
+  private long burstNanos() {
+    return toNanos(burst);
+  }
+  
+  private long toNanos(long bytes) {
+    double nanos = bytes * 1000000000d / rate;
+    return (long)Math.min(nanos, Long.MAX_VALUE / 4L);
+  }
+  
+  private long toBytes(long nanos) {
+    return (long)(nanos / 1000000000d * rate);
+  }
+  
+  @Override
+  public String toString() {
+    return "rate=" + rate + "B/s, burst=" + burst;
+  }
+  
+  /**
+   * The source of time of a {@link TokenBucket}.
+   */
+  public static interface Clock {
+    
+    /**
+     * Returns the current time in nanoseconds.
+     *
+     * @see System#nanoTime()
+     */
+    public long nanoTime();
+    
+    /**
+     * Waits for the given number of nanoseconds.
+     */
+    public void sleep(long nanos) throws InterruptedException;
+  }
+  
+  /**
+   * Acquires the given number of bytes for the throttled
+   * streams and channels.
+   */
+  static void throttle(TokenBucket bucket, int count)
+      throws InterruptedIOException {
+    try {
+      bucket.acquire(count);
+    } catch (InterruptedException err) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+  
+  /**
+   * Returns the number of bytes the throttled streams and channels
+   * transfer at once.
+   */
+  static int chunk(TokenBucket bucket, int length) {
+    long max = bucket.getBurst();
+    for (TokenBucket p = bucket.parent; p != null; p = p.parent) {
+      max = Math.min(max, p.getBurst());
+    }
+    return (int)Math.max(1L, Math.min(length, max));
+  }
+}
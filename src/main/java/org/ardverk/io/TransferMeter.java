@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.ardverk.lang.Precoditions;
+
+/**
+ * Measures a transfer: the total number of bytes, an exponentially
+ * weighted moving average of the throughput, a histogram of the call
+ * sizes and the time that was spent blocked in calls.
+ *
+ * <p>A {@link TransferMeter} is being updated by a single {@link Thread}
+ * but it may be read by any {@link Thread}.
+ *
+ * @see ProgressInputStream
+ * @see ProgressOutputStream
+ */
+public class TransferMeter {
+  
+  /**
+   * The default time constant of the moving average.
+   */
+  public static final long DEFAULT_TIME_CONSTANT
+    = TimeUnit.SECONDS.toNanos(1L);
+  
+  /**
+   * The histogram has a bucket for each power of two.
+   */
+  private static final int BUCKETS = Integer.SIZE;
+  
+  /**
+   * The minimum time between two updates of the moving average.
+   */
+  private static final long MIN_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10L);
+  
+  private final long timeConstant;
+  
+  private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+  
+  private final long started = System.nanoTime();
+  
+  private volatile long total = 0L;
+  
+  private volatile long calls = 0L;
+  
+  private volatile long blocked = 0L;
+  
+  private volatile double rate = 0d;
+  
+  private volatile long lastUpdate = started;
+  
+  /**
+   * The number of bytes since the last update of the moving average.
+   */
+  private long window = 0L;
+  
+  /**
+   * Creates a {@link TransferMeter} with the default time constant.
+   */
+  public TransferMeter() {
+    this(DEFAULT_TIME_CONSTANT, TimeUnit.NANOSECONDS);
+  }
+  
+  /**
+   * Creates a {@link TransferMeter}. The older samples' weight in the
+   * moving average decays by a factor of e every time constant.
+   */
+  public TransferMeter(long timeConstant, TimeUnit unit) {
+    Precoditions.argument(0L < timeConstant,
+        "timeConstant=%s", timeConstant);
+    this.timeConstant = unit.toNanos(timeConstant);
+  }
+  
+  /**
+   * Records a call that transferred the given number of bytes.
+   *
+   * @param count The number of bytes
+   * @param start The value of {@link System#nanoTime()} before the call
+   * @param end The value of {@link System#nanoTime()} after the call
+   */
+  public void record(int count, long start, long end) {
+    calls++;
+    blocked += end - start;
+    
+    int bucket = BUCKETS - Integer.numberOfLeadingZeros(Math.max(0, count));
+    histogram.lazySet(bucket, histogram.get(bucket) + 1L);
+    
+    if (0 < count) {
+      total += count;
+      window += count;
+    }
+    
+    long elapsed = end - lastUpdate;
+    if (MIN_INTERVAL <= elapsed) {
+      double current = window * 1000000000d / elapsed;
+      double alpha = 1d - Math.exp(-(double)elapsed / timeConstant);
+      rate += alpha * (current - rate);
+      
+      window = 0L;
+      lastUpdate = end;
+    }
+  }
+  
+  /**
+   * Returns the total number of bytes.
+   */
+  public long getTotal() {
+    return total;
+  }
+  
+  /**
+   * Returns the number of calls.
+   */
+  public long getCalls() {
+    return calls;
+  }
+  
+  /**
+   * Returns the average number of bytes per call.
+   */
+  public double getAverageCallSize() {
+    long calls = this.calls;
+    return calls != 0L ? (double)total / calls : 0d;
+  }
+  
+  /**
+   * Returns the time that was spent blocked in calls.
+   */
+  public long getBlockedTime(TimeUnit unit) {
+    return unit.convert(blocked, TimeUnit.NANOSECONDS);
+  }
+  
+  /**
+   * Returns the time since the {@link TransferMeter} was created.
+   */
+  public long getElapsedTime(TimeUnit unit) {
+    return unit.convert(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+  }
+  
+  /**
+   * Returns the moving average of the throughput in bytes per second.
+   * It decays while nothing is being transferred.
+   */
+  public double getRate() {
+    double rate = this.rate;
+    long idle = System.nanoTime() - lastUpdate;
+    if (MIN_INTERVAL < idle) {
+      rate *= Math.exp(-(double)idle / timeConstant);
+    }
+    return rate;
+  }
+  
+  /**
+   * Returns the histogram of the call sizes. Bucket 0 counts calls that
+   * transferred nothing and bucket {@code i} counts calls that
+   * transferred between {@code 2^(i-1)} and {@code 2^i - 1} bytes.
+   */
+  public long[] getHistogram() {
+    long[] buckets = new long[BUCKETS];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = histogram.get(i);
+    }
+    return buckets;
+  }
+  
+  @Override
+  public String toString() {
+    return "total=" + total + ", calls=" + calls
+        + ", rate=" + (long)getRate() + "B/s"
+        + ", blocked=" + getBlockedTime(TimeUnit.MILLISECONDS) + "ms";
+  }
+}
@@ -16,52 +16,53 @@
 
 package org.ardverk.io;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
-import java.util.zip.InflaterOutputStream;
-
-import org.ardverk.lang.MathUtils;
 
 /**
- * An implementation of {@link Compressor} that uses Java's 
- * {@link InflaterInputStream} and {@link DeflaterOutputStream}.
+ * An implementation of {@link Compressor} that produces and consumes
+ * the ZLIB format with Java's {@link Deflater} and {@link Inflater}.
  */
-public class ZlibCompressor extends AbstractCompressor {
+public class ZlibCompressor extends AbstractDeflateCompressor {
 
   public static final ZlibCompressor ZLIB = new ZlibCompressor();
   
   private ZlibCompressor() {
-    super("ZLIB");
+    super("ZLIB", false);
   }
   
   @Override
-  public byte[] compress(byte[] value, int offset, int length)
-      throws IOException {
-    
-    ByteArrayOutputStream baos = new ByteArrayOutputStream(MathUtils.nextPowOfTwo(length));
-    try (OutputStream out = new DeflaterOutputStream(baos)) {
-      out.write(value, offset, length);
-    } finally {
-      IoUtils.closeAll(baos);
-    }
-    
-    return baos.toByteArray();
+  public OutputStream createOutputStream(OutputStream out) throws IOException {
+    final Deflater deflater = new Deflater();
+    return new DeflaterOutputStream(out, deflater, StreamUtils.BUFFER_SIZE) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          deflater.end();
+        }
+      }
+    };
   }
-
+  
   @Override
-  public byte[] decompress(byte[] value, int offset, int length)
-      throws IOException {
-    
-    ByteArrayOutputStream baos = new ByteArrayOutputStream(MathUtils.nextPowOfTwo(2 * length));
-    try (OutputStream out = new InflaterOutputStream(baos)) {
-      out.write(value, offset, length);
-    } finally {
-      IoUtils.closeAll(baos);
-    }
-    
-    return baos.toByteArray();
+  public InputStream createInputStream(InputStream in) throws IOException {
+    final Inflater inflater = new Inflater();
+    return new InflaterInputStream(in, inflater, StreamUtils.BUFFER_SIZE) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          inflater.end();
+        }
+      }
+    };
   }
 }
\ No newline at end of file
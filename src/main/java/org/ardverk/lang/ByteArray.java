@@ -19,9 +19,11 @@ package org.ardverk.lang;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.ardverk.coding.CodingUtils;
+import org.ardverk.io.BufferStreamable;
 import org.ardverk.io.Streamable;
 import org.ardverk.utils.ByteArrayComparator;
 
@@ -33,7 +35,7 @@ public class ByteArray<T extends ByteArray<T>>
   protected final byte[] value;
   
   private int hashCode = 0;
-
+  
   public ByteArray(byte[] value) {
     this.value = value;
   }
@@ -68,16 +70,37 @@ public class ByteArray<T extends ByteArray<T>>
     return dst;
   }
   
+  /**
+   * Returns the number of bytes {@link #writeTo(OutputStream)} writes.
+   * 
+   * <p>{@link ByteArray} is not a {@link BufferStreamable} because 
+   * subclasses may override {@link #writeTo(OutputStream)}. A subclass 
+   * that doesn't can declare {@link BufferStreamable} and inherits this
+   * and {@link #writeTo(ByteBuffer)}.
+   */
+  public int serializedSize() {
+    return value.length;
+  }
+  
   @Override
   public void writeTo(OutputStream out) throws IOException {
     out.write(value);
   }
   
+  /**
+   * Writes the underlying {@code byte[]} to the given {@link ByteBuffer}.
+   * 
+   * @see #serializedSize()
+   */
+  public void writeTo(ByteBuffer dst) {
+    dst.put(value);
+  }
+  
   @Override
   public int compareTo(T o) {
     return ByteArrayComparator.COMPARATOR.compare(value, o.value);
   }
-
+  
   @Override
   public int hashCode() {
     if (hashCode == 0) {
@@ -0,0 +1,444 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.ardverk.collection.FixedSizeHashMap;
+import org.ardverk.concurrent.DefaultThreadFactory;
+import org.ardverk.lang.ExceptionUtils;
+import org.ardverk.lang.Precoditions;
+
+/**
+ * The {@link AddressResolver} resolves {@link SocketAddress}es on an
+ * {@link Executor} instead of the calling {@link Thread}.
+ *
+ * <p>Results are kept in a bounded cache for a limited amount of time.
+ * Failed lookups are cached as well (usually for a shorter amount of time)
+ * and concurrent lookups of the same host name share a single lookup.
+ */
+public class AddressResolver {
+
+  /**
+   * The maximum number of lookups the default {@link Executor} runs
+   * in parallel. Further lookups are being queued.
+   */
+  public static final int MAX_THREADS = 4;
+
+  private static final Executor EXECUTOR = newExecutor(MAX_THREADS);
+
+  /**
+   * The default number of host names that are being cached.
+   */
+  public static final int MAX_SIZE = 1024;
+
+  /**
+   * The default amount of time a successful lookup is being cached.
+   */
+  public static final long TTL = 5L * 60L * 1000L;
+
+  /**
+   * The default amount of time a failed lookup is being cached.
+   */
+  public static final long NEGATIVE_TTL = 10L * 1000L;
+
+  private final Resolver resolver;
+
+  private final Executor executor;
+
+  private final long ttlInNanos;
+
+  private final long negativeTtlInNanos;
+
+  private final FixedSizeHashMap<String, Lookup> cache;
+
+  /**
+   * Creates an {@link AddressResolver} with default settings.
+   */
+  public AddressResolver() {
+    this(Resolver.DEFAULT);
+  }
+
+  /**
+   * Creates an {@link AddressResolver} with default settings.
+   */
+  public AddressResolver(Resolver resolver) {
+    this(resolver, EXECUTOR);
+  }
+
+  /**
+   * Creates an {@link AddressResolver} that runs the lookups on the
+   * given {@link Executor}.
+   */
+  public AddressResolver(Resolver resolver, Executor executor) {
+    this(resolver, executor, MAX_SIZE,
+        TTL, NEGATIVE_TTL, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates an {@link AddressResolver}.
+   *
+   * @param resolver The {@link Resolver} that does the actual lookups
+   * @param executor The {@link Executor} that runs the lookups
+   * @param maxSize The maximum number of host names in the cache
+   * @param ttl The amount of time a successful lookup is being cached
+   * @param negativeTtl The amount of time a failed lookup is being cached
+   */
+  public AddressResolver(Resolver resolver, Executor executor,
+      int maxSize, long ttl, long negativeTtl, TimeUnit unit) {
+
+    Precoditions.argument(0 < maxSize, "maxSize=%s", maxSize);
+    Precoditions.argument(0L <= ttl, "ttl=%s", ttl);
+    Precoditions.argument(0L <= negativeTtl, "negativeTtl=%s", negativeTtl);
+
+    this.resolver = Precoditions.notNull(resolver, "resolver");
+    this.executor = Precoditions.notNull(executor, "executor");
+    this.ttlInNanos = unit.toNanos(ttl);
+    this.negativeTtlInNanos = unit.toNanos(negativeTtl);
+    this.cache = new FixedSizeHashMap<String, Lookup>(
+        16, 0.75f, true, maxSize);
+  }
+
+  /**
+   * Resolves the given host name and port.
+   */
+  public Future<InetSocketAddress> resolve(String host, int port) {
+    return resolve(host, port, null);
+  }
+
+  /**
+   * Resolves the given host name and port. The {@link ResolveListener}
+   * is being notified once the lookup completed.
+   */
+  public Future<InetSocketAddress> resolve(String host, int port,
+      ResolveListener listener) {
+    return resolve(NetworkUtils.createUnresolved(host, port), listener);
+  }
+
+  /**
+   * Resolves (if necessary) the given {@link SocketAddress}.
+   */
+  public Future<InetSocketAddress> resolve(SocketAddress address) {
+    return resolve(address, null);
+  }
+
+  /**
+   * Resolves (if necessary) the given {@link SocketAddress}. The
+   * {@link ResolveListener} is being notified once the lookup completed.
+   *
+   * @throws IllegalArgumentException If the address is not an
+   * {@link InetSocketAddress}
+   */
+  public Future<InetSocketAddress> resolve(SocketAddress address,
+      ResolveListener listener) {
+
+    if (!(address instanceof InetSocketAddress)) {
+      throw new IllegalArgumentException("Unsupported address: " + address);
+    }
+
+    InetSocketAddress isa = (InetSocketAddress)address;
+
+    ResolveFuture future = null;
+    if (!isa.isUnresolved()) {
+      future = new ResolveFuture(isa);
+    } else {
+      future = new ResolveFuture(lookup(isa.getHostName()), isa.getPort());
+    }
+
+    if (listener != null) {
+      future.addResolveListener(listener);
+    }
+
+    return future;
+  }
+
+  /**
+   * Resolves (if necessary) all {@link SocketAddress}es. The returned
+   * {@link List} has the same order as the given {@link Iterable}.
+   */
+  public List<Future<InetSocketAddress>> resolveAll(
+      Iterable<? extends SocketAddress> addresses) {
+
+    List<Future<InetSocketAddress>> futures
+      = new ArrayList<Future<InetSocketAddress>>();
+
+    for (SocketAddress address : addresses) {
+      futures.add(resolve(address));
+    }
+
+    return futures;
+  }
+
+  /**
+   * Removes the given host name from the cache.
+   */
+  public void evict(String host) {
+    synchronized (cache) {
+      cache.remove(host);
+    }
+  }
+
+  /**
+   * Clears the cache.
+   */
+  public void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  /**
+   * Returns the number of cached host names.
+   */
+  public int size() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  /**
+   * Creates an {@link Executor} with up to the given number of daemon
+   * {@link Thread}s that time out when they're idle.
+   */
+  private static Executor newExecutor(int threads) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        threads, threads, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new DefaultThreadFactory("AddressResolverThread", true));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Returns a cached or pending {@link Lookup} for the given host name
+   * or starts a new {@link Lookup}.
+   */
+  private Lookup lookup(String host) {
+    long now = System.nanoTime();
+
+    Lookup lookup = null;
+    synchronized (cache) {
+      lookup = cache.get(host);
+      if (lookup != null && !lookup.isExpired(now)) {
+        return lookup;
+      }
+
+      lookup = new Lookup(host);
+      cache.put(host, lookup);
+    }
+
+    try {
+      executor.execute(lookup);
+    } catch (RuntimeException err) {
+      lookup.setException(err);
+    }
+
+    return lookup;
+  }
+
+  /**
+   * A {@link ResolveListener} is notified once a lookup completed.
+   */
+  public static interface ResolveListener {
+
+    /**
+     * Called with the resolved {@link InetSocketAddress}.
+     */
+    public void resolved(InetSocketAddress address);
+
+    /**
+     * Called if the host name couldn't be resolved.
+     */
+    public void failed(InetSocketAddress address, Throwable t);
+  }
+
+  /**
+   * A pending or completed lookup of a host name.
+   */
+  private class Lookup extends FutureTask<InetAddress> {
+
+    private final String host;
+
+    private final List<Runnable> listeners = new ArrayList<Runnable>();
+
+    private volatile long expires = 0L;
+
+    private volatile boolean completed = false;
+
+    private boolean done = false;
+
+    public Lookup(final String host) {
+      super(new Callable<InetAddress>() {
+        @Override
+        public InetAddress call() throws Exception {
+          return resolver.resolve(host);
+        }
+      });
+      this.host = host;
+    }
+
+    @Override
+    public void setException(Throwable t) {
+      super.setException(t);
+    }
+
+    public boolean isExpired(long now) {
+      return completed && expires - now < 0L;
+    }
+
+    /**
+     * Adds a listener that runs once the lookup completed.
+     */
+    public void addListener(Runnable listener) {
+      synchronized (listeners) {
+        if (!done) {
+          listeners.add(listener);
+          return;
+        }
+      }
+
+      listener.run();
+    }
+
+    @Override
+    protected void done() {
+      long ttl = negativeTtlInNanos;
+      try {
+        get();
+        ttl = ttlInNanos;
+      } catch (Exception ignore) {
+      }
+
+      expires = System.nanoTime() + ttl;
+      completed = true;
+
+      Runnable[] copy = null;
+      synchronized (listeners) {
+        done = true;
+        copy = listeners.toArray(new Runnable[0]);
+        listeners.clear();
+      }
+
+      for (Runnable listener : copy) {
+        try {
+          listener.run();
+        } catch (Throwable t) {
+          ExceptionUtils.exceptionCaught(t);
+        }
+      }
+    }
+  }
+
+  /**
+   * A {@link Future} that combines a {@link Lookup} with a port number.
+   * The {@link Lookup} is being shared with other {@link ResolveFuture}s
+   * and can't be cancelled.
+   */
+  private static class ResolveFuture implements Future<InetSocketAddress> {
+
+    private final Lookup lookup;
+
+    private final int port;
+
+    private final InetSocketAddress address;
+
+    public ResolveFuture(InetSocketAddress address) {
+      this.lookup = null;
+      this.port = address.getPort();
+      this.address = address;
+    }
+
+    public ResolveFuture(Lookup lookup, int port) {
+      this.lookup = lookup;
+      this.port = port;
+      this.address = null;
+    }
+
+    public void addResolveListener(final ResolveListener listener) {
+      if (lookup == null) {
+        listener.resolved(address);
+        return;
+      }
+
+      lookup.addListener(new Runnable() {
+        @Override
+        public void run() {
+          InetSocketAddress value = null;
+          try {
+            value = get();
+          } catch (ExecutionException err) {
+            listener.failed(NetworkUtils.createUnresolved(
+                lookup.host, port), err.getCause());
+            return;
+          } catch (Exception err) {
+            listener.failed(NetworkUtils.createUnresolved(
+                lookup.host, port), err);
+            return;
+          }
+
+          listener.resolved(value);
+        }
+      });
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public boolean isDone() {
+      return lookup == null || lookup.isDone();
+    }
+
+    @Override
+    public InetSocketAddress get() throws InterruptedException,
+        ExecutionException {
+      if (lookup == null) {
+        return address;
+      }
+      return new InetSocketAddress(lookup.get(), port);
+    }
+
+    @Override
+    public InetSocketAddress get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      if (lookup == null) {
+        return address;
+      }
+      return new InetSocketAddress(lookup.get(timeout, unit), port);
+    }
+  }
+}
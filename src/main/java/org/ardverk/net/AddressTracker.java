@@ -18,34 +18,61 @@ package org.ardverk.net;
 
 import java.net.InetAddress;
 import java.net.SocketAddress;
-import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import org.ardverk.collection.FixedSizeHashSet;
+import org.ardverk.concurrent.StripedCounter;
+import org.ardverk.lang.MathUtils;
 
 /**
- * The {@link AddressTracker} helps us to determinate our external/public 
+ * The {@link AddressTracker} helps us to determinate our external/public
  * {@link InetAddress} in a distributed but possibly NAT'ed environment.
+ *
+ * <p>Each reported {@link InetAddress} is a candidate that collects votes
+ * from distinct networks (as defined by the {@link NetworkMask}). The
+ * first candidate that reaches the quorum becomes the current address.
+ * Up to {@link #CANDIDATES} candidates are tracked at the same time and
+ * votes are being recorded with CAS operations.
+ *
+ * <p>Each switch (and each explicit {@code set}) starts a new round. A
+ * candidate can only become the current address in the round it was 
+ * created in which means late votes from a previous round are ignored.
+ *
+ * <p>An {@link AddressTracker} is also an {@link AddressTrackerMXBean}.
  */
-public class AddressTracker {
-
+public class AddressTracker implements AddressTrackerMXBean {
+  
+  /**
+   * The default maximum number of candidates.
+   */
+  public static final int CANDIDATES = 4;
+  
   /**
    * The {@link NetworkMask} makes sure that consecutive {@code set}
    * calls from the same clients are being ignored.
    */
   private final NetworkMask mask;
   
-  // We use a ByteBuffer because it implements equals() and hashCode()
-  private final FixedSizeHashSet<ByteBuffer> history;
-  
   /**
-   * The current {@link InetAddress}
+   * The number of votes from distinct networks that are needed
+   * to switch to a candidate.
    */
-  private InetAddress current = null;
+  private final int quorum;
+  
+  private final AtomicReferenceArray<Candidate> candidates;
   
   /**
-   * The temporary {@link InetAddress}
+   * The current {@link InetAddress} and round
    */
-  private InetAddress temporary = null;
+  private final AtomicReference<State> state;
+  
+  private final StripedCounter accepted = new StripedCounter();
+  
+  private final StripedCounter rejected = new StripedCounter();
+  
+  private final StripedCounter switches = new StripedCounter();
   
   /**
    * Creates an {@link AddressTracker}
@@ -58,6 +85,19 @@ public class AddressTracker {
    * Creates an {@link AddressTracker}
    */
   public AddressTracker(InetAddress address, NetworkMask mask, int count) {
+    this (address, mask, count, CANDIDATES);
+  }
+  
+  /**
+   * Creates an {@link AddressTracker}
+   *
+   * @param address The initial {@link InetAddress} (may be {@code null})
+   * @param mask The {@link NetworkMask}
+   * @param count The number of votes that are needed to switch
+   * @param candidates The maximum number of candidates
+   */
+  public AddressTracker(InetAddress address, NetworkMask mask,
+      int count, int candidates) {
     if (mask == null) {
       throw new NullPointerException("mask");
     }
@@ -66,57 +106,90 @@ public class AddressTracker {
       throw new IllegalArgumentException("count=" + count);
     }
     
-    this.current = address;
+    if (candidates <= 0) {
+      throw new IllegalArgumentException("candidates=" + candidates);
+    }
+    
+    this.state = new AtomicReference<State>(new State(address, 0L));
     this.mask = mask;
-    this.history = new FixedSizeHashSet<ByteBuffer>(count);
+    this.quorum = Math.max(1, count);
+    this.candidates = new AtomicReferenceArray<Candidate>(candidates);
+  }
+  
+  /**
+   * Returns the number of votes that are needed to switch
+   * to a candidate.
+   */
+  @Override
+  public int getQuorum() {
+    return quorum;
   }
   
   /**
    * Sets the current {@link InetAddress}.
    */
-  public synchronized void set(SocketAddress address) {
+  public void set(SocketAddress address) {
     set(NetworkUtils.getAddress(address));
   }
   
   /**
    * Sets the current {@link InetAddress}.
    */
-  public synchronized void set(InetAddress address) {
-    this.current = address;
-    
-    temporary = null;
-    history.clear();
+  public void set(InetAddress address) {
+    while (true) {
+      State state = this.state.get();
+      State update = new State(address, state.round + 1L);
+      if (this.state.compareAndSet(state, update)) {
+        reset(update.round);
+        return;
+      }
+    }
   }
   
   /**
    * Sets the current {@link InetAddress}.
    */
-  public synchronized boolean set(SocketAddress src, SocketAddress address) {
-    return set(NetworkUtils.getAddress(src), 
+  public boolean set(SocketAddress src, SocketAddress address) {
+    return set(NetworkUtils.getAddress(src),
         NetworkUtils.getAddress(address));
   }
   
   /**
    * Sets the current {@link InetAddress}.
    */
-  public synchronized boolean set(InetAddress src, SocketAddress address) {
+  public boolean set(InetAddress src, SocketAddress address) {
     return set(src, NetworkUtils.getAddress(address));
   }
   
   /**
    * Sets the current {@link InetAddress}.
    */
-  public synchronized boolean set(SocketAddress src, InetAddress address) {
+  public boolean set(SocketAddress src, InetAddress address) {
     return set(NetworkUtils.getAddress(src), address);
   }
   
   /**
    * Sets the current {@link InetAddress}.
-   * 
+   *
    * @param src The source of the {@code address}
    * @param address Our {@link InetAddress}
    */
-  public synchronized boolean set(InetAddress src, InetAddress address) {
+  public boolean set(InetAddress src, InetAddress address) {
+    if (src == null) {
+      throw new NullPointerException("src");
+    }
+    
+    return set(src.getAddress(), address);
+  }
+  
+  /**
+   * Sets the current {@link InetAddress}. The source address is neither
+   * being modified nor copied.
+   *
+   * @param src The (unmasked) source address of the {@code address}
+   * @param address Our {@link InetAddress}
+   */
+  public boolean set(byte[] src, InetAddress address) {
     if (src == null) {
       throw new NullPointerException("src");
     }
@@ -126,45 +199,228 @@ public class AddressTracker {
     }
     
     // Do nothing if both addresses are equal
-    if (current != null && current.equals(address)) {
+    State state = this.state.get();
+    if (state.address != null && state.address.equals(address)) {
       return true;
     }
     
-    // Initialize the temporary address with the given value if it's null
-    if (temporary == null) {
-      temporary = address;
-      
-    // Reset the temporary address if it doesn't match with the given 
-    // address and continue working with the one we already have
-    } else if (!temporary.equals(address)) {
-      temporary = null;
-      history.clear();
+    // Make sure we're not accepting proposals more than once from the
+    // same Network during the discovery process
+    Candidate candidate = candidate(address, state.round);
+    int votes = candidate.vote(mask.key(src));
+    if (votes == -1) {
+      rejected.increment();
       return false;
     }
     
-    ByteBuffer network = ByteBuffer.wrap(mask.mask(src));
+    accepted.increment();
     
-    // Make sure we're not accepting proposals more than once from the 
-    // same Network during the discovery process
-    if (!history.contains(network)) {
-      history.add(network);
-      if (history.isFull()) {
-        current = temporary;
-        temporary = null;
-        history.clear();
+    // The switch fails if a new round has started in the meantime
+    if (votes == quorum) {
+      State update = new State(address, candidate.round + 1L);
+      if (this.state.compareAndSet(state, update)) {
+        reset(update.round);
+        switches.increment();
       }
-      
-      return true;
-    } 
+    }
     
-    return false;
+    return true;
   }
   
   /**
-   * Returns the current {@link InetAddress} or {@code null} if it's 
+   * Returns the current {@link InetAddress} or {@code null} if it's
    * not known yet.
    */
-  public synchronized InetAddress get() {
-    return current;
+  public InetAddress get() {
+    return state.get().address;
+  }
+  
+  /**
+   * Returns the number of votes for the given {@link InetAddress}.
+   */
+  public int getVotes(InetAddress address) {
+    long round = state.get().round;
+    for (int i = 0; i < candidates.length(); i++) {
+      Candidate candidate = candidates.get(i);
+      if (isLive(candidate, round) && candidate.address.equals(address)) {
+        return candidate.votes.get();
+      }
+    }
+    return 0;
+  }
+  
+  @Override
+  public String getCurrentAddress() {
+    InetAddress current = get();
+    return current != null ? current.getHostAddress() : null;
+  }
+  
+  @Override
+  public int getCandidateCount() {
+    long round = state.get().round;
+    int count = 0;
+    for (int i = 0; i < candidates.length(); i++) {
+      if (isLive(candidates.get(i), round)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+  
+  @Override
+  public int getLeadingVotes() {
+    long round = state.get().round;
+    int max = 0;
+    for (int i = 0; i < candidates.length(); i++) {
+      Candidate candidate = candidates.get(i);
+      if (isLive(candidate, round)) {
+        max = Math.max(max, candidate.votes.get());
+      }
+    }
+    return max;
+  }
+  
+  @Override
+  public long getAcceptedVotes() {
+    return accepted.sum();
+  }
+  
+  @Override
+  public long getRejectedVotes() {
+    return rejected.sum();
+  }
+  
+  @Override
+  public long getSwitches() {
+    return switches.sum();
+  }
+  
+  /**
+   * Returns the {@link Candidate} for the given {@link InetAddress} and
+   * round. {@link Candidate}s of other rounds are being treated like free 
+   * slots and the {@link Candidate} with the least number of votes is 
+   * being replaced if there is no free slot.
+   */
+  private Candidate candidate(InetAddress address, long round) {
+    while (true) {
+      int free = -1;
+      Candidate stale = null;
+      int weakest = -1;
+      Candidate victim = null;
+      
+      for (int i = 0; i < candidates.length(); i++) {
+        Candidate candidate = candidates.get(i);
+        if (candidate == null || candidate.round != round) {
+          if (free == -1) {
+            free = i;
+            stale = candidate;
+          }
+        } else if (candidate.address.equals(address)) {
+          return candidate;
+        } else if (victim == null
+            || candidate.votes.get() < victim.votes.get()) {
+          weakest = i;
+          victim = candidate;
+        }
+      }
+      
+      Candidate candidate = new Candidate(address, quorum, round);
+      if (free != -1) {
+        if (candidates.compareAndSet(free, stale, candidate)) {
+          return candidate;
+        }
+      } else if (candidates.compareAndSet(weakest, victim, candidate)) {
+        return candidate;
+      }
+    }
+  }
+  
+  /**
+   * Returns {@code true} if the given {@link Candidate} belongs 
+   * to the given round.
+   */
+  private static boolean isLive(Candidate candidate, long round) {
+    return candidate != null && candidate.round == round;
+  }
+  
+  /**
+   * Removes all {@link Candidate}s that are older than the given round.
+   */
+  private void reset(long round) {
+    for (int i = 0; i < candidates.length(); i++) {
+      Candidate candidate = candidates.get(i);
+      if (candidate != null && candidate.round < round) {
+        candidates.compareAndSet(i, candidate, null);
+      }
+    }
+  }
+  
+  /**
+   * The current {@link InetAddress} and the round it belongs to.
+   */
+  private static class State {
+    
+    private final InetAddress address;
+    
+    private final long round;
+    
+    public State(InetAddress address, long round) {
+      this.address = address;
+      this.round = round;
+    }
+  }
+  
+  /**
+   * A candidate {@link InetAddress} and the networks that voted for it.
+   */
+  private static class Candidate {
+    
+    private final InetAddress address;
+    
+    private final long round;
+    
+    private final AtomicInteger votes = new AtomicInteger();
+    
+    /**
+     * An open addressing hash set of network keys (zero means empty).
+     */
+    private final AtomicLongArray networks;
+    
+    public Candidate(InetAddress address, int quorum, long round) {
+      this.address = address;
+      this.round = round;
+      this.networks = new AtomicLongArray(
+          MathUtils.nextPowOfTwo(2 * quorum));
+    }
+    
+    /**
+     * Records a vote from the given network and returns the number of
+     * votes or -1 if the network has voted already.
+     */
+    public int vote(long network) {
+      int length = networks.length();
+      int bitmask = length - 1;
+      int index = (int)(network ^ (network >>> 32)) & bitmask;
+      
+      for (int i = 0; i < length; i++) {
+        long value = networks.get(index);
+        if (value == network) {
+          return -1;
+        }
+        
+        if (value == 0L) {
+          if (networks.compareAndSet(index, 0L, network)) {
+            return votes.incrementAndGet();
+          }
+          
+          // Someone else took the slot, look at it again
+          continue;
+        }
+        
+        index = (index + 1) & bitmask;
+      }
+      
+      return -1;
+    }
   }
-}
\ No newline at end of file
+}
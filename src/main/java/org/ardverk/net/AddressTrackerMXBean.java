@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+/**
+ * The management interface of an {@link AddressTracker}.
+ *
+ * @see org.ardverk.utils.ManagementUtils
+ */
+public interface AddressTrackerMXBean {
+  
+  /**
+   * Returns the current address or {@code null} if it's not known yet.
+   */
+  public String getCurrentAddress();
+  
+  /**
+   * Returns the number of votes that are needed to switch
+   * to a candidate.
+   */
+  public int getQuorum();
+  
+  /**
+   * Returns the number of candidates.
+   */
+  public int getCandidateCount();
+  
+  /**
+   * Returns the number of votes of the leading candidate.
+   */
+  public int getLeadingVotes();
+  
+  /**
+   * Returns the number of accepted votes.
+   */
+  public long getAcceptedVotes();
+  
+  /**
+   * Returns the number of votes that were rejected because
+   * the network has voted already.
+   */
+  public long getRejectedVotes();
+  
+  /**
+   * Returns the number of times a candidate reached the quorum.
+   */
+  public long getSwitches();
+}
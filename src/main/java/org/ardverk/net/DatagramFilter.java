@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link DatagramFilter} decides whether or not a received datagram
+ * should be passed to the {@link DatagramHandler}.
+ *
+ * @see DatagramReactor#addFilter(DatagramFilter)
+ */
+public interface DatagramFilter {
+  
+  /**
+   * Returns {@code true} if the given datagram should be accepted. The
+   * datagram is between the {@link ByteBuffer}'s position and limit and
+   * the {@link ByteBuffer} belongs to the {@link DatagramReactor}.
+   * Implementations must not keep a reference to it.
+   */
+  public boolean accept(SocketAddress src, ByteBuffer packet);
+}
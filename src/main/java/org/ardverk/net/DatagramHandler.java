@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link DatagramHandler} processes the datagrams that were received
+ * by a {@link DatagramReactor} and passed all of its {@link DatagramFilter}s.
+ */
+public interface DatagramHandler {
+  
+  /**
+   * Called for every accepted datagram. The datagram is between the
+   * {@link ByteBuffer}'s position and limit. The {@link ByteBuffer} is
+   * being reused once this method returns and implementations must copy
+   * the data if they need it afterwards.
+   */
+  public void handle(DatagramReactor reactor, SocketAddress src,
+      ByteBuffer packet) throws IOException;
+}
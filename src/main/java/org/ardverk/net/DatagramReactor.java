@@ -0,0 +1,392 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ardverk.concurrent.DefaultThreadFactory;
+import org.ardverk.io.BufferPool;
+import org.ardverk.io.IoUtils;
+import org.ardverk.lang.ExceptionUtils;
+import org.ardverk.lang.Precoditions;
+
+/**
+ * The {@link DatagramReactor} receives datagrams from a non-blocking
+ * {@link DatagramChannel} and passes them to a {@link DatagramHandler}.
+ *
+ * <p>A single receive {@link Thread} receives up to a batch of datagrams
+ * per wakeup into a direct {@link ByteBuffer} from the {@link BufferPool} 
+ * and runs the {@link DatagramFilter}s on each of them. Accepted datagrams 
+ * are passed to the {@link DatagramHandler} on the receive {@link Thread} 
+ * or, if an {@link Executor} was given, copied into a pooled buffer and
+ * passed to the {@link DatagramHandler} on the {@link Executor}. 
+ * 
+ * <p>The reactor itself allocates nothing but the sender's 
+ * {@link SocketAddress} per datagram (and the copy's wrapper if there 
+ * is an {@link Executor}) but {@link DatagramFilter}s may (e.g. 
+ * {@link NetworkAdmissionFilter} copies the sender's address and 
+ * {@link SecurityTokenFilter} computes a digest).
+ *
+ * <p>A datagram is rejected if a {@link DatagramFilter} throws an 
+ * exception.
+ *
+ * <p>NOTE: There is only one receive {@link Thread} because receiving 
+ * from a {@link DatagramChannel} is serialized by the channel and 
+ * {@code SO_REUSEPORT} is not available on all supported platforms. 
+ * More receive {@link Thread}s would add wakeups but no parallelism.
+ */
+public class DatagramReactor implements Closeable {
+  
+  /**
+   * The default number of datagrams that are received per wakeup.
+   */
+  public static final int BATCH_SIZE = 32;
+  
+  /**
+   * The default size of the receive buffer (the maximum UDP payload).
+   */
+  public static final int BUFFER_SIZE = 64 * 1024;
+  
+  private static final DatagramFilter[] NO_FILTERS = new DatagramFilter[0];
+  
+  private static final ThreadFactory THREAD_FACTORY
+    = new DefaultThreadFactory("DatagramReactorThread", true);
+  
+  private final DatagramHandler handler;
+  
+  private final Executor executor;
+  
+  private final int batchSize;
+  
+  private final int bufferSize;
+  
+  private final AtomicLong received = new AtomicLong();
+  
+  private final AtomicLong rejected = new AtomicLong();
+  
+  private volatile DatagramFilter[] filters = NO_FILTERS;
+  
+  private volatile DatagramChannel channel = null;
+  
+  private volatile Selector selector = null;
+  
+  private volatile boolean open = true;
+  
+  /**
+   * Creates a {@link DatagramReactor} that calls the 
+   * {@link DatagramHandler} on its receive {@link Thread}.
+   */
+  public DatagramReactor(DatagramHandler handler) {
+    this(handler, null, BATCH_SIZE, BUFFER_SIZE);
+  }
+  
+  /**
+   * Creates a {@link DatagramReactor}.
+   *
+   * @param handler The {@link DatagramHandler}
+   * @param executor The {@link Executor} that calls the 
+   * {@link DatagramHandler} or {@code null} to call it on the 
+   * receive {@link Thread}
+   * @param batchSize The maximum number of datagrams per wakeup
+   * @param bufferSize The size of the receive buffer
+   */
+  public DatagramReactor(DatagramHandler handler,
+      Executor executor, int batchSize, int bufferSize) {
+    
+    Precoditions.argument(0 < batchSize, "batchSize=%s", batchSize);
+    Precoditions.argument(0 < bufferSize, "bufferSize=%s", bufferSize);
+    
+    this.handler = Precoditions.notNull(handler, "handler");
+    this.executor = executor;
+    this.batchSize = batchSize;
+    this.bufferSize = bufferSize;
+  }
+  
+  /**
+   * Adds a {@link DatagramFilter}. The {@link DatagramFilter}s are being
+   * called in the order they were added.
+   */
+  public synchronized void addFilter(DatagramFilter filter) {
+    Precoditions.notNull(filter, "filter");
+    
+    DatagramFilter[] copy = Arrays.copyOf(filters, filters.length + 1);
+    copy[copy.length - 1] = filter;
+    filters = copy;
+  }
+  
+  /**
+   * Removes a {@link DatagramFilter}.
+   */
+  public synchronized boolean removeFilter(DatagramFilter filter) {
+    DatagramFilter[] filters = this.filters;
+    for (int i = 0; i < filters.length; i++) {
+      if (filters[i].equals(filter)) {
+        DatagramFilter[] copy = new DatagramFilter[filters.length - 1];
+        System.arraycopy(filters, 0, copy, 0, i);
+        System.arraycopy(filters, i + 1, copy, i, copy.length - i);
+        this.filters = copy;
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Binds the {@link DatagramReactor} to the given {@link SocketAddress}
+   * and starts the receive {@link Thread}.
+   */
+  public synchronized void bind(SocketAddress bindaddr) throws IOException {
+    if (!open) {
+      throw new ClosedChannelException();
+    }
+    
+    if (channel != null) {
+      throw new IOException("Already bound: " + getLocalAddress());
+    }
+    
+    DatagramChannel channel = DatagramChannel.open();
+    Selector selector = null;
+    
+    boolean success = false;
+    try {
+      channel.configureBlocking(false);
+      channel.bind(bindaddr);
+      
+      selector = Selector.open();
+      channel.register(selector, SelectionKey.OP_READ);
+      
+      success = true;
+    } finally {
+      if (!success) {
+        IoUtils.close(selector);
+        IoUtils.close(channel);
+      }
+    }
+    
+    this.channel = channel;
+    this.selector = selector;
+    
+    THREAD_FACTORY.newThread(new Receiver(channel, selector)).start();
+  }
+  
+  /**
+   * Returns the local {@link SocketAddress} or {@code null}
+   * if the {@link DatagramReactor} is not bound.
+   */
+  public SocketAddress getLocalAddress() throws IOException {
+    DatagramChannel channel = this.channel;
+    return channel != null ? channel.getLocalAddress() : null;
+  }
+  
+  /**
+   * Sends the given {@link ByteBuffer} to the given {@link SocketAddress}
+   * and returns the number of bytes that were sent (zero if there was
+   * no room in the socket's send buffer).
+   */
+  public int send(ByteBuffer src, SocketAddress dst) throws IOException {
+    DatagramChannel channel = this.channel;
+    if (channel == null) {
+      throw new IOException("Not bound");
+    }
+    return channel.send(src, dst);
+  }
+  
+  /**
+   * Returns the number of received datagrams.
+   */
+  public long getReceived() {
+    return received.get();
+  }
+  
+  /**
+   * Returns the number of datagrams that were rejected
+   * by a {@link DatagramFilter}.
+   */
+  public long getRejected() {
+    return rejected.get();
+  }
+  
+  public boolean isOpen() {
+    return open;
+  }
+  
+  @Override
+  public synchronized void close() {
+    if (open) {
+      open = false;
+      
+      IoUtils.close(channel);
+      
+      Selector selector = this.selector;
+      if (selector != null) {
+        selector.wakeup();
+      }
+    }
+  }
+  
+  /**
+   * Runs all {@link DatagramFilter}s and returns {@code true} if the
+   * datagram was accepted by all of them.
+   */
+  private boolean accept(SocketAddress src, ByteBuffer packet) {
+    DatagramFilter[] filters = this.filters;
+    
+    int position = packet.position();
+    int limit = packet.limit();
+    
+    for (DatagramFilter filter : filters) {
+      boolean accept = false;
+      try {
+        accept = filter.accept(src, packet);
+      } catch (RuntimeException err) {
+        // e.g. a BufferUnderflowException from a malformed datagram
+      } finally {
+        packet.limit(limit).position(position);
+      }
+      
+      if (!accept) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  private void handle(SocketAddress src, ByteBuffer packet) {
+    try {
+      handler.handle(this, src, packet);
+    } catch (Throwable t) {
+      ExceptionUtils.exceptionCaught(t);
+    }
+  }
+  
+  /**
+   * The {@link Receiver} receives datagrams and dispatches them.
+   */
+  private class Receiver implements Runnable {
+    
+    private final DatagramChannel channel;
+    
+    private final Selector selector;
+    
+    public Receiver(DatagramChannel channel, Selector selector) {
+      this.channel = channel;
+      this.selector = selector;
+    }
+    
+    @Override
+    public void run() {
+      ByteBuffer buffer = BufferPool.DEFAULT.acquireDirect(bufferSize);
+      try {
+        while (open) {
+          selector.select();
+          selector.selectedKeys().clear();
+          
+          for (int i = 0; i < batchSize; i++) {
+            buffer.clear().limit(bufferSize);
+            
+            SocketAddress src = channel.receive(buffer);
+            if (src == null) {
+              break;
+            }
+            
+            received.incrementAndGet();
+            
+            buffer.flip();
+            dispatch(src, buffer);
+          }
+        }
+      } catch (ClosedChannelException | ClosedSelectorException ignore) {
+      } catch (IOException err) {
+        if (open) {
+          ExceptionUtils.exceptionCaught(err);
+        }
+      } finally {
+        IoUtils.close(selector);
+        BufferPool.DEFAULT.releaseDirect(buffer);
+      }
+    }
+    
+    private void dispatch(SocketAddress src, ByteBuffer packet) {
+      if (!accept(src, packet)) {
+        rejected.incrementAndGet();
+        return;
+      }
+      
+      if (executor == null) {
+        handle(src, packet);
+        return;
+      }
+      
+      int length = packet.remaining();
+      byte[] copy = BufferPool.DEFAULT.acquire(length);
+      packet.get(copy, 0, length);
+      
+      boolean success = false;
+      try {
+        executor.execute(new Task(src, copy, length));
+        success = true;
+      } catch (RuntimeException err) {
+        // e.g. a RejectedExecutionException from a shut down Executor
+        ExceptionUtils.exceptionCaught(err);
+      } finally {
+        if (!success) {
+          BufferPool.DEFAULT.release(copy);
+        }
+      }
+    }
+  }
+  
+  /**
+   * A {@link Task} passes a copy of a datagram to the 
+   * {@link DatagramHandler} and releases the copy afterwards.
+   */
+  private class Task implements Runnable {
+    
+    private final SocketAddress src;
+    
+    private final byte[] packet;
+    
+    private final int length;
+    
+    public Task(SocketAddress src, byte[] packet, int length) {
+      this.src = src;
+      this.packet = packet;
+      this.length = length;
+    }
+    
+    @Override
+    public void run() {
+      try {
+        handle(src, ByteBuffer.wrap(packet, 0, length));
+      } finally {
+        BufferPool.DEFAULT.release(packet);
+      }
+    }
+  }
+}
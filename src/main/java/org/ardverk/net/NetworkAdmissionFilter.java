@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ardverk.lang.MathUtils;
+import org.ardverk.lang.Precoditions;
+
+/**
+ * A {@link DatagramFilter} that limits the number of datagrams per
+ * network (as defined by a {@link NetworkMask}) and time window.
+ *
+ * <p>The counters live in a fixed size table that is indexed by the hash
+ * of the network. Networks may share a counter in which case they share
+ * the limit as well, the filter errs on the side of rejecting datagrams.
+ */
+public class NetworkAdmissionFilter implements DatagramFilter {
+  
+  /**
+   * The default number of counters.
+   */
+  public static final int SIZE = 4096;
+  
+  private final NetworkMask mask;
+  
+  private final int maxCount;
+  
+  private final long windowInNanos;
+  
+  private final AtomicIntegerArray counts;
+  
+  private final AtomicLong window;
+  
+  /**
+   * Creates a {@link NetworkAdmissionFilter} with {@link #SIZE} counters.
+   */
+  public NetworkAdmissionFilter(NetworkMask mask, int maxCount,
+      long window, TimeUnit unit) {
+    this(mask, maxCount, window, unit, SIZE);
+  }
+  
+  /**
+   * Creates a {@link NetworkAdmissionFilter}.
+   *
+   * @param mask The {@link NetworkMask}
+   * @param maxCount The maximum number of datagrams per network and window
+   * @param window The length of a time window
+   * @param size The number of counters (rounded to a power of two)
+   */
+  public NetworkAdmissionFilter(NetworkMask mask, int maxCount,
+      long window, TimeUnit unit, int size) {
+    
+    Precoditions.argument(0 < maxCount, "maxCount=%s", maxCount);
+    Precoditions.argument(0L < window, "window=%s", window);
+    Precoditions.argument(0 < size, "size=%s", size);
+    
+    this.mask = Precoditions.notNull(mask, "mask");
+    this.maxCount = maxCount;
+    this.windowInNanos = unit.toNanos(window);
+    this.counts = new AtomicIntegerArray(MathUtils.nextPowOfTwo(size));
+    this.window = new AtomicLong(System.nanoTime());
+  }
+  
+  @Override
+  public boolean accept(SocketAddress src, ByteBuffer packet) {
+    long now = System.nanoTime();
+    long start = window.get();
+    if (now - start >= windowInNanos && window.compareAndSet(start, now)) {
+      for (int i = 0; i < counts.length(); i++) {
+        counts.set(i, 0);
+      }
+    }
+    
+    long key = mask.key(NetworkUtils.getAddress(src).getAddress());
+    int index = (int)(key ^ (key >>> 32)) * 0x9E3779B9;
+    index = (index ^ (index >>> 16)) & (counts.length() - 1);
+    
+    return counts.incrementAndGet(index) <= maxCount;
+  }
+}
@@ -16,9 +16,18 @@
 
 package org.ardverk.net;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
@@ -29,16 +38,37 @@ import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ardverk.coding.CodingUtils;
+import org.ardverk.io.DataUtils;
+import org.ardverk.io.FileUtils;
+import org.ardverk.io.IoUtils;
+import org.ardverk.io.Streamable;
 import org.ardverk.lang.Precoditions;
 import org.ardverk.utils.ByteArrayComparator;
 
 /**
  * A special purpose counter that counts {@link InetAddress}es 
  * by their network class.
+ * 
+ * <p>A {@link NetworkCounter} can be written to a compact binary snapshot
+ * (see {@link #store(File)}) and restored from it (see {@link #load(File)}).
+ * The snapshot consists of the {@link NetworkMask} followed by the sorted 
+ * masked keys and their counts as variable length integers.
+ * 
+ * <p>A {@link NetworkCounter} is also a {@link NetworkCounterMXBean}. 
+ * The add and remove operations are being counted under the 
+ * {@link NetworkCounter}'s lock (the counts are not part of the 
+ * serialized form), everything else is computed on demand 
+ * (see {@link #getStatistics()}).
  */
-public class NetworkCounter implements Serializable {
+public class NetworkCounter implements Serializable, Streamable, 
+    NetworkCounterMXBean {
   
   private static final long serialVersionUID = -7103271018736085248L;
+  
+  /**
+   * The magic number of a snapshot ("NCS" and version 1).
+   */
+  private static final int MAGIC = 0x4E435301;
 
   private final NetworkMask mask;
   
@@ -46,6 +76,11 @@ public class NetworkCounter implements Serializable {
     = new TreeMap<byte[], AtomicInteger>(
       ByteArrayComparator.COMPARATOR);
   
+  // Not part of the serialized form, guarded by this
+  private transient long added = 0L;
+  
+  private transient long removed = 0L;
+  
   /**
    * Creates a {@link NetworkCounter} with the given {@link NetworkMask}.
    */
@@ -89,6 +124,8 @@ public class NetworkCounter implements Serializable {
    * in the same Network
    */
   private synchronized int addKey(byte[] key) {
+    ++added;
+    
     AtomicInteger value = map.get(key);
     if (value == null) {
       value = new AtomicInteger();
@@ -129,6 +166,8 @@ public class NetworkCounter implements Serializable {
   private synchronized int removeKey(byte[] key) {
     AtomicInteger value = map.get(key);
     if (value != null) {
+      ++removed;
+      
       int current = value.decrementAndGet();
       if (current == 0) {
         map.remove(key);
@@ -222,6 +261,68 @@ public class NetworkCounter implements Serializable {
     return map.isEmpty();
   }
   
+  @Override
+  public int getNetworkCount() {
+    return size();
+  }
+  
+  @Override
+  public synchronized long getAddressCount() {
+    long count = 0L;
+    for (AtomicInteger value : map.values()) {
+      count += value.intValue();
+    }
+    return count;
+  }
+  
+  @Override
+  public synchronized int getMaxCount() {
+    int max = 0;
+    for (AtomicInteger value : map.values()) {
+      max = Math.max(max, value.intValue());
+    }
+    return max;
+  }
+  
+  @Override
+  public synchronized long getAdded() {
+    return added;
+  }
+  
+  @Override
+  public synchronized long getRemoved() {
+    return removed;
+  }
+  
+  @Override
+  public int getPercentile(double percentile) {
+    return getStatistics().getPercentile(percentile);
+  }
+  
+  /**
+   * Returns a {@link Statistics} snapshot of this {@link NetworkCounter}.
+   */
+  public Statistics getStatistics() {
+    int[] counts = null;
+    long added = 0L;
+    long removed = 0L;
+    
+    synchronized (this) {
+      added = this.added;
+      removed = this.removed;
+      
+      counts = new int[map.size()];
+      
+      int index = 0;
+      for (AtomicInteger value : map.values()) {
+        counts[index++] = value.intValue();
+      }
+    }
+    
+    Arrays.sort(counts);
+    return new Statistics(counts, added, removed);
+  }
+  
   /**
    * Clears the {@link NetworkCounter}
    */
@@ -229,6 +330,149 @@ public class NetworkCounter implements Serializable {
     map.clear();
   }
   
+  /**
+   * Writes a snapshot of this {@link NetworkCounter} to the 
+   * given {@link OutputStream}.
+   */
+  @Override
+  public synchronized void writeTo(OutputStream out) throws IOException {
+    DataUtils.int2beb(MAGIC, out);
+    
+    byte[] mask = this.mask.getBytes();
+    DataUtils.int2vbeb(mask.length, out);
+    out.write(mask);
+    
+    DataUtils.int2vbeb(map.size(), out);
+    for (Map.Entry<byte[], AtomicInteger> entry : map.entrySet()) {
+      byte[] key = entry.getKey();
+      DataUtils.int2vbeb(key.length, out);
+      out.write(key);
+      DataUtils.int2vbeb(entry.getValue().intValue(), out);
+    }
+  }
+  
+  /**
+   * Reads a snapshot from the given {@link ByteBuffer} and adds its counts
+   * to this {@link NetworkCounter}. Returns the number of networks that 
+   * were read.
+   * 
+   * @see #writeTo(OutputStream)
+   */
+  public int readFrom(ByteBuffer in) throws IOException {
+    byte[][] keys = null;
+    int[] counts = null;
+    
+    try {
+      int magic = in.getInt();
+      if (magic != MAGIC) {
+        throw new IOException("magic=" + magic);
+      }
+      
+      byte[] mask = new byte[length(in, this.mask.length())];
+      in.get(mask);
+      
+      if (!Arrays.equals(mask, this.mask.getBytes())) {
+        throw new IOException("mask=" + new NetworkMask(mask) 
+            + ", expected=" + this.mask);
+      }
+      
+      // Each entry takes at least two bytes (the key's length and the 
+      // count) which bounds the size by the remaining number of bytes.
+      int size = length(in, in.remaining() / 2);
+      keys = new byte[size][];
+      counts = new int[size];
+      
+      for (int i = 0; i < size; i++) {
+        byte[] key = new byte[length(in, in.remaining())];
+        in.get(key);
+        
+        keys[i] = key;
+        counts[i] = length(in, Integer.MAX_VALUE);
+      }
+    } catch (BufferUnderflowException err) {
+      throw new IOException("BufferUnderflowException", err);
+    }
+    
+    synchronized (this) {
+      for (int i = 0; i < keys.length; i++) {
+        int count = counts[i];
+        if (count != 0) {
+          AtomicInteger value = map.get(keys[i]);
+          if (value == null) {
+            map.put(keys[i], new AtomicInteger(count));
+          } else {
+            value.addAndGet(count);
+          }
+        }
+      }
+    }
+    
+    return keys.length;
+  }
+  
+  /**
+   * Writes a snapshot of this {@link NetworkCounter} to the given 
+   * {@link File}. The snapshot is written to a temporary file first 
+   * which replaces the given {@link File} once it's complete.
+   */
+  public void store(File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+    
+    boolean success = false;
+    try {
+      try (FileOutputStream fos = new FileOutputStream(tmp)) {
+        OutputStream out = new BufferedOutputStream(fos);
+        writeTo(out);
+        out.flush();
+        fos.getFD().sync();
+      }
+      
+      FileUtils.replace(tmp, file);
+      success = true;
+    } finally {
+      if (!success) {
+        tmp.delete();
+      }
+    }
+  }
+  
+  /**
+   * Reads a snapshot from the given {@link File} and adds its counts
+   * to this {@link NetworkCounter}. Returns the number of networks that
+   * were read.
+   * 
+   * @see #store(File)
+   */
+  public int load(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 
+          0L, channel.size());
+      try {
+        return readFrom(buffer);
+      } finally {
+        // readFrom() copies everything it keeps
+        FileUtils.unmap(buffer);
+      }
+    } finally {
+      IoUtils.close(raf);
+    }
+  }
+  
+  /**
+   * Reads a non-negative variable length {@code int} that 
+   * is not greater than the given maximum.
+   */
+  private static int length(ByteBuffer in, int max) throws IOException {
+    int value = DataUtils.vbeb2int(in);
+    if (value < 0 || value > max) {
+      throw new IOException("value=" + value + ", max=" + max);
+    }
+    return value;
+  }
+  
   @Override
   public synchronized String toString() {
     StringBuilder buffer = new StringBuilder("[");
@@ -244,4 +488,89 @@ public class NetworkCounter implements Serializable {
     
     return buffer.append("]").toString();
   }
-}
\ No newline at end of file
+  
+  /**
+   * An immutable snapshot of a {@link NetworkCounter}'s state.
+   */
+  public static class Statistics {
+    
+    /**
+     * The number of addresses per network in ascending order.
+     */
+    private final int[] counts;
+    
+    private final long added;
+    
+    private final long removed;
+    
+    private Statistics(int[] counts, long added, long removed) {
+      this.counts = counts;
+      this.added = added;
+      this.removed = removed;
+    }
+    
+    /**
+     * Returns the number of distinct networks.
+     */
+    public int getNetworkCount() {
+      return counts.length;
+    }
+    
+    /**
+     * Returns the number of addresses in all networks.
+     */
+    public long getAddressCount() {
+      long count = 0L;
+      for (int value : counts) {
+        count += value;
+      }
+      return count;
+    }
+    
+    /**
+     * Returns the number of addresses in the largest network.
+     */
+    public int getMaxCount() {
+      return counts.length != 0 ? counts[counts.length-1] : 0;
+    }
+    
+    /**
+     * Returns the number of add operations.
+     */
+    public long getAdded() {
+      return added;
+    }
+    
+    /**
+     * Returns the number of remove operations.
+     */
+    public long getRemoved() {
+      return removed;
+    }
+    
+    /**
+     * Returns the given percentile (0-100) of the number of addresses 
+     * per network (nearest-rank method).
+     */
+    public int getPercentile(double percentile) {
+      Precoditions.argument(0.0 <= percentile && percentile <= 100.0, 
+          "percentile=%s", percentile);
+      
+      if (counts.length == 0) {
+        return 0;
+      }
+      
+      int rank = (int)Math.ceil(percentile / 100.0 * counts.length);
+      return counts[Math.max(0, rank - 1)];
+    }
+    
+    @Override
+    public String toString() {
+      return "networks=" + getNetworkCount() 
+          + ", addresses=" + getAddressCount()
+          + ", max=" + getMaxCount()
+          + ", added=" + added
+          + ", removed=" + removed;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+/**
+ * The management interface of a {@link NetworkCounter}.
+ *
+ * @see org.ardverk.utils.ManagementUtils
+ */
+public interface NetworkCounterMXBean {
+  
+  /**
+   * Returns the number of distinct networks.
+   */
+  public int getNetworkCount();
+  
+  /**
+   * Returns the number of addresses in all networks.
+   */
+  public long getAddressCount();
+  
+  /**
+   * Returns the number of addresses in the largest network.
+   */
+  public int getMaxCount();
+  
+  /**
+   * Returns the number of add operations.
+   */
+  public long getAdded();
+  
+  /**
+   * Returns the number of remove operations.
+   */
+  public long getRemoved();
+  
+  /**
+   * Returns the given percentile (0-100) of the number of
+   * addresses per network.
+   */
+  public int getPercentile(double percentile);
+}
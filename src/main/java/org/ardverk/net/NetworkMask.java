@@ -23,9 +23,10 @@ import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import org.ardverk.io.Streamable;
+import org.ardverk.io.BufferStreamable;
 import org.ardverk.lang.Bytes;
 import org.ardverk.utils.ByteArrayComparator;
 
@@ -33,7 +34,7 @@ import org.ardverk.utils.ByteArrayComparator;
  * A Network Mask
  */
 public class NetworkMask implements Comparable<NetworkMask>, 
-    Serializable, Streamable, Cloneable {
+    Serializable, BufferStreamable, Cloneable {
   
   private static final long serialVersionUID = 7628001660790804026L;
   
@@ -88,10 +89,20 @@ public class NetworkMask implements Comparable<NetworkMask>,
     return mask.length;
   }
   
+  @Override
+  public int serializedSize() {
+    return mask.length;
+  }
+  
   @Override
   public void writeTo(OutputStream out) throws IOException {
     out.write(mask);
   }
+  
+  @Override
+  public void writeTo(ByteBuffer dst) {
+    dst.put(mask);
+  }
 
   /**
    * Returns the given {@link SocketAddress} as a mashed byte-array
@@ -135,6 +146,40 @@ public class NetworkMask implements Comparable<NetworkMask>,
     return address;
   }
   
+  /**
+   * Returns the network of the given address as a non-zero {@code long}
+   * without modifying or copying the address. The key is exact for 
+   * addresses of up to 7 bytes (i.e. IPv4) and a hash otherwise.
+   */
+  long key(byte[] address) {
+    int length = address.length;
+    int offset = length - mask.length;
+    
+    long hi = 0L;
+    long lo = 0L;
+    
+    for (int i = 0; i < length; i++) {
+      int value = address[i] & 0xFF;
+      if (offset <= i) {
+        value &= mask[i - offset];
+      }
+      
+      if (i < length - 7) {
+        hi = 31L * hi + value;
+      } else {
+        lo = (lo << 8) | value;
+      }
+    }
+    
+    if (length <= 7) {
+      return ((long)length << 56) | lo;
+    }
+    
+    long h = hi * 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    return ((h ^ lo) | Long.MIN_VALUE) ^ length;
+  }
+  
   /**
    * Returns true if the two given {@link SocketAddress}es 
    * are in the same network.
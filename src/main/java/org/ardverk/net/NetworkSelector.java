@@ -0,0 +1,210 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.ardverk.lang.MathUtils;
+import org.ardverk.lang.Precoditions;
+
+/**
+ * The {@link NetworkSelector} selects up to {@code k} elements from a
+ * {@link Collection} of candidates that are spread across as many
+ * distinct networks (as defined by a {@link NetworkMask}) as possible.
+ *
+ * <p>The candidates are expected to be in the caller's order of preference.
+ * The first candidate of each network is preferred over the second
+ * candidate of any network and so on. Ties are broken by the caller's
+ * order and the selected candidates are returned in the caller's order.
+ *
+ * <p>The selection runs in O(n) time.
+ */
+public class NetworkSelector {
+
+  /**
+   * An {@link AddressProvider} for {@link SocketAddress}es.
+   */
+  private static final AddressProvider<SocketAddress> SOCKET_ADDRESS
+      = new AddressProvider<SocketAddress>() {
+    @Override
+    public InetAddress getAddress(SocketAddress value) {
+      return NetworkUtils.getAddress(value);
+    }
+  };
+
+  /**
+   * An {@link AddressProvider} for {@link InetAddress}es.
+   */
+  private static final AddressProvider<InetAddress> INET_ADDRESS
+      = new AddressProvider<InetAddress>() {
+    @Override
+    public InetAddress getAddress(InetAddress value) {
+      return value;
+    }
+  };
+
+  private NetworkSelector() {}
+
+  /**
+   * Selects up to {@code k} {@link SocketAddress}es.
+   */
+  public static <T extends SocketAddress> List<T> selectSocketAddresses(
+      Collection<? extends T> candidates, NetworkMask mask, int k) {
+    return select(candidates, SOCKET_ADDRESS, mask, k);
+  }
+
+  /**
+   * Selects up to {@code k} {@link InetAddress}es.
+   */
+  public static <T extends InetAddress> List<T> selectInetAddresses(
+      Collection<? extends T> candidates, NetworkMask mask, int k) {
+    return select(candidates, INET_ADDRESS, mask, k);
+  }
+
+  /**
+   * Selects up to {@code k} elements from the given candidates.
+   *
+   * @param candidates The candidates in order of preference
+   * @param provider The {@link AddressProvider} for the candidates
+   * @param mask The {@link NetworkMask} that defines a network
+   * @param k The maximum number of elements to select
+   * @throws IllegalArgumentException If the {@link AddressProvider}
+   * returns {@code null} for a candidate
+   */
+  public static <T> List<T> select(Collection<? extends T> candidates,
+      AddressProvider<? super T> provider, NetworkMask mask, int k) {
+
+    Precoditions.notNull(candidates, "candidates");
+    Precoditions.notNull(provider, "provider");
+    Precoditions.notNull(mask, "mask");
+    Precoditions.argument(0 <= k, "k=%s", k);
+
+    int size = candidates.size();
+    if (size <= k) {
+      return new ArrayList<T>(candidates);
+    }
+
+    @SuppressWarnings("unchecked")
+    T[] elements = (T[])candidates.toArray();
+
+    // The rank of an element is the number of elements of the
+    // same network that precede it.
+    int[] ranks = new int[size];
+    int[] histogram = new int[size];
+
+    NetworkTable table = new NetworkTable(mask, size);
+    for (int i = 0; i < size; i++) {
+      InetAddress address = provider.getAddress(elements[i]);
+      if (address == null) {
+        throw new IllegalArgumentException(
+            "The AddressProvider returned no address for: " + elements[i]);
+      }
+
+      int rank = table.increment(address.getAddress());
+      ranks[i] = rank;
+      histogram[rank]++;
+    }
+
+    // Find the highest rank we need to consider and how many
+    // elements of that rank are going to be selected.
+    int threshold = 0;
+    int remaining = k;
+    while (histogram[threshold] <= remaining) {
+      remaining -= histogram[threshold++];
+    }
+
+    List<T> selected = new ArrayList<T>(k);
+    for (int i = 0; i < size && selected.size() < k; i++) {
+      int rank = ranks[i];
+      if (rank < threshold) {
+        selected.add(elements[i]);
+      } else if (rank == threshold && 0 < remaining) {
+        selected.add(elements[i]);
+        --remaining;
+      }
+    }
+
+    return selected;
+  }
+
+  /**
+   * An {@link AddressProvider} returns the {@link InetAddress}
+   * of an arbitrary element.
+   */
+  public static interface AddressProvider<T> {
+
+    /**
+     * Returns the {@link InetAddress} of the given element which
+     * must not be {@code null}.
+     */
+    public InetAddress getAddress(T value);
+  }
+
+  /**
+   * An open addressing hash table that counts networks by their
+   * {@link NetworkMask#key(byte[])}. A zero key marks an empty slot
+   * because the keys are never zero.
+   */
+  private static class NetworkTable {
+
+    private final NetworkMask mask;
+
+    private final long[] keys;
+
+    private final int[] counts;
+
+    public NetworkTable(NetworkMask mask, int expected) {
+      this.mask = mask;
+
+      int capacity = MathUtils.nextPowOfTwo(2 * expected);
+      this.keys = new long[capacity];
+      this.counts = new int[capacity];
+    }
+
+    /**
+     * Increments the counter of the given address and returns
+     * the previous value.
+     */
+    public int increment(byte[] address) {
+      long key = mask.key(address);
+
+      int bitmask = keys.length - 1;
+      int index = hash(key) & bitmask;
+
+      while (keys[index] != 0L) {
+        if (keys[index] == key) {
+          return counts[index]++;
+        }
+        index = (index + 1) & bitmask;
+      }
+
+      keys[index] = key;
+      counts[index] = 1;
+      return 0;
+    }
+
+    private static int hash(long key) {
+      long h = key * 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      return (int)h;
+    }
+  }
+}
@@ -38,6 +38,9 @@ public class NetworkUtils {
   
   /**
    * Creates and returns a resolved {@link InetSocketAddress}.
+   * 
+   * <p>NOTE: The host name is being resolved on the calling thread. Use 
+   * an {@link AddressResolver} to resolve host names asynchronously.
    */
   public static InetSocketAddress createResolved(String host, int port) {
     return new InetSocketAddress(host, port);
@@ -64,6 +67,8 @@ public class NetworkUtils {
   
   /**
    * Resolves (if necessary) the given {@link SocketAddress} and returns it.
+   * 
+   * @see AddressResolver#resolve(SocketAddress)
    */
   public static InetSocketAddress getResolved(SocketAddress address) {
     InetSocketAddress isa = (InetSocketAddress)address;
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.ardverk.lang.Precoditions;
+import org.ardverk.security.SecurityUtils;
+
+/**
+ * The {@link PortAllocator} hands out port numbers from a {@link PortRange}
+ * and keeps track of the ports that are currently leased.
+ *
+ * <p>Ports are handed out in the order of a random permutation of the
+ * {@link PortRange}. A port is never returned twice before all other
+ * ports have been tried. The leased ports are tracked in a bitmap that
+ * is updated with CAS operations and the {@link PortAllocator} is safe
+ * to use from multiple {@link Thread}s without any locking.
+ */
+public class PortAllocator {
+
+  /**
+   * The value that is returned by {@link #lease()} if all ports are leased.
+   */
+  public static final int NONE = -1;
+
+  private static final int ADDRESS_BITS_PER_WORD = 6;
+
+  private final PortRange range;
+
+  /**
+   * The random permutation of port offsets (relative to the
+   * range's min port). A port offset is at most 0xFFFF and fits
+   * therefore into a {@code char}.
+   */
+  private final char[] permutation;
+
+  /**
+   * One bit for each port in the {@link PortRange}.
+   */
+  private final AtomicLongArray leased;
+
+  private final AtomicInteger cursor = new AtomicInteger();
+
+  private final AtomicInteger count = new AtomicInteger();
+
+  /**
+   * Creates a {@link PortAllocator} for the given {@link PortRange}.
+   */
+  public PortAllocator(PortRange range) {
+    this(range, SecurityUtils.createSecureRandom());
+  }
+
+  /**
+   * Creates a {@link PortAllocator} for the given {@link PortRange}
+   * that uses the given {@link Random} to shuffle the ports.
+   */
+  public PortAllocator(PortRange range, Random random) {
+    this.range = Precoditions.notNull(range, "range");
+    Precoditions.notNull(random, "random");
+
+    int size = range.size();
+
+    this.permutation = new char[size];
+    for (int i = 0; i < size; i++) {
+      permutation[i] = (char)i;
+    }
+
+    // Fisher-Yates
+    for (int i = size - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      char tmp = permutation[i];
+      permutation[i] = permutation[j];
+      permutation[j] = tmp;
+    }
+
+    this.leased = new AtomicLongArray(
+        ((size - 1) >>> ADDRESS_BITS_PER_WORD) + 1);
+  }
+
+  /**
+   * Returns the {@link PortRange}
+   */
+  public PortRange getRange() {
+    return range;
+  }
+
+  /**
+   * Returns the total number of ports
+   */
+  public int size() {
+    return permutation.length;
+  }
+
+  /**
+   * Returns the number of leased ports
+   */
+  public int getLeased() {
+    return count.get();
+  }
+
+  /**
+   * Returns the number of ports that can be leased
+   */
+  public int getAvailable() {
+    return size() - getLeased();
+  }
+
+  /**
+   * Leases and returns the next free port or {@link #NONE} if all
+   * ports are leased.
+   */
+  public int lease() {
+    int size = permutation.length;
+    for (int i = 0; i < size && count.get() < size; i++) {
+      int offset = permutation[next()];
+      if (acquire(offset)) {
+        return range.getMin() + offset;
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * Leases up to {@code dst.length} ports and returns the number of
+   * ports that were leased.
+   */
+  public int lease(int[] dst) {
+    return lease(dst, 0, dst.length);
+  }
+
+  /**
+   * Leases up to {@code length} ports and returns the number of
+   * ports that were leased.
+   */
+  public int lease(int[] dst, int offset, int length) {
+    if (offset < 0 || length < 0 || dst.length < (offset+length)) {
+      throw new ArrayIndexOutOfBoundsException(
+          "offset=" + offset + ", length=" + length);
+    }
+
+    int total = 0;
+    while (total < length) {
+      int port = lease();
+      if (port == NONE) {
+        break;
+      }
+
+      dst[offset + total++] = port;
+    }
+    return total;
+  }
+
+  /**
+   * Leases the given port and returns {@code true} on success.
+   * It's useful to lease ports that are known to be in use.
+   */
+  public boolean lease(int port) {
+    if (!range.contains(port)) {
+      throw new IllegalArgumentException("port=" + port);
+    }
+
+    return acquire(port - range.getMin());
+  }
+
+  /**
+   * Releases the given port and returns {@code true} if the
+   * port was leased.
+   */
+  public boolean release(int port) {
+    if (!range.contains(port)) {
+      return false;
+    }
+
+    int offset = port - range.getMin();
+    int index = offset >>> ADDRESS_BITS_PER_WORD;
+    long mask = 1L << offset;
+
+    while (true) {
+      long word = leased.get(index);
+      if ((word & mask) == 0L) {
+        return false;
+      }
+
+      if (leased.compareAndSet(index, word, word & ~mask)) {
+        count.decrementAndGet();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Releases the given ports and returns the number of ports
+   * that were released.
+   */
+  public int release(int[] ports, int offset, int length) {
+    int total = 0;
+    for (int i = 0; i < length; i++) {
+      if (release(ports[offset + i])) {
+        ++total;
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Returns {@code true} if the given port is leased.
+   */
+  public boolean isLeased(int port) {
+    if (!range.contains(port)) {
+      return false;
+    }
+
+    int offset = port - range.getMin();
+    long word = leased.get(offset >>> ADDRESS_BITS_PER_WORD);
+    return (word & (1L << offset)) != 0L;
+  }
+
+  /**
+   * Returns the next index into the permutation.
+   */
+  private int next() {
+    int size = permutation.length;
+    while (true) {
+      int current = cursor.get();
+      int next = current + 1;
+      if (next >= size) {
+        next = 0;
+      }
+
+      if (cursor.compareAndSet(current, next)) {
+        return current;
+      }
+    }
+  }
+
+  /**
+   * Sets the bit for the given port offset and returns {@code true}
+   * if the bit wasn't set.
+   */
+  private boolean acquire(int offset) {
+    int index = offset >>> ADDRESS_BITS_PER_WORD;
+    long mask = 1L << offset;
+
+    while (true) {
+      long word = leased.get(index);
+      if ((word & mask) != 0L) {
+        return false;
+      }
+
+      if (leased.compareAndSet(index, word, word | mask)) {
+        count.incrementAndGet();
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return range + ", leased=" + getLeased();
+  }
+}
@@ -126,6 +126,13 @@ public class PortRange implements Comparable<PortRange>, Serializable,
     return max;
   }
   
+  /**
+   * Returns the number of ports in the min-max range.
+   */
+  public int size() {
+    return max - min + 1;
+  }
+  
   /**
    * Returns a random port between min and max.
    */
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * A {@link Resolver} turns host names into {@link InetAddress}es.
+ *
+ * @see AddressResolver
+ */
+public interface Resolver {
+
+  /**
+   * A {@link Resolver} that uses {@link InetAddress#getByName(String)}.
+   */
+  public static final Resolver DEFAULT = new Resolver() {
+    @Override
+    public InetAddress resolve(String host) throws UnknownHostException {
+      return InetAddress.getByName(host);
+    }
+  };
+
+  /**
+   * Resolves and returns the {@link InetAddress} of the given host name.
+   * The call is allowed to block.
+   */
+  public InetAddress resolve(String host) throws UnknownHostException;
+}
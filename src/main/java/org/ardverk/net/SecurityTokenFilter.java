@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import org.ardverk.lang.Precoditions;
+import org.ardverk.security.token.AddressSecurityToken;
+
+/**
+ * A {@link DatagramFilter} that accepts only datagrams that carry a valid
+ * {@link AddressSecurityToken} for their sender at a fixed offset.
+ */
+public class SecurityTokenFilter implements DatagramFilter {
+  
+  private final AddressSecurityToken token;
+  
+  private final int offset;
+  
+  private final int length;
+  
+  private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[length];
+    }
+  };
+  
+  /**
+   * Creates a {@link SecurityTokenFilter}.
+   *
+   * @param token The {@link AddressSecurityToken}
+   * @param offset The offset of the security token in the datagram
+   * @param length The length of the security token
+   */
+  public SecurityTokenFilter(AddressSecurityToken token,
+      int offset, int length) {
+    
+    Precoditions.argument(0 <= offset, "offset=%s", offset);
+    Precoditions.argument(0 < length, "length=%s", length);
+    
+    this.token = Precoditions.notNull(token, "token");
+    this.offset = offset;
+    this.length = length;
+  }
+  
+  @Override
+  public boolean accept(SocketAddress src, ByteBuffer packet) {
+    if (packet.remaining() < offset + length) {
+      return false;
+    }
+    
+    byte[] securityToken = buffers.get();
+    packet.position(packet.position() + offset);
+    packet.get(securityToken, 0, length);
+    
+    return token.isFor(src, securityToken, 0, length);
+  }
+}
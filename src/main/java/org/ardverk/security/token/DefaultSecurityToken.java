@@ -25,12 +25,14 @@ import java.util.concurrent.TimeUnit;
 
 import org.ardverk.concurrent.ExecutorUtils;
 import org.ardverk.concurrent.FutureUtils;
+import org.ardverk.concurrent.StripedCounter;
 import org.ardverk.security.SecurityUtils;
 
 /**
  * A default implementation of {@link SecurityToken}.
  */
-public class DefaultSecurityToken extends AbstractSecurityToken implements Closeable {
+public class DefaultSecurityToken extends AbstractSecurityToken 
+    implements Closeable, SecurityTokenMXBean {
 
   private static final ScheduledExecutorService EXECUTOR 
     = ExecutorUtils.newSingleThreadScheduledExecutor("SecurityTokenThread");
@@ -49,6 +51,16 @@ public class DefaultSecurityToken extends AbstractSecurityToken implements Close
   
   private byte[] previous = null;
   
+  private final StripedCounter created = new StripedCounter();
+  
+  private final StripedCounter accepted = new StripedCounter();
+  
+  private final StripedCounter acceptedPrevious = new StripedCounter();
+  
+  private final StripedCounter rejected = new StripedCounter();
+  
+  private final StripedCounter rotations = new StripedCounter();
+  
   public DefaultSecurityToken(MessageDigest messageDigest, 
       long frequency, TimeUnit unit) {
     this(EXECUTOR, messageDigest, RANDOM, frequency, unit);
@@ -76,6 +88,8 @@ public class DefaultSecurityToken extends AbstractSecurityToken implements Close
             current = new byte[current.length];
             random.nextBytes(current);
           }
+          
+          rotations.increment();
         }
       };
       
@@ -99,6 +113,7 @@ public class DefaultSecurityToken extends AbstractSecurityToken implements Close
       current = this.current;
     }
     
+    created.increment();
     return create(current, data, offset, length);
   }
   
@@ -130,18 +145,49 @@ public class DefaultSecurityToken extends AbstractSecurityToken implements Close
     if (current != null) {
       byte[] expected = create(current, data, dataOffset, dataLength);
       if (equals(expected, securityToken, offset, length)) {
+        accepted.increment();
         return true;
       }
       
       if (previous != null) {
         expected = create(previous, data, dataOffset, dataLength);
-        return equals(expected, securityToken, offset, length);
+        if (equals(expected, securityToken, offset, length)) {
+          accepted.increment();
+          acceptedPrevious.increment();
+          return true;
+        }
       }
     }
     
+    rejected.increment();
     return false;
   }
   
+  @Override
+  public long getCreated() {
+    return created.sum();
+  }
+  
+  @Override
+  public long getAccepted() {
+    return accepted.sum();
+  }
+  
+  @Override
+  public long getAcceptedPrevious() {
+    return acceptedPrevious.sum();
+  }
+  
+  @Override
+  public long getRejected() {
+    return rejected.sum();
+  }
+  
+  @Override
+  public long getRotations() {
+    return rotations.sum();
+  }
+  
   private static boolean equals(byte[] expected, 
       byte[] actual, int offset, int length) {
     
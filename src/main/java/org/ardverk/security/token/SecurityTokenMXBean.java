@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.security.token;
+
+/**
+ * The management interface of a {@link DefaultSecurityToken}.
+ *
+ * @see org.ardverk.utils.ManagementUtils
+ */
+public interface SecurityTokenMXBean {
+  
+  /**
+   * Returns the number of security tokens that were created.
+   */
+  public long getCreated();
+  
+  /**
+   * Returns the number of security tokens that were valid.
+   */
+  public long getAccepted();
+  
+  /**
+   * Returns the number of security tokens that were valid
+   * for the previous key only.
+   */
+  public long getAcceptedPrevious();
+  
+  /**
+   * Returns the number of security tokens that were invalid.
+   */
+  public long getRejected();
+  
+  /**
+   * Returns the number of times the key was changed.
+   */
+  public long getRotations();
+}
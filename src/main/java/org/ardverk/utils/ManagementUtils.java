@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.utils;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * An utility class to register MBeans with the platform {@link MBeanServer}.
+ */
+public class ManagementUtils {
+  
+  /**
+   * The domain of all {@link ObjectName}s that are created by
+   * {@link #createObjectName(String, String)}.
+   */
+  public static final String DOMAIN = "org.ardverk";
+  
+  private ManagementUtils() {}
+  
+  /**
+   * Creates an {@link ObjectName} of the form
+   * {@code org.ardverk:type=<type>,name=<name>}.
+   */
+  public static ObjectName createObjectName(String type, String name)
+      throws JMException {
+    return new ObjectName(DOMAIN + ":type=" + type
+        + ",name=" + ObjectName.quote(name));
+  }
+  
+  /**
+   * Registers the given MBean with the platform {@link MBeanServer}
+   * and returns its {@link ObjectName}. An existing MBean with the
+   * same {@link ObjectName} is being replaced.
+   */
+  public static ObjectName register(Object bean, String type, String name)
+      throws JMException {
+    ObjectName objectName = createObjectName(type, name);
+    
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+    
+    server.registerMBean(bean, objectName);
+    return objectName;
+  }
+  
+  /**
+   * Unregisters the MBean with the given {@link ObjectName}. Returns
+   * {@code true} on success.
+   */
+  public static boolean unregister(ObjectName objectName) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+        return true;
+      }
+    } catch (JMException ignore) {
+    }
+    return false;
+  }
+}
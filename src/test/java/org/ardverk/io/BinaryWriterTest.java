@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.ardverk.utils.StringUtils;
+import org.junit.Test;
+
+public class BinaryWriterTest {
+  
+  @Test
+  public void primitives() throws IOException {
+    byte[] data;
+    try (BinaryWriter writer = new BinaryWriter(4)) {
+      writer.writeByte(-1).writeBoolean(true)
+        .writeShort(0x1234).writeShortLE(0x1234)
+        .writeInt(0x12345678).writeIntLE(0x12345678)
+        .writeLong(Long.MIN_VALUE + 1L).writeLongLE(42L)
+        .writeFloat(1.5f).writeDoubleLE(-2.25);
+      data = writer.toByteArray();
+    }
+    
+    TestCase.assertEquals(0x12345678, DataUtils.beb2int(data, 6));
+    TestCase.assertEquals(0x12345678, DataUtils.leb2int(data, 10));
+    
+    BinaryReader reader = new BinaryReader(data);
+    TestCase.assertEquals(-1, reader.readByte());
+    TestCase.assertTrue(reader.readBoolean());
+    TestCase.assertEquals(0x1234, reader.readShort());
+    TestCase.assertEquals(0x1234, reader.readShortLE());
+    TestCase.assertEquals(0x12345678, reader.readInt());
+    TestCase.assertEquals(0x12345678, reader.readIntLE());
+    TestCase.assertEquals(Long.MIN_VALUE + 1L, reader.readLong());
+    TestCase.assertEquals(42L, reader.readLongLE());
+    TestCase.assertEquals(1.5f, reader.readFloat());
+    TestCase.assertEquals(-2.25, reader.readDoubleLE());
+    TestCase.assertFalse(reader.hasRemaining());
+    
+    try {
+      reader.readInt();
+      TestCase.fail("Should have failed");
+    } catch (EOFException expected) {
+    }
+  }
+  
+  @Test
+  public void variable() throws IOException {
+    int[] ints = { 0, 1, -1, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE };
+    long[] longs = { 0L, -1L, 300L, Long.MAX_VALUE, Long.MIN_VALUE };
+    String[] strings = { "", "hello", "gr\u00FC\u00DFe", "\u20AC\uD83D\uDE00" };
+    
+    try (BinaryWriter writer = new BinaryWriter()) {
+      for (int value : ints) {
+        writer.writeVarInt(value).writeZigZagInt(value);
+      }
+      for (long value : longs) {
+        writer.writeVarLong(value).writeZigZagLong(value);
+      }
+      for (String value : strings) {
+        writer.writeString(value);
+      }
+      writer.writeBytes(new byte[] { 1, 2, 3 });
+      
+      BinaryReader reader = BinaryReader.create(writer.toByteBuffer());
+      for (int value : ints) {
+        TestCase.assertEquals(value, reader.readVarInt());
+        TestCase.assertEquals(value, reader.readZigZagInt());
+      }
+      for (long value : longs) {
+        TestCase.assertEquals(value, reader.readVarLong());
+        TestCase.assertEquals(value, reader.readZigZagLong());
+      }
+      
+      // The String format is the same as StringUtils'
+      ByteArrayInputStream in = new ByteArrayInputStream(
+          writer.toByteArray(), writer.size() - reader.remaining(),
+          reader.remaining());
+      for (String value : strings) {
+        TestCase.assertEquals(value, reader.readString());
+        TestCase.assertEquals(value, StringUtils.readString(in));
+      }
+      TestCase.assertTrue(Arrays.equals(new byte[] { 1, 2, 3 },
+          reader.readBytes()));
+    }
+  }
+  
+  @Test
+  public void position() throws IOException {
+    byte[] data = new byte[16];
+    Arrays.fill(data, (byte)0x7F);
+    
+    try (BinaryWriter writer = new BinaryWriter(4)) {
+      // Leave some garbage in the buffer
+      writer.write(data).reset();
+      
+      // Patch a length after the fact
+      writer.writeInt(0).write(data, 0, 10);
+      writer.position(0).writeInt(10);
+      TestCase.assertEquals(4, writer.position());
+      TestCase.assertEquals(14, writer.size());
+      TestCase.assertEquals(14, writer.toByteArray().length);
+      TestCase.assertEquals(14, writer.toByteBuffer().remaining());
+      
+      // The gap is being filled with zeros
+      writer.position(20).writeByte(1);
+      TestCase.assertEquals(21, writer.size());
+      
+      byte[] value = writer.toByteArray();
+      TestCase.assertEquals(10, DataUtils.beb2int(value, 0));
+      TestCase.assertTrue(Arrays.equals(Arrays.copyOf(data, 10), 
+          Arrays.copyOfRange(value, 4, 14)));
+      TestCase.assertTrue(Arrays.equals(new byte[6], 
+          Arrays.copyOfRange(value, 14, 20)));
+      TestCase.assertEquals(1, value[20]);
+      
+      // Growing the buffer keeps what's after the cursor
+      writer.position(0).position(100000);
+      TestCase.assertEquals(100000, writer.size());
+      value = writer.toByteArray();
+      TestCase.assertEquals(10, DataUtils.beb2int(value, 0));
+      TestCase.assertEquals(1, value[20]);
+      TestCase.assertTrue(Arrays.equals(new byte[100000 - 21], 
+          Arrays.copyOfRange(value, 21, value.length)));
+    }
+  }
+}
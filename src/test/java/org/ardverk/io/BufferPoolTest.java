@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+  
+  @Test
+  public void sizeClasses() {
+    BufferPool pool = new BufferPool(4, false);
+    
+    TestCase.assertEquals(BufferPool.MIN_SIZE, pool.acquire(0).length);
+    TestCase.assertEquals(1024, pool.acquire(1000).length);
+    TestCase.assertEquals(1024, pool.acquire(1024).length);
+    TestCase.assertEquals(2048, pool.acquire(1025).length);
+    
+    int large = BufferPool.MAX_SIZE + 1;
+    TestCase.assertEquals(large, pool.acquire(large).length);
+    
+    ByteBuffer buffer = pool.acquireDirect(1000);
+    TestCase.assertTrue(buffer.isDirect());
+    TestCase.assertEquals(1024, buffer.capacity());
+    TestCase.assertEquals(1000, buffer.remaining());
+  }
+  
+  @Test
+  public void reuse() {
+    BufferPool pool = new BufferPool(4, false);
+    
+    byte[] buffer = pool.acquire(4096);
+    pool.release(buffer);
+    TestCase.assertSame(buffer, pool.acquire(4096));
+    
+    ByteBuffer direct = pool.acquireDirect(4096);
+    pool.releaseDirect(direct);
+    TestCase.assertSame(direct, pool.acquireDirect(4000));
+  }
+  
+  @Test
+  public void shared() throws InterruptedException {
+    final BufferPool pool = new BufferPool(4, false);
+    
+    // Large buffers are not being cached per Thread
+    final byte[] buffer = pool.acquire(BufferPool.LOCAL_MAX_SIZE + 1);
+    pool.release(buffer);
+    
+    final byte[][] acquired = new byte[1][];
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        acquired[0] = pool.acquire(buffer.length);
+      }
+    };
+    thread.start();
+    thread.join();
+    
+    TestCase.assertSame(buffer, acquired[0]);
+  }
+  
+  @Test
+  public void debug() {
+    BufferPool pool = new BufferPool(4, true);
+    
+    byte[] buffer = pool.acquire(100);
+    TestCase.assertEquals(1, pool.getOutstanding());
+    
+    pool.release(buffer);
+    TestCase.assertEquals(0, pool.getOutstanding());
+    
+    try {
+      pool.release(buffer);
+      TestCase.fail("Should have failed!");
+    } catch (IllegalStateException expected) {}
+  }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import junit.framework.TestCase;
+
+import org.ardverk.utils.StringUtils;
+import org.junit.Test;
+
+public class CompressorTest {
+  
+  private static final Compressor[] COMPRESSORS = {
+    GzipCompressor.GZIP,
+    ZlibCompressor.ZLIB,
+    Lz4Compressor.LZ4,
+    new AdaptiveCompressor(ZlibCompressor.ZLIB),
+    new ParallelGzipCompressor(new ForkJoinPool(4), 4096),
+    new DictionaryCompressor(new DictionaryCompressor.Dictionary(
+        300, createData(1024)))
+  };
+  
+  private static byte[] createData(int length) {
+    Random random = new Random(length);
+    byte[] data = new byte[length];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte)('a' + random.nextInt(8));
+    }
+    return data;
+  }
+  
+  @Test
+  public void bytes() throws IOException {
+    for (Compressor compressor : COMPRESSORS) {
+      for (int length : new int[] { 0, 1, 1000, 100000 }) {
+        byte[] data = createData(length);
+        byte[] compressed = compressor.compress(data);
+        TestCase.assertTrue(Arrays.equals(data,
+            compressor.decompress(compressed)));
+      }
+    }
+  }
+  
+  @Test
+  public void buffers() throws IOException {
+    byte[] data = createData(50000);
+    
+    for (Compressor compressor : COMPRESSORS) {
+      for (boolean direct : new boolean[] { false, true }) {
+        ByteBuffer src = allocate(data.length, direct);
+        src.put(data).flip();
+        
+        ByteBuffer compressed = allocate(2 * data.length, direct);
+        compressor.compress(src, compressed);
+        compressed.flip();
+        
+        TestCase.assertFalse(src.hasRemaining());
+        TestCase.assertTrue(Arrays.equals(data, compressor.decompress(
+            toByteArray(compressed.duplicate()))));
+        
+        ByteBuffer dst = allocate(data.length, direct);
+        TestCase.assertEquals(data.length,
+            compressor.decompress(compressed.duplicate(), dst));
+        dst.flip();
+        TestCase.assertTrue(Arrays.equals(data, toByteArray(dst)));
+        
+        try {
+          compressor.decompress(compressed.duplicate(),
+              allocate(data.length - 1, direct));
+          TestCase.fail("Should have failed!");
+        } catch (BufferOverflowException expected) {}
+      }
+    }
+  }
+  
+  @Test
+  public void streams() throws IOException {
+    byte[] data = createData(300000);
+    
+    for (Compressor compressor : COMPRESSORS) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      TestCase.assertEquals(data.length, compressor.compress(
+          new ByteArrayInputStream(data), compressed));
+      
+      ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+      TestCase.assertEquals(data.length, compressor.decompress(
+          new ByteArrayInputStream(compressed.toByteArray()), decompressed));
+      
+      TestCase.assertTrue(Arrays.equals(data, decompressed.toByteArray()));
+    }
+  }
+  
+  @Test
+  public void lz4ExactLength() throws IOException {
+    Random random = new Random();
+    Lz4Compressor lz4 = Lz4Compressor.LZ4;
+    
+    for (int length = 0; length < 2000; length += 1 + length / 8) {
+      byte[] text = createData(length);
+      byte[] noise = new byte[length];
+      random.nextBytes(noise);
+      byte[] zeros = new byte[length];
+      
+      for (byte[] data : new byte[][] { text, noise, zeros }) {
+        int size = lz4.compress(data).length;
+        
+        // Exactly enough room, at an offset
+        byte[] dst = new byte[size + 3];
+        TestCase.assertEquals(size, 
+            lz4.compress(data, 0, data.length, dst, 3));
+        TestCase.assertTrue(Arrays.equals(data, 
+            lz4.decompress(dst, 3, size)));
+        
+        // Not enough room
+        try {
+          lz4.compress(data, 0, data.length, new byte[size - 1], 0);
+          TestCase.fail("Should have failed!");
+        } catch (BufferOverflowException expected) {
+        }
+      }
+    }
+  }
+  
+  @Test
+  public void gzip() throws IOException {
+    byte[] data = createData(10000);
+    byte[] compressed = GzipCompressor.GZIP.compress(data);
+    
+    try (InputStream in = new GZIPInputStream(
+        new ByteArrayInputStream(compressed))) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      StreamUtils.copy(in, baos);
+      TestCase.assertTrue(Arrays.equals(data, baos.toByteArray()));
+    }
+    
+    TestCase.assertTrue(Arrays.equals(data, GzipCompressor.GZIP.decompress(
+        compressed, 0, compressed.length, data.length)));
+  }
+  
+  @Test
+  public void zlib() throws IOException {
+    byte[] data = createData(10000);
+    byte[] compressed = ZlibCompressor.ZLIB.compress(data);
+    
+    try (InputStream in = new InflaterInputStream(
+        new ByteArrayInputStream(compressed))) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      StreamUtils.copy(in, baos);
+      TestCase.assertTrue(Arrays.equals(data, baos.toByteArray()));
+    }
+    
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream out = new DeflaterOutputStream(baos)) {
+      out.write(data);
+    }
+    TestCase.assertTrue(Arrays.equals(data, 
+        ZlibCompressor.ZLIB.decompress(baos.toByteArray())));
+    
+    // The Adler-32 is being checked by the Inflater
+    byte[] corrupt = compressed.clone();
+    corrupt[corrupt.length - 1] ^= 1;
+    try {
+      ZlibCompressor.ZLIB.decompress(corrupt);
+      TestCase.fail("Should have failed!");
+    } catch (IOException expected) {
+    }
+    
+    try {
+      ZlibCompressor.ZLIB.decompress(compressed, 0, compressed.length - 1);
+      TestCase.fail("Should have failed!");
+    } catch (EOFException expected) {
+    }
+  }
+  
+  @Test
+  public void adaptive() throws IOException {
+    AdaptiveCompressor compressor 
+      = new AdaptiveCompressor(ZlibCompressor.ZLIB);
+    
+    byte[] random = new byte[4096];
+    new Random().nextBytes(random);
+    
+    byte[] compressed = compressor.compress("random", random, 0, random.length);
+    TestCase.assertEquals(random.length + 1, compressed.length);
+    TestCase.assertTrue(Arrays.equals(random, 
+        compressor.decompress(compressed)));
+    
+    byte[] data = createData(4096);
+    compressed = compressor.compress("text", data, 0, data.length);
+    TestCase.assertTrue(compressed.length < data.length / 2);
+    TestCase.assertTrue(Arrays.equals(data, 
+        compressor.decompress(compressed)));
+    
+    AdaptiveCompressor.Statistics statistics 
+      = compressor.getStatistics("random");
+    TestCase.assertEquals(1L, statistics.getCount());
+    TestCase.assertEquals(1L, statistics.getSkipped());
+    TestCase.assertTrue(compressor.getStatistics("text").getRatio() < 0.5);
+  }
+  
+  @Test
+  public void adaptiveTypes() throws IOException {
+    AdaptiveCompressor compressor = new AdaptiveCompressor(
+        ZlibCompressor.ZLIB, AdaptiveCompressor.SAMPLE_SIZE,
+        AdaptiveCompressor.MIN_GAIN, 2);
+    
+    byte[] data = createData(1000);
+    for (int i = 0; i < 10; i++) {
+      compressor.compress("type-" + i, data, 0, data.length);
+    }
+    compressor.compress("type-0", data, 0, data.length);
+    
+    // The types beyond the first two share one entry
+    TestCase.assertEquals(new HashSet<String>(Arrays.asList(
+        "type-0", "type-1", AdaptiveCompressor.OTHER_TYPE)), 
+        compressor.getTypes());
+    TestCase.assertEquals(2L, compressor.getStatistics("type-0").getCount());
+    TestCase.assertEquals(1L, compressor.getStatistics("type-1").getCount());
+    TestCase.assertEquals(8L, compressor.getStatistics(
+        AdaptiveCompressor.OTHER_TYPE).getCount());
+    TestCase.assertNull(compressor.getStatistics("type-2"));
+  }
+  
+  @Test
+  public void dictionary() throws IOException {
+    DictionaryTrainer trainer = new DictionaryTrainer();
+    for (int i = 0; i < 200; i++) {
+      trainer.add(createMessage(i));
+    }
+    
+    DictionaryCompressor.Dictionary previous = trainer.train(1, 4096);
+    DictionaryCompressor.Dictionary current = trainer.train(2, 8192);
+    TestCase.assertTrue(0 < previous.size() && previous.size() <= 4096);
+    
+    DictionaryCompressor compressor 
+      = new DictionaryCompressor(current, previous);
+    
+    byte[] message = createMessage(1000);
+    byte[] compressed = compressor.compress(message);
+    TestCase.assertTrue(compressed.length 
+        < ZlibCompressor.ZLIB.compress(message).length / 2);
+    TestCase.assertTrue(Arrays.equals(message, 
+        compressor.decompress(compressed)));
+    
+    byte[] old = new DictionaryCompressor(previous).compress(message);
+    TestCase.assertTrue(Arrays.equals(message, 
+        compressor.decompress(old)));
+    
+    try {
+      new DictionaryCompressor(previous).decompress(compressed);
+      TestCase.fail("Should have failed");
+    } catch (IOException expected) {
+    }
+  }
+  
+  @Test
+  public void dictionaryId() throws IOException {
+    byte[] message = createMessage(1000);
+    
+    for (int id : new int[] { 0, 127, 128, 300, Integer.MAX_VALUE }) {
+      DictionaryCompressor compressor = new DictionaryCompressor(
+          new DictionaryCompressor.Dictionary(id, createMessage(1)));
+      
+      byte[] compressed = compressor.compress(message);
+      TestCase.assertTrue(Arrays.equals(message, 
+          compressor.decompress(compressed)));
+      
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      try (OutputStream out = compressor.createOutputStream(baos)) {
+        out.write(message);
+      }
+      TestCase.assertTrue(Arrays.equals(compressed, baos.toByteArray()));
+      
+      // There is not even enough room for the ID
+      for (int length = 0; length < 5; length++) {
+        try {
+          compressor.compress(message, 0, message.length, 
+              new byte[length], 0);
+          TestCase.fail("Should have failed!");
+        } catch (BufferOverflowException expected) {
+        }
+      }
+    }
+  }
+  
+  @Test
+  public void dictionaryMismatch() throws IOException {
+    DictionaryCompressor compressor = new DictionaryCompressor(
+        new DictionaryCompressor.Dictionary(1, createMessage(1)));
+    
+    // A different dictionary that was registered under the same ID
+    DictionaryCompressor other = new DictionaryCompressor(
+        new DictionaryCompressor.Dictionary(1, createMessage(2)));
+    
+    byte[] message = createMessage(1000);
+    byte[] compressed = compressor.compress(message);
+    
+    byte[] corrupt = compressed.clone();
+    corrupt[corrupt.length / 2] ^= 0x01;
+    
+    for (byte[] value : new byte[][] { compressed, corrupt }) {
+      DictionaryCompressor decompressor 
+        = (value == compressed ? other : compressor);
+      
+      try {
+        decompressor.decompress(value);
+        TestCase.fail("Should have failed");
+      } catch (IOException expected) {
+      }
+      
+      try {
+        InputStream in = decompressor.createInputStream(
+            new ByteArrayInputStream(value));
+        try {
+          StreamUtils.readFully(in, new byte[message.length]);
+          TestCase.assertEquals(-1, in.read());
+        } finally {
+          in.close();
+        }
+        TestCase.fail("Should have failed");
+      } catch (IOException expected) {
+      }
+    }
+  }
+  
+  private static byte[] createMessage(int index) {
+    Random random = new Random(index);
+    String message = "{\"type\":\"ping\",\"id\":" + random.nextInt() 
+        + ",\"timestamp\":" + (1300000000000L + random.nextInt()) 
+        + ",\"address\":\"10.0." + random.nextInt(256) + "." 
+        + random.nextInt(256) + "\",\"version\":\"1.0.2\"" 
+        + ",\"status\":\"" + (random.nextBoolean() ? "ok" : "busy") 
+        + "\",\"payload\":{\"capabilities\":[\"store\",\"find\"]}}";
+    return StringUtils.getBytes(message);
+  }
+  
+  private static ByteBuffer allocate(int capacity, boolean direct) {
+    return direct ? ByteBuffer.allocateDirect(capacity)
+        : ByteBuffer.allocate(capacity);
+  }
+  
+  private static byte[] toByteArray(ByteBuffer buffer) {
+    byte[] data = new byte[buffer.remaining()];
+    buffer.get(data);
+    return data;
+  }
+}
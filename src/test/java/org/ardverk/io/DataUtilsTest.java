@@ -0,0 +1,313 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class DataUtilsTest {
+  
+  private static final ByteOrder[] ORDERS = {
+    ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN
+  };
+  
+  private static final int COUNT = 17;
+  
+  private static final int OFFSET = 3;
+  
+  private static final int LENGTH = 10;
+  
+  private static final int DST_OFFSET = 5;
+  
+  private static final Random RANDOM = new Random();
+  
+  @Test
+  public void shorts() {
+    for (ByteOrder order : ORDERS) {
+      short[] values = new short[COUNT];
+      ByteBuffer expected = allocate(values.length * DataUtils.SHORT, order);
+      for (int i = 0; i < values.length; i++) {
+        values[i] = (short)RANDOM.nextInt();
+        expected.putShort(values[i]);
+      }
+      
+      byte[] bytes = DataUtils.shorts2bytes(values, order);
+      TestCase.assertTrue(Arrays.equals(expected.array(), bytes));
+      TestCase.assertTrue(Arrays.equals(values,
+          DataUtils.bytes2shorts(bytes, order)));
+      
+      int size = LENGTH * DataUtils.SHORT;
+      
+      byte[] dst = new byte[DST_OFFSET + size + 1];
+      DataUtils.shorts2bytes(values, OFFSET, LENGTH, dst, DST_OFFSET, order);
+      assertBytes(bytes, OFFSET * DataUtils.SHORT, dst, DST_OFFSET, size);
+      
+      short[] copy = new short[COUNT];
+      DataUtils.bytes2shorts(dst, DST_OFFSET, copy, OFFSET, LENGTH, order);
+      TestCase.assertTrue(Arrays.equals(range(values), range(copy)));
+      
+      for (ByteBuffer buffer : buffers(DST_OFFSET + size + 1, order)) {
+        buffer.position(DST_OFFSET);
+        DataUtils.shorts2bytes(values, OFFSET, LENGTH, buffer, order);
+        assertBuffer(bytes, OFFSET * DataUtils.SHORT, buffer, size);
+        
+        copy = new short[COUNT];
+        buffer.position(DST_OFFSET);
+        DataUtils.bytes2shorts(buffer, copy, OFFSET, LENGTH, order);
+        TestCase.assertEquals(DST_OFFSET + size, buffer.position());
+        TestCase.assertTrue(Arrays.equals(range(values), range(copy)));
+      }
+    }
+  }
+  
+  @Test
+  public void ints() {
+    for (ByteOrder order : ORDERS) {
+      int[] values = new int[COUNT];
+      ByteBuffer expected = allocate(values.length * DataUtils.INT, order);
+      for (int i = 0; i < values.length; i++) {
+        values[i] = RANDOM.nextInt();
+        expected.putInt(values[i]);
+      }
+      
+      byte[] bytes = DataUtils.ints2bytes(values, order);
+      TestCase.assertTrue(Arrays.equals(expected.array(), bytes));
+      TestCase.assertTrue(Arrays.equals(values,
+          DataUtils.bytes2ints(bytes, order)));
+      
+      int size = LENGTH * DataUtils.INT;
+      
+      byte[] dst = new byte[DST_OFFSET + size + 1];
+      DataUtils.ints2bytes(values, OFFSET, LENGTH, dst, DST_OFFSET, order);
+      assertBytes(bytes, OFFSET * DataUtils.INT, dst, DST_OFFSET, size);
+      
+      int[] copy = new int[COUNT];
+      DataUtils.bytes2ints(dst, DST_OFFSET, copy, OFFSET, LENGTH, order);
+      TestCase.assertTrue(Arrays.equals(range(values), range(copy)));
+      
+      for (ByteBuffer buffer : buffers(DST_OFFSET + size + 1, order)) {
+        buffer.position(DST_OFFSET);
+        DataUtils.ints2bytes(values, OFFSET, LENGTH, buffer, order);
+        assertBuffer(bytes, OFFSET * DataUtils.INT, buffer, size);
+        
+        copy = new int[COUNT];
+        buffer.position(DST_OFFSET);
+        DataUtils.bytes2ints(buffer, copy, OFFSET, LENGTH, order);
+        TestCase.assertEquals(DST_OFFSET + size, buffer.position());
+        TestCase.assertTrue(Arrays.equals(range(values), range(copy)));
+      }
+    }
+  }
+  
+  @Test
+  public void longs() {
+    for (ByteOrder order : ORDERS) {
+      long[] values = new long[COUNT];
+      ByteBuffer expected = allocate(values.length * DataUtils.LONG, order);
+      for (int i = 0; i < values.length; i++) {
+        values[i] = RANDOM.nextLong();
+        expected.putLong(values[i]);
+      }
+      
+      byte[] bytes = DataUtils.longs2bytes(values, order);
+      TestCase.assertTrue(Arrays.equals(expected.array(), bytes));
+      TestCase.assertTrue(Arrays.equals(values,
+          DataUtils.bytes2longs(bytes, order)));
+      
+      int size = LENGTH * DataUtils.LONG;
+      
+      byte[] dst = new byte[DST_OFFSET + size + 1];
+      DataUtils.longs2bytes(values, OFFSET, LENGTH, dst, DST_OFFSET, order);
+      assertBytes(bytes, OFFSET * DataUtils.LONG, dst, DST_OFFSET, size);
+      
+      long[] copy = new long[COUNT];
+      DataUtils.bytes2longs(dst, DST_OFFSET, copy, OFFSET, LENGTH, order);
+      TestCase.assertTrue(Arrays.equals(range(values), range(copy)));
+      
+      for (ByteBuffer buffer : buffers(DST_OFFSET + size + 1, order)) {
+        buffer.position(DST_OFFSET);
+        DataUtils.longs2bytes(values, OFFSET, LENGTH, buffer, order);
+        assertBuffer(bytes, OFFSET * DataUtils.LONG, buffer, size);
+        
+        copy = new long[COUNT];
+        buffer.position(DST_OFFSET);
+        DataUtils.bytes2longs(buffer, copy, OFFSET, LENGTH, order);
+        TestCase.assertEquals(DST_OFFSET + size, buffer.position());
+        TestCase.assertTrue(Arrays.equals(range(values), range(copy)));
+      }
+    }
+  }
+  
+  @Test
+  public void floats() {
+    for (ByteOrder order : ORDERS) {
+      float[] values = new float[COUNT];
+      ByteBuffer expected = allocate(values.length * DataUtils.FLOAT, order);
+      for (int i = 0; i < values.length; i++) {
+        values[i] = RANDOM.nextFloat() * RANDOM.nextInt();
+        expected.putFloat(values[i]);
+      }
+      
+      byte[] bytes = DataUtils.floats2bytes(values, order);
+      TestCase.assertTrue(Arrays.equals(expected.array(), bytes));
+      TestCase.assertTrue(Arrays.equals(values,
+          DataUtils.bytes2floats(bytes, order)));
+      
+      int size = LENGTH * DataUtils.FLOAT;
+      
+      byte[] dst = new byte[DST_OFFSET + size + 1];
+      DataUtils.floats2bytes(values, OFFSET, LENGTH, dst, DST_OFFSET, order);
+      assertBytes(bytes, OFFSET * DataUtils.FLOAT, dst, DST_OFFSET, size);
+      
+      float[] copy = new float[COUNT];
+      DataUtils.bytes2floats(dst, DST_OFFSET, copy, OFFSET, LENGTH, order);
+      TestCase.assertTrue(Arrays.equals(range(values), range(copy)));
+      
+      for (ByteBuffer buffer : buffers(DST_OFFSET + size + 1, order)) {
+        buffer.position(DST_OFFSET);
+        DataUtils.floats2bytes(values, OFFSET, LENGTH, buffer, order);
+        assertBuffer(bytes, OFFSET * DataUtils.FLOAT, buffer, size);
+        
+        copy = new float[COUNT];
+        buffer.position(DST_OFFSET);
+        DataUtils.bytes2floats(buffer, copy, OFFSET, LENGTH, order);
+        TestCase.assertEquals(DST_OFFSET + size, buffer.position());
+        TestCase.assertTrue(Arrays.equals(range(values), range(copy)));
+      }
+    }
+  }
+  
+  @Test
+  public void doubles() {
+    for (ByteOrder order : ORDERS) {
+      double[] values = new double[COUNT];
+      ByteBuffer expected = allocate(values.length * DataUtils.DOUBLE, order);
+      for (int i = 0; i < values.length; i++) {
+        values[i] = RANDOM.nextDouble() * RANDOM.nextLong();
+        expected.putDouble(values[i]);
+      }
+      
+      byte[] bytes = DataUtils.doubles2bytes(values, order);
+      TestCase.assertTrue(Arrays.equals(expected.array(), bytes));
+      TestCase.assertTrue(Arrays.equals(values,
+          DataUtils.bytes2doubles(bytes, order)));
+      
+      int size = LENGTH * DataUtils.DOUBLE;
+      
+      byte[] dst = new byte[DST_OFFSET + size + 1];
+      DataUtils.doubles2bytes(values, OFFSET, LENGTH, dst, DST_OFFSET, order);
+      assertBytes(bytes, OFFSET * DataUtils.DOUBLE, dst, DST_OFFSET, size);
+      
+      double[] copy = new double[COUNT];
+      DataUtils.bytes2doubles(dst, DST_OFFSET, copy, OFFSET, LENGTH, order);
+      TestCase.assertTrue(Arrays.equals(range(values), range(copy)));
+      
+      for (ByteBuffer buffer : buffers(DST_OFFSET + size + 1, order)) {
+        buffer.position(DST_OFFSET);
+        DataUtils.doubles2bytes(values, OFFSET, LENGTH, buffer, order);
+        assertBuffer(bytes, OFFSET * DataUtils.DOUBLE, buffer, size);
+        
+        copy = new double[COUNT];
+        buffer.position(DST_OFFSET);
+        DataUtils.bytes2doubles(buffer, copy, OFFSET, LENGTH, order);
+        TestCase.assertEquals(DST_OFFSET + size, buffer.position());
+        TestCase.assertTrue(Arrays.equals(range(values), range(copy)));
+      }
+    }
+  }
+  
+  private static ByteBuffer allocate(int capacity, ByteOrder order) {
+    return ByteBuffer.allocate(capacity).order(order);
+  }
+  
+  /**
+   * Returns a heap and a direct {@link ByteBuffer} whose own byte order
+   * is the opposite of the given one.
+   */
+  private static ByteBuffer[] buffers(int capacity, ByteOrder order) {
+    ByteOrder other = (order == ByteOrder.BIG_ENDIAN
+        ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    
+    return new ByteBuffer[] {
+      ByteBuffer.allocate(capacity).order(other),
+      ByteBuffer.allocateDirect(capacity).order(other)
+    };
+  }
+  
+  /**
+   * Asserts that the given range of the {@code byte[]} matches and the
+   * bytes around it are untouched.
+   */
+  private static void assertBytes(byte[] expected, int offset,
+      byte[] actual, int actualOffset, int length) {
+    
+    TestCase.assertTrue(Arrays.equals(
+        Arrays.copyOfRange(expected, offset, offset + length),
+        Arrays.copyOfRange(actual, actualOffset, actualOffset + length)));
+    
+    for (int i = 0; i < actualOffset; i++) {
+      TestCase.assertEquals(0, actual[i]);
+    }
+    
+    for (int i = actualOffset + length; i < actual.length; i++) {
+      TestCase.assertEquals(0, actual[i]);
+    }
+  }
+  
+  /**
+   * Asserts that the {@link ByteBuffer}'s position has been advanced by
+   * the given number of bytes, its byte order is unchanged and the bytes
+   * match.
+   */
+  private static void assertBuffer(byte[] expected, int offset,
+      ByteBuffer actual, int length) {
+    
+    TestCase.assertEquals(DST_OFFSET + length, actual.position());
+    
+    ByteOrder order = actual.order();
+    byte[] bytes = new byte[actual.capacity()];
+    ((ByteBuffer)actual.duplicate().clear()).get(bytes);
+    assertBytes(expected, offset, bytes, DST_OFFSET, length);
+    TestCase.assertEquals(order, actual.order());
+  }
+  
+  private static short[] range(short[] values) {
+    return Arrays.copyOfRange(values, OFFSET, OFFSET + LENGTH);
+  }
+  
+  private static int[] range(int[] values) {
+    return Arrays.copyOfRange(values, OFFSET, OFFSET + LENGTH);
+  }
+  
+  private static long[] range(long[] values) {
+    return Arrays.copyOfRange(values, OFFSET, OFFSET + LENGTH);
+  }
+  
+  private static float[] range(float[] values) {
+    return Arrays.copyOfRange(values, OFFSET, OFFSET + LENGTH);
+  }
+  
+  private static double[] range(double[] values) {
+    return Arrays.copyOfRange(values, OFFSET, OFFSET + LENGTH);
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.ardverk.lang.ByteArray;
+import org.ardverk.net.NetworkMask;
+import org.junit.Test;
+
+public class GatheringWriterTest {
+  
+  @Test
+  public void write() throws IOException {
+    Streamable streamable = new Streamable() {
+      @Override
+      public void writeTo(OutputStream out) throws IOException {
+        out.write(new byte[] { 1, 2, 3 });
+      }
+    };
+    
+    GatheringWriter writer = new GatheringWriter()
+      .add(NetworkMask.C)
+      .add(NetworkMask.B)
+      .add(ByteBuffer.wrap(new byte[] { 4, 5 }))
+      .add(streamable)
+      .add(NetworkMask.A);
+    
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    NetworkMask.C.writeTo(expected);
+    NetworkMask.B.writeTo(expected);
+    expected.write(new byte[] { 4, 5 });
+    streamable.writeTo(expected);
+    NetworkMask.A.writeTo(expected);
+    
+    TestCase.assertEquals(expected.size(), writer.size());
+    
+    // The two adjacent NetworkMasks share a single ByteBuffer
+    TestCase.assertEquals(4, writer.buffers().length);
+    
+    File file = File.createTempFile("gathering", ".tmp");
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        FileChannel channel = raf.getChannel();
+        TestCase.assertEquals(expected.size(), writer.writeTo(channel));
+        TestCase.assertFalse(writer.hasRemaining());
+        
+        byte[] actual = new byte[(int)channel.size()];
+        raf.seek(0L);
+        raf.readFully(actual);
+        
+        TestCase.assertTrue(Arrays.equals(expected.toByteArray(), actual));
+      } finally {
+        raf.close();
+      }
+    } finally {
+      file.delete();
+    }
+  }
+  
+  @Test
+  public void byteArray() throws IOException {
+    byte[] data = { 1, 2, 3 };
+    
+    // A ByteArray that is being serialized with a length prefix
+    Prefixed prefixed = new Prefixed(data);
+    Plain plain = new Plain(data);
+    
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    prefixed.writeTo(expected);
+    plain.writeTo(expected);
+    TestCase.assertEquals(7, expected.size());
+    
+    GatheringWriter writer = new GatheringWriter()
+      .add(prefixed).add(plain);
+    TestCase.assertEquals(expected.size(), writer.size());
+    
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    for (ByteBuffer buffer : writer.buffers()) {
+      actual.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+          buffer.remaining());
+    }
+    TestCase.assertTrue(Arrays.equals(expected.toByteArray(), 
+        actual.toByteArray()));
+    
+    try (BinaryWriter binary = new BinaryWriter()) {
+      binary.write((Streamable)prefixed).write((Streamable)plain);
+      TestCase.assertTrue(Arrays.equals(expected.toByteArray(), 
+          binary.toByteArray()));
+    }
+  }
+  
+  private static class Prefixed extends ByteArray<Prefixed> {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public Prefixed(byte[] value) {
+      super(value);
+    }
+    
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      out.write(value.length);
+      super.writeTo(out);
+    }
+  }
+  
+  private static class Plain extends ByteArray<Plain> 
+      implements BufferStreamable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public Plain(byte[] value) {
+      super(value);
+    }
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import org.ardverk.utils.StringUtils;
+import org.junit.Test;
+
+public class GzipCompressorTest {
+  
+  private static final GzipCompressor GZIP = GzipCompressor.GZIP;
+  
+  private static final int HEADER_LENGTH = 10;
+  
+  private static final int TRAILER_LENGTH = 8;
+  
+  private static final int FHCRC = 2;
+  
+  private static final int FEXTRA = 4;
+  
+  private static final int FNAME = 8;
+  
+  private static final int FCOMMENT = 16;
+  
+  private static byte[] createData(int length) {
+    Random random = new Random(length);
+    byte[] data = new byte[length];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte)('a' + random.nextInt(8));
+    }
+    return data;
+  }
+  
+  /**
+   * Compresses the given data with {@link GZIPOutputStream}.
+   */
+  private static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(baos)) {
+      out.write(data);
+    }
+    return baos.toByteArray();
+  }
+  
+  /**
+   * Decompresses the given data with {@link GZIPInputStream}.
+   */
+  private static byte[] gunzip(byte[] compressed) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(
+        new ByteArrayInputStream(compressed))) {
+      StreamUtils.copy(in, baos);
+    }
+    return baos.toByteArray();
+  }
+  
+  /**
+   * Creates a GZIP member with the given optional header fields.
+   */
+  private static byte[] member(byte[] data, byte[] extra, String name,
+      String comment, boolean hcrc) throws IOException {
+    
+    int flags = 0;
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    header.write(new byte[] { 0x1F, (byte)0x8B, Deflater.DEFLATED, 0 });
+    header.write(new byte[] { 1, 2, 3, 4, 0, 3 });
+    
+    if (extra != null) {
+      flags |= FEXTRA;
+      header.write(extra.length);
+      header.write(extra.length >>> 8);
+      header.write(extra);
+    }
+    
+    if (name != null) {
+      flags |= FNAME;
+      header.write(StringUtils.getBytes(name));
+      header.write(0);
+    }
+    
+    if (comment != null) {
+      flags |= FCOMMENT;
+      header.write(StringUtils.getBytes(comment));
+      header.write(0);
+    }
+    
+    if (hcrc) {
+      flags |= FHCRC;
+    }
+    
+    byte[] bytes = header.toByteArray();
+    bytes[3] = (byte)flags;
+    
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    baos.write(bytes);
+    
+    if (hcrc) {
+      CRC32 crc = new CRC32();
+      crc.update(bytes);
+      baos.write((int)crc.getValue());
+      baos.write((int)crc.getValue() >>> 8);
+    }
+    
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      
+      byte[] buffer = new byte[1024];
+      while (!deflater.finished()) {
+        int len = deflater.deflate(buffer);
+        baos.write(buffer, 0, len);
+      }
+    } finally {
+      deflater.end();
+    }
+    
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    
+    byte[] trailer = new byte[TRAILER_LENGTH];
+    DataUtils.int2leb((int)crc.getValue(), trailer, 0);
+    DataUtils.int2leb(data.length, trailer, 4);
+    baos.write(trailer);
+    
+    return baos.toByteArray();
+  }
+  
+  private static byte[] concat(byte[]... values) {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    for (byte[] value : values) {
+      baos.write(value, 0, value.length);
+    }
+    return baos.toByteArray();
+  }
+  
+  @Test
+  public void interop() throws IOException {
+    for (int length : new int[] { 0, 1, 1000, 100000 }) {
+      byte[] data = createData(length);
+      
+      // GzipCompressor -> GZIPInputStream
+      byte[] compressed = GZIP.compress(data);
+      TestCase.assertTrue(Arrays.equals(data, gunzip(compressed)));
+      
+      // GZIPOutputStream -> GzipCompressor
+      byte[] gzip = gzip(data);
+      TestCase.assertTrue(Arrays.equals(data, GZIP.decompress(gzip)));
+      TestCase.assertTrue(Arrays.equals(data, GZIP.decompress(
+          gzip, 0, gzip.length, data.length)));
+      
+      ByteBuffer dst = ByteBuffer.allocate(length);
+      TestCase.assertEquals(length, GZIP.decompress(
+          ByteBuffer.wrap(gzip), dst));
+      TestCase.assertTrue(Arrays.equals(data, dst.array()));
+    }
+  }
+  
+  @Test
+  public void header() throws IOException {
+    byte[] data = createData(10000);
+    byte[] extra = { 'A', 'b', 4, 0, 1, 2, 3, 4 };
+    
+    byte[][] members = {
+      member(data, null, null, null, false),
+      member(data, extra, null, null, false),
+      member(data, null, "data.txt", null, false),
+      member(data, null, null, "Hello World", false),
+      member(data, null, null, null, true),
+      member(data, extra, "data.txt", "Hello World", true),
+      member(data, new byte[0], "", "", true)
+    };
+    
+    for (byte[] member : members) {
+      // Make sure the member is valid in the first place
+      TestCase.assertTrue(Arrays.equals(data, gunzip(member)));
+      TestCase.assertTrue(Arrays.equals(data, GZIP.decompress(member)));
+      
+      // The header fields are being skipped at any offset
+      byte[] value = concat(new byte[] { 1, 2, 3 }, member);
+      TestCase.assertTrue(Arrays.equals(data, GZIP.decompress(
+          value, 3, member.length)));
+    }
+  }
+  
+  @Test
+  public void truncatedHeader() throws IOException {
+    byte[] data = createData(1000);
+    byte[] member = member(data, new byte[] { 1, 2, 3, 4 },
+        "data.txt", "Hello World", true);
+    
+    // 10 bytes fixed header, 2+4 bytes extra field, 9+12 bytes for
+    // the strings and 2 bytes header CRC
+    int header = HEADER_LENGTH + 6 + 9 + 12 + 2;
+    for (int i = 0; i < header; i++) {
+      try {
+        GZIP.decompress(member, 0, i);
+        TestCase.fail("Should have failed!");
+      } catch (EOFException expected) {
+      }
+    }
+  }
+  
+  @Test
+  public void multiMember() throws IOException {
+    byte[] data1 = createData(1000);
+    byte[] data2 = createData(0);
+    byte[] data3 = createData(20000);
+    byte[] data = concat(data1, data2, data3);
+    
+    // GZIPOutputStream, GzipCompressor and a handcrafted member
+    byte[] compressed = concat(gzip(data1), GZIP.compress(data2),
+        member(data3, null, "data3.txt", null, true));
+    
+    TestCase.assertTrue(Arrays.equals(data, GZIP.decompress(compressed)));
+    TestCase.assertTrue(Arrays.equals(data, GZIP.decompress(
+        compressed, 0, compressed.length, data.length)));
+    TestCase.assertTrue(Arrays.equals(data, gunzip(compressed)));
+    
+    byte[] dst = new byte[data.length + 2];
+    TestCase.assertEquals(data.length, GZIP.decompress(
+        compressed, 0, compressed.length, dst, 2));
+    TestCase.assertTrue(Arrays.equals(data,
+        Arrays.copyOfRange(dst, 2, dst.length)));
+    
+    // Anything after the last member that isn't a GZIP header is ignored
+    byte[] trailing = concat(compressed, new byte[] { 0, 0, 0 });
+    TestCase.assertTrue(Arrays.equals(data, GZIP.decompress(trailing)));
+  }
+  
+  @Test
+  public void truncatedTrailer() throws IOException {
+    byte[] data = createData(1000);
+    byte[] compressed = GZIP.compress(data);
+    
+    for (int i = 1; i <= TRAILER_LENGTH; i++) {
+      try {
+        GZIP.decompress(compressed, 0, compressed.length - i);
+        TestCase.fail("Should have failed!");
+      } catch (EOFException expected) {
+      }
+    }
+    
+    // The DEFLATE stream itself is truncated
+    try {
+      GZIP.decompress(compressed, 0, compressed.length 
+          - TRAILER_LENGTH - 1);
+      TestCase.fail("Should have failed!");
+    } catch (EOFException expected) {
+    }
+  }
+  
+  @Test
+  public void corruptTrailer() throws IOException {
+    byte[] data = createData(1000);
+    byte[] compressed = GZIP.compress(data);
+    
+    // CRC32 and ISIZE
+    int[] positions = {
+      compressed.length - TRAILER_LENGTH,
+      compressed.length - 1
+    };
+    
+    for (int position : positions) {
+      byte[] corrupt = compressed.clone();
+      corrupt[position] ^= 1;
+      
+      try {
+        GZIP.decompress(corrupt);
+        TestCase.fail("Should have failed!");
+      } catch (IOException expected) {
+        TestCase.assertFalse(expected instanceof EOFException);
+      }
+      
+      // GZIPInputStream agrees
+      try {
+        gunzip(corrupt);
+        TestCase.fail("Should have failed!");
+      } catch (IOException expected) {
+      }
+    }
+    
+    // A corrupt second member
+    byte[] multi = concat(compressed, compressed);
+    multi[multi.length - 1] ^= 1;
+    try {
+      GZIP.decompress(multi);
+      TestCase.fail("Should have failed!");
+    } catch (IOException expected) {
+    }
+  }
+  
+  @Test
+  public void corruptHeader() throws IOException {
+    byte[] compressed = GZIP.compress(createData(1000));
+    
+    byte[] magic = compressed.clone();
+    magic[1] = 0;
+    try {
+      GZIP.decompress(magic);
+      TestCase.fail("Should have failed!");
+    } catch (IOException expected) {
+    }
+    
+    byte[] method = compressed.clone();
+    method[2] = 7;
+    try {
+      GZIP.decompress(method);
+      TestCase.fail("Should have failed!");
+    } catch (IOException expected) {
+    }
+  }
+}
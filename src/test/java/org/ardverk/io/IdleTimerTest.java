@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.ardverk.io.IdleInputStream.IdleAdapter;
+import org.junit.Test;
+
+public class IdleTimerTest {
+  
+  /**
+   * Creates an {@link IdleTimer} that is advanced by hand.
+   */
+  private static IdleTimer createTimer() {
+    return new IdleTimer(100L, TimeUnit.MILLISECONDS, 8, null);
+  }
+  
+  @Test
+  public void active() {
+    IdleTimer timer = createTimer();
+    CountingTask task = new CountingTask(timer, 100L);
+    timer.schedule(task, 100L, TimeUnit.MILLISECONDS);
+    
+    for (int i = 0; i < 100; i++) {
+      task.touch();
+      timer.sweep();
+    }
+    
+    TestCase.assertEquals(0, task.count.get());
+  }
+  
+  @Test
+  public void idle() {
+    IdleTimer timer = createTimer();
+    CountingTask task = new CountingTask(timer, 300L);
+    timer.schedule(task, 300L, TimeUnit.MILLISECONDS);
+    
+    // Not before the full timeout has passed
+    for (int i = 0; i < 3; i++) {
+      timer.sweep();
+    }
+    TestCase.assertEquals(0, task.count.get());
+    
+    timer.sweep();
+    TestCase.assertEquals(1, task.count.get());
+    
+    // And again every timeout for as long as it's idle
+    for (int i = 0; i < 3; i++) {
+      timer.sweep();
+    }
+    TestCase.assertEquals(2, task.count.get());
+    
+    // An activity starts a new timeout
+    task.touch();
+    for (int i = 0; i < 3; i++) {
+      timer.sweep();
+    }
+    TestCase.assertEquals(2, task.count.get());
+    
+    // More ticks than the wheel has buckets
+    for (int i = 0; i < 16; i++) {
+      timer.sweep();
+    }
+    TestCase.assertTrue(task.count.get() > 2);
+  }
+  
+  @Test
+  public void cancel() throws IOException {
+    IdleTimer timer = createTimer();
+    CountingTask task = new CountingTask(timer, 100L);
+    timer.schedule(task, 100L, TimeUnit.MILLISECONDS);
+    TestCase.assertEquals(1, timer.size());
+    
+    timer.sweep();
+    TestCase.assertEquals(1, timer.size());
+    
+    task.cancel();
+    TestCase.assertEquals(0, timer.size());
+    
+    for (int i = 0; i < 16; i++) {
+      timer.sweep();
+    }
+    TestCase.assertEquals(0, task.count.get());
+    
+    // Closing an IdleInputStream cancels its Task
+    final AtomicInteger count = new AtomicInteger();
+    IdleAdapter callback = new IdleAdapter() {
+      @Override
+      public void idle(InputStream in, long time, TimeUnit unit) {
+        count.incrementAndGet();
+      }
+    };
+    
+    InputStream in = new IdleInputStream(
+        new ByteArrayInputStream(new byte[16]), callback, timer,
+        100L, 100L, TimeUnit.MILLISECONDS);
+    
+    timer.sweep();
+    for (int i = 0; i < 16; i++) {
+      TestCase.assertTrue(in.read() != -1);
+      timer.sweep();
+    }
+    TestCase.assertEquals(0, count.get());
+    
+    in.close();
+    TestCase.assertEquals(0, timer.size());
+  }
+  
+  private static class CountingTask extends IdleTimer.Task {
+    
+    private final AtomicInteger count = new AtomicInteger();
+    
+    public CountingTask(IdleTimer timer, long timeout) {
+      super(timer, timeout, TimeUnit.MILLISECONDS);
+    }
+    
+    @Override
+    protected void idle(long time, TimeUnit unit) {
+      count.incrementAndGet();
+    }
+  }
+}
@@ -20,7 +20,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
@@ -59,4 +64,69 @@ public class InputOutputStreamTest {
       TestCase.assertEquals(expected[i], actual[i]);
     }
   }
+  
+  @Test
+  public void consume() throws IOException {
+    final byte[] expected = new byte[256*1024];
+    new Random().nextBytes(expected);
+    
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    
+    OutputStream out = new OutputInputStream(1000) {
+      @Override
+      protected void consume(InputStream in) throws IOException {
+        StreamUtils.copy(in, baos);
+      }
+    };
+    
+    for (int i = 0; i < expected.length; i += 7000) {
+      out.write(expected, i, Math.min(7000, expected.length - i));
+    }
+    out.close();
+    
+    TestCase.assertTrue(Arrays.equals(expected, baos.toByteArray()));
+  }
+  
+  @Test
+  public void closed() throws IOException {
+    Pipe pipe = new Pipe(16);
+    pipe.getOutputStream().write(new byte[16]);
+    pipe.getInputStream().close();
+    
+    try {
+      pipe.getOutputStream().write(1);
+      TestCase.fail("Should have failed");
+    } catch (IOException expected) {
+    }
+  }
+  
+  @Test
+  public void cancel() throws IOException, InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      InputStream in = new InputOutputStream(executor) {
+        @Override
+        protected void produce(OutputStream out) throws IOException {
+          out.write(1);
+          started.countDown();
+          try {
+            Thread.sleep(Long.MAX_VALUE);
+          } catch (InterruptedException err) {
+            interrupted.countDown();
+          }
+        }
+      };
+      
+      TestCase.assertEquals(1, in.read());
+      TestCase.assertTrue(started.await(5L, TimeUnit.SECONDS));
+      
+      in.close();
+      TestCase.assertTrue(interrupted.await(5L, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
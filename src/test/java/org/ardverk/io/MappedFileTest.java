@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class MappedFileTest {
+  
+  @Test
+  public void read() throws IOException {
+    byte[] data = new byte[10000];
+    new Random().nextBytes(data);
+    
+    File file = File.createTempFile("mapped", ".tmp");
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        out.write(data);
+      } finally {
+        out.close();
+      }
+      
+      MappedFile mapped = FileUtils.map(file, 4096);
+      try {
+        TestCase.assertEquals(data.length, mapped.size());
+        
+        // Primitives that straddle the region boundaries
+        for (long position : new long[] { 0, 4093, 4095, 8190, 9992 }) {
+          int offset = (int)position;
+          TestCase.assertEquals(data[offset], mapped.read(position));
+          TestCase.assertEquals(DataUtils.beb2int(data, offset), 
+              mapped.beb2int(position));
+          TestCase.assertEquals(DataUtils.leb2int(data, offset), 
+              mapped.leb2int(position));
+          TestCase.assertEquals(DataUtils.beb2long(data, offset), 
+              mapped.beb2long(position));
+          TestCase.assertEquals(DataUtils.leb2long(data, offset), 
+              mapped.leb2long(position));
+        }
+        
+        TestCase.assertTrue(Arrays.equals(data, 
+            mapped.bytes(0, data.length)));
+        TestCase.assertTrue(Arrays.equals(
+            Arrays.copyOfRange(data, 4000, 9000), 
+            mapped.bytes(4000, 5000)));
+        
+        ByteBuffer slice = mapped.slice(100, 200);
+        TestCase.assertEquals(200, slice.remaining());
+        TestCase.assertEquals(ByteBuffer.wrap(data, 100, 200), slice);
+        
+        try {
+          mapped.beb2long(data.length - 7);
+          TestCase.fail("Should have failed!");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+      } finally {
+        mapped.close();
+      }
+      
+      try {
+        mapped.read(0);
+        TestCase.fail("Should have failed!");
+      } catch (ClosedChannelException expected) {
+      }
+    } finally {
+      file.delete();
+    }
+  }
+  
+  @Test
+  public void load() throws IOException {
+    // The first byte of every page is 1
+    byte[] data = new byte[5 * 4096 + 100];
+    for (int i = 0; i < data.length; i += 4096) {
+      data[i] = 1;
+    }
+    
+    File file = File.createTempFile("mapped", ".tmp");
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        out.write(data);
+      } finally {
+        out.close();
+      }
+      
+      MappedFile mapped = FileUtils.map(file, 8192);
+      try {
+        // Unaligned ranges touch every page they overlap
+        TestCase.assertSame(mapped, mapped.load(4095, 2));
+        TestCase.assertEquals(2, mapped.touched());
+        
+        mapped.load(4097, 8192);
+        TestCase.assertEquals(3, mapped.touched());
+        
+        mapped.load(data.length - 1, 1);
+        TestCase.assertEquals(1, mapped.touched());
+        
+        // Fully covered regions are loaded as a whole
+        mapped.load(8000, data.length - 8000);
+        TestCase.assertEquals(1, mapped.touched());
+        
+        TestCase.assertSame(mapped, mapped.load());
+        TestCase.assertEquals(0, mapped.touched());
+        
+        try {
+          mapped.load(0, data.length + 1);
+          TestCase.fail("Should have failed!");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+      } finally {
+        mapped.close();
+      }
+      
+      try {
+        mapped.load();
+        TestCase.fail("Should have failed!");
+      } catch (ClosedChannelException expected) {
+      }
+    } finally {
+      file.delete();
+    }
+  }
+}
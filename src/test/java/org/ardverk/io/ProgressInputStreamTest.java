@@ -3,6 +3,9 @@ package org.ardverk.io;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -13,7 +16,7 @@ import org.ardverk.io.ProgressInputStream.ProgressCallback;
 import org.junit.Test;
 
 public class ProgressInputStreamTest {
-
+  
   @Test
   public void close() throws IOException, InterruptedException {
     final CountDownLatch latch = new CountDownLatch(1);
@@ -54,4 +57,58 @@ public class ProgressInputStreamTest {
       TestCase.fail("Close failed!");
     }
   }
+  
+  @Test
+  public void batch() throws IOException {
+    final List<Integer> counts = new ArrayList<Integer>();
+    ProgressCallback callback = new ProgressAdapter() {
+      @Override
+      public void in(InputStream in, int count) {
+        counts.add(count);
+      }
+    };
+    
+    ProgressInputStream in = new ProgressInputStream(
+        new ByteArrayInputStream(new byte[10000]), callback, 
+        4096, 1L, TimeUnit.HOURS);
+    
+    byte[] buffer = new byte[1000];
+    while (in.read(buffer) != -1);
+    in.close();
+    
+    TestCase.assertEquals(Arrays.asList(5000, 5000), counts);
+    
+    TransferMeter meter = in.getMeter();
+    TestCase.assertEquals(10000L, meter.getTotal());
+    TestCase.assertEquals(11L, meter.getCalls());
+    TestCase.assertEquals(10L, meter.getHistogram()[10]);
+  }
+  
+  @Test
+  public void nullCallback() throws IOException {
+    final List<Integer> counts = new ArrayList<Integer>();
+    ProgressInputStream in = new ProgressInputStream(
+        new ByteArrayInputStream(new byte[100]), null) {
+      @Override
+      protected void in(int count) {
+        counts.add(count);
+      }
+      
+      @Override
+      protected void eof() {
+        counts.add(-1);
+      }
+      
+      @Override
+      protected void closed() {
+        counts.add(0);
+      }
+    };
+    
+    StreamUtils.readFully(in, new byte[100]);
+    TestCase.assertEquals(-1, in.read());
+    in.close();
+    
+    TestCase.assertEquals(Arrays.asList(100, -1, 0), counts);
+  }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.ardverk.io.ProgressOutputStream.ProgressAdapter;
+import org.ardverk.io.ProgressOutputStream.ProgressCallback;
+import org.junit.Test;
+
+public class ProgressOutputStreamTest {
+  
+  @Test
+  public void write() throws IOException {
+    final List<Integer> counts = new ArrayList<Integer>();
+    final List<OutputStream> closed = new ArrayList<OutputStream>();
+    ProgressCallback callback = new ProgressAdapter() {
+      @Override
+      public void out(OutputStream out, int count) {
+        counts.add(count);
+      }
+      
+      @Override
+      public void closed(OutputStream out) {
+        closed.add(out);
+      }
+    };
+    
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ProgressOutputStream out = new ProgressOutputStream(baos, callback);
+    
+    out.write(1);
+    out.write(new byte[100]);
+    out.write(new byte[100], 10, 50);
+    out.close();
+    
+    TestCase.assertEquals(151, baos.size());
+    TestCase.assertEquals(Arrays.asList(1, 100, 50), counts);
+    TestCase.assertEquals(Arrays.<OutputStream>asList(out), closed);
+    
+    // The array write is being forwarded in one call
+    TransferMeter meter = out.getMeter();
+    TestCase.assertEquals(151L, meter.getTotal());
+    TestCase.assertEquals(3L, meter.getCalls());
+    
+    TestCase.assertFalse(out.isOpen());
+    try {
+      out.write(1);
+      TestCase.fail("Should have failed!");
+    } catch (IOException expected) {
+    }
+    
+    // Closing it again is a no-op
+    out.close();
+    TestCase.assertEquals(1, closed.size());
+  }
+  
+  @Test
+  public void batch() throws IOException {
+    final List<Integer> counts = new ArrayList<Integer>();
+    ProgressCallback callback = new ProgressAdapter() {
+      @Override
+      public void out(OutputStream out, int count) {
+        counts.add(count);
+      }
+    };
+    
+    ProgressOutputStream out = new ProgressOutputStream(
+        new ByteArrayOutputStream(), callback,
+        4096, 1L, TimeUnit.HOURS);
+    
+    byte[] buffer = new byte[1000];
+    for (int i = 0; i < 10; i++) {
+      out.write(buffer);
+    }
+    out.write(buffer, 0, 500);
+    
+    TestCase.assertEquals(Arrays.asList(5000, 5000), counts);
+    
+    // The pending bytes are being reported on close
+    out.close();
+    TestCase.assertEquals(Arrays.asList(5000, 5000, 500), counts);
+    
+    TransferMeter meter = out.getMeter();
+    TestCase.assertEquals(10500L, meter.getTotal());
+    TestCase.assertEquals(11L, meter.getCalls());
+    TestCase.assertEquals(10L, meter.getHistogram()[10]);
+    TestCase.assertEquals(1L, meter.getHistogram()[9]);
+  }
+  
+  @Test
+  public void nullCallback() throws IOException {
+    final List<Integer> counts = new ArrayList<Integer>();
+    ProgressOutputStream out = new ProgressOutputStream(
+        new ByteArrayOutputStream(), null) {
+      @Override
+      protected void out(int count) {
+        counts.add(count);
+      }
+      
+      @Override
+      protected void closed() {
+        counts.add(0);
+      }
+    };
+    
+    out.write(new byte[100]);
+    out.close();
+    
+    TestCase.assertEquals(Arrays.asList(100, 0), counts);
+  }
+  
+  @Test
+  public void blocked() throws IOException {
+    OutputStream slow = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        try {
+          Thread.sleep(20L);
+        } catch (InterruptedException err) {
+          throw new IOException(err);
+        }
+      }
+    };
+    
+    ProgressOutputStream out = new ProgressOutputStream(slow);
+    out.write(1);
+    out.write(2);
+    out.close();
+    
+    TransferMeter meter = out.getMeter();
+    TestCase.assertTrue(40L <= meter.getBlockedTime(TimeUnit.MILLISECONDS));
+    TestCase.assertTrue(meter.getBlockedTime(TimeUnit.MILLISECONDS)
+        <= meter.getElapsedTime(TimeUnit.MILLISECONDS));
+  }
+}
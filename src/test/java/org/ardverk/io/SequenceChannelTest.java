@@ -0,0 +1,260 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class SequenceChannelTest {
+  
+  private static byte[] data(int index) {
+    byte[] data = new byte[1000 * (index + 1)];
+    Arrays.fill(data, (byte)index);
+    return data;
+  }
+  
+  @Test
+  public void files() throws IOException {
+    List<File> files = new ArrayList<File>();
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      for (int i = 0; i < 5; i++) {
+        byte[] data = data(i);
+        expected.write(data);
+        
+        File file = File.createTempFile("sequence", ".tmp");
+        file.deleteOnExit();
+        files.add(file);
+        
+        try (FileOutputStream out = new FileOutputStream(file)) {
+          out.write(data);
+        }
+      }
+      
+      for (ExecutorService e : new ExecutorService[] { executor, null }) {
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (SequenceChannel channel = SequenceChannel.open(files, e)) {
+          ByteBuffer buffer = ByteBuffer.allocate(1500);
+          TestCase.assertEquals(1500, channel.read(buffer));
+          actual.write(buffer.array());
+          
+          TestCase.assertEquals(15000L - 1500L, 
+              channel.transferTo(Channels.newChannel(actual)));
+          
+          buffer.clear();
+          TestCase.assertEquals(-1, channel.read(buffer));
+        }
+        
+        TestCase.assertTrue(Arrays.equals(expected.toByteArray(), 
+            actual.toByteArray()));
+      }
+    } finally {
+      executor.shutdown();
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+  
+  @Test
+  public void channels() throws IOException {
+    List<Segment> segments = new ArrayList<Segment>();
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    for (int i = 0; i < 3; i++) {
+      byte[] data = data(i);
+      expected.write(data);
+      segments.add(new Segment(data));
+    }
+    
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    try (SequenceChannel channel = new SequenceChannel(segments.iterator())) {
+      // A read spans multiple segments
+      ByteBuffer buffer = ByteBuffer.allocate(1500);
+      TestCase.assertEquals(1500, channel.read(buffer));
+      actual.write(buffer.array());
+      TestCase.assertTrue(segments.get(0).isClosed());
+      
+      TestCase.assertEquals(6000L - 1500L, 
+          channel.transferTo(Channels.newChannel(actual)));
+      
+      buffer.clear();
+      TestCase.assertEquals(-1, channel.read(buffer));
+    }
+    
+    TestCase.assertTrue(Arrays.equals(expected.toByteArray(), 
+        actual.toByteArray()));
+    
+    for (Segment segment : segments) {
+      TestCase.assertTrue(segment.isClosed());
+    }
+  }
+  
+  @Test
+  public void lazy() throws IOException {
+    final AtomicInteger opened = new AtomicInteger();
+    List<Callable<ReadableByteChannel>> segments 
+      = new ArrayList<Callable<ReadableByteChannel>>();
+    for (int i = 0; i < 3; i++) {
+      final byte[] data = data(i);
+      segments.add(new Callable<ReadableByteChannel>() {
+        @Override
+        public ReadableByteChannel call() {
+          opened.incrementAndGet();
+          return new Segment(data);
+        }
+      });
+    }
+    
+    // Without an Executor segments are opened when they're needed
+    SequenceChannel channel = new SequenceChannel(segments.iterator(), null);
+    TestCase.assertEquals(0, opened.get());
+    
+    ByteBuffer buffer = ByteBuffer.allocate(500);
+    TestCase.assertEquals(500, channel.read(buffer));
+    TestCase.assertEquals(1, opened.get());
+    
+    channel.close();
+    TestCase.assertFalse(channel.isOpen());
+    TestCase.assertEquals(1, opened.get());
+    
+    try {
+      channel.read(buffer);
+      TestCase.fail("Should have failed!");
+    } catch (ClosedChannelException expected) {
+    }
+  }
+  
+  @Test
+  public void closePrefetched() throws IOException, InterruptedException {
+    final Segment segment = new Segment(data(0));
+    final CountDownLatch opened = new CountDownLatch(1);
+    
+    Callable<ReadableByteChannel> callable 
+        = new Callable<ReadableByteChannel>() {
+      @Override
+      public ReadableByteChannel call() {
+        opened.countDown();
+        return segment;
+      }
+    };
+    
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      SequenceChannel channel = new SequenceChannel(
+          Arrays.asList(callable).iterator(), executor);
+      TestCase.assertTrue(opened.await(5L, TimeUnit.SECONDS));
+      
+      channel.close();
+      TestCase.assertTrue(segment.awaitClosed());
+    } finally {
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void closePending() throws IOException, InterruptedException {
+    final Segment segment = new Segment(data(0));
+    final CountDownLatch opening = new CountDownLatch(1);
+    final CountDownLatch proceed = new CountDownLatch(1);
+    
+    Callable<ReadableByteChannel> callable 
+        = new Callable<ReadableByteChannel>() {
+      @Override
+      public ReadableByteChannel call() throws InterruptedException {
+        opening.countDown();
+        proceed.await();
+        return segment;
+      }
+    };
+    
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      SequenceChannel channel = new SequenceChannel(
+          Arrays.asList(callable).iterator(), executor);
+      TestCase.assertTrue(opening.await(5L, TimeUnit.SECONDS));
+      
+      // The segment finishes opening after the channel has been closed
+      channel.close();
+      TestCase.assertFalse(segment.isClosed());
+      
+      proceed.countDown();
+      TestCase.assertTrue(segment.awaitClosed());
+    } finally {
+      executor.shutdown();
+    }
+  }
+  
+  /**
+   * A non-{@link java.nio.channels.FileChannel} segment.
+   */
+  private static class Segment implements ReadableByteChannel {
+    
+    private final CountDownLatch closed = new CountDownLatch(1);
+    
+    private final ReadableByteChannel channel;
+    
+    public Segment(byte[] data) {
+      this.channel = Channels.newChannel(new ByteArrayInputStream(data));
+    }
+    
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      return channel.read(dst);
+    }
+    
+    @Override
+    public boolean isOpen() {
+      return channel.isOpen();
+    }
+    
+    @Override
+    public void close() throws IOException {
+      channel.close();
+      closed.countDown();
+    }
+    
+    public boolean isClosed() {
+      return closed.getCount() == 0L;
+    }
+    
+    public boolean awaitClosed() throws InterruptedException {
+      return closed.await(5L, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class StreamUtilsTest {
+  
+  private static byte[] data(int length) {
+    byte[] data = new byte[length];
+    new Random().nextBytes(data);
+    return data;
+  }
+  
+  private static File file(byte[] data) throws IOException {
+    File file = File.createTempFile("StreamUtilsTest", ".tmp");
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(data);
+    }
+    return file;
+  }
+  
+  private static byte[] read(File file) throws IOException {
+    byte[] data = new byte[(int)file.length()];
+    try (FileInputStream in = new FileInputStream(file)) {
+      StreamUtils.readFully(in, data);
+    }
+    return data;
+  }
+  
+  @Test
+  public void fileToStream() throws IOException {
+    byte[] data = data(3 * StreamUtils.BUFFER_SIZE + 17);
+    File src = file(data);
+    try (FileInputStream in = new FileInputStream(src)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      TestCase.assertEquals(data.length, StreamUtils.copy(in, out));
+      TestCase.assertTrue(Arrays.equals(data, out.toByteArray()));
+    } finally {
+      src.delete();
+    }
+  }
+  
+  @Test
+  public void streamToFile() throws IOException {
+    byte[] data = data(3 * StreamUtils.BUFFER_SIZE + 17);
+    File dst = File.createTempFile("StreamUtilsTest", ".tmp");
+    try {
+      try (FileOutputStream out = new FileOutputStream(dst)) {
+        TestCase.assertEquals(data.length, StreamUtils.copy(
+            new ByteArrayInputStream(data), out));
+      }
+      TestCase.assertTrue(Arrays.equals(data, read(dst)));
+    } finally {
+      dst.delete();
+    }
+  }
+  
+  @Test
+  public void fileToFile() throws IOException {
+    byte[] data = data(3 * StreamUtils.BUFFER_SIZE + 17);
+    int offset = 100;
+    long length = 2L * StreamUtils.BUFFER_SIZE + 3L;
+    
+    File src = file(data);
+    File dst = File.createTempFile("StreamUtilsTest", ".tmp");
+    try {
+      try (FileInputStream in = new FileInputStream(src);
+          FileOutputStream out = new FileOutputStream(dst)) {
+        TestCase.assertEquals(offset, in.skip(offset));
+        TestCase.assertEquals(length, StreamUtils.copy(in, out, length));
+        
+        // The position of both streams must have been advanced
+        TestCase.assertEquals(offset + length, in.getChannel().position());
+        TestCase.assertEquals(length, out.getChannel().position());
+        TestCase.assertEquals(data[offset + (int)length], (byte)in.read());
+      }
+      
+      TestCase.assertTrue(Arrays.equals(Arrays.copyOfRange(
+          data, offset, offset + (int)length), read(dst)));
+    } finally {
+      src.delete();
+      dst.delete();
+    }
+  }
+  
+  @Test
+  public void eof() throws IOException {
+    byte[] data = data(1000);
+    File src = file(data);
+    File dst = File.createTempFile("StreamUtilsTest", ".tmp");
+    try {
+      // file -> file
+      try (FileInputStream in = new FileInputStream(src);
+          FileOutputStream out = new FileOutputStream(dst)) {
+        StreamUtils.copy(in, out, data.length + 1L);
+        TestCase.fail("Should have failed!");
+      } catch (EOFException expected) {
+      }
+      
+      // file -> stream
+      try (FileInputStream in = new FileInputStream(src)) {
+        StreamUtils.copy(in, new ByteArrayOutputStream(), data.length + 1L);
+        TestCase.fail("Should have failed!");
+      } catch (EOFException expected) {
+      }
+      
+      // stream -> file
+      try (FileOutputStream out = new FileOutputStream(dst)) {
+        StreamUtils.copy(new ByteArrayInputStream(data), out, data.length + 1L);
+        TestCase.fail("Should have failed!");
+      } catch (EOFException expected) {
+      }
+      
+      // Exactly the available number of bytes is fine
+      try (FileInputStream in = new FileInputStream(src);
+          FileOutputStream out = new FileOutputStream(dst)) {
+        TestCase.assertEquals(data.length,
+            StreamUtils.copy(in, out, (long)data.length));
+      }
+      TestCase.assertTrue(Arrays.equals(data, read(dst)));
+    } finally {
+      src.delete();
+      dst.delete();
+    }
+  }
+  
+  @Test
+  public void zeroSize() throws IOException {
+    // Files in procfs report a size of 0 but they're not empty
+    File src = new File("/proc/self/status");
+    if (!src.canRead()) {
+      return;
+    }
+    
+    File dst = File.createTempFile("StreamUtilsTest", ".tmp");
+    try {
+      try (FileInputStream in = new FileInputStream(src);
+          FileOutputStream out = new FileOutputStream(dst)) {
+        TestCase.assertEquals(0L, in.getChannel().size());
+        
+        long count = StreamUtils.copy(in, out);
+        TestCase.assertTrue(0L < count);
+        TestCase.assertEquals(count, dst.length());
+      }
+      
+      try (FileInputStream in = new FileInputStream(src);
+          FileOutputStream out = new FileOutputStream(dst)) {
+        TestCase.assertEquals(10L, StreamUtils.copy(in, out, 10L));
+        TestCase.assertEquals(10L, dst.length());
+      }
+      
+      try (FileInputStream in = new FileInputStream(src)) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        long count = StreamUtils.copy(in.getChannel(), 
+            Channels.newChannel(baos), -1L);
+        TestCase.assertTrue(0L < count);
+        TestCase.assertEquals(count, baos.size());
+      }
+    } finally {
+      dst.delete();
+    }
+  }
+  
+  @Test
+  public void channels() throws IOException {
+    byte[] data = data(3 * StreamUtils.BUFFER_SIZE + 17);
+    int offset = 100;
+    long length = 2L * StreamUtils.BUFFER_SIZE + 3L;
+    byte[] slice = Arrays.copyOfRange(data, offset, offset + (int)length);
+    
+    File src = file(data);
+    File dst = File.createTempFile("StreamUtilsTest", ".tmp");
+    try {
+      // file -> channel
+      try (FileInputStream in = new FileInputStream(src)) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TestCase.assertEquals(offset, in.skip(offset));
+        TestCase.assertEquals(length, StreamUtils.copy(
+            in, Channels.newChannel(out), length));
+        TestCase.assertEquals(offset + length, in.getChannel().position());
+        TestCase.assertTrue(Arrays.equals(slice, out.toByteArray()));
+      }
+      
+      // channel -> file
+      try (FileOutputStream out = new FileOutputStream(dst)) {
+        TestCase.assertEquals(data.length, StreamUtils.copy(
+            Channels.newChannel(new ByteArrayInputStream(data)), out, -1L));
+        TestCase.assertEquals(data.length, out.getChannel().position());
+      }
+      TestCase.assertTrue(Arrays.equals(data, read(dst)));
+      
+      // file channel -> file channel
+      try (RandomAccessFile in = new RandomAccessFile(src, "r");
+          RandomAccessFile out = new RandomAccessFile(dst, "rw")) {
+        out.setLength(0L);
+        
+        FileChannel channel = in.getChannel();
+        channel.position(offset);
+        TestCase.assertEquals(length, StreamUtils.copy(
+            channel, out.getChannel(), length));
+        TestCase.assertEquals(offset + length, channel.position());
+        TestCase.assertEquals(length, out.getChannel().position());
+      }
+      TestCase.assertTrue(Arrays.equals(slice, read(dst)));
+      
+      // channel -> channel
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      TestCase.assertEquals(length, StreamUtils.copy(
+          Channels.newChannel(new ByteArrayInputStream(slice)), 
+          Channels.newChannel(out), -1L));
+      TestCase.assertTrue(Arrays.equals(slice, out.toByteArray()));
+      
+      try {
+        StreamUtils.copy(Channels.newChannel(new ByteArrayInputStream(data)),
+            Channels.newChannel(new ByteArrayOutputStream()), 
+            data.length + 1L);
+        TestCase.fail("Should have failed!");
+      } catch (EOFException expected) {
+      }
+    } finally {
+      src.delete();
+      dst.delete();
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+  
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1L);
+  
+  /**
+   * A {@link TokenBucket.Clock} that only moves when sleeping.
+   */
+  private static class ManualClock implements TokenBucket.Clock {
+    
+    private long time = 0L;
+    
+    @Override
+    public long nanoTime() {
+      return time;
+    }
+    
+    @Override
+    public void sleep(long nanos) {
+      time += nanos;
+    }
+  }
+  
+  @Test
+  public void reserve() {
+    ManualClock clock = new ManualClock();
+    TokenBucket bucket = new TokenBucket(null, 1000L, 100L, clock);
+    
+    TestCase.assertEquals(100L, bucket.getAvailable());
+    TestCase.assertEquals(0L, bucket.reserve(100));
+    TestCase.assertEquals(0L, bucket.getAvailable());
+    
+    // Reservations queue up behind each other
+    TestCase.assertEquals(100L * MILLIS, bucket.reserve(100));
+    TestCase.assertEquals(200L * MILLIS, bucket.reserve(100));
+    
+    clock.sleep(1000L * MILLIS);
+    TestCase.assertEquals(100L, bucket.getAvailable());
+    
+    bucket.setRate(10000L);
+    TestCase.assertEquals(0L, bucket.reserve(100));
+    TestCase.assertEquals(10L * MILLIS, bucket.reserve(100));
+  }
+  
+  @Test
+  public void hierarchy() {
+    ManualClock clock = new ManualClock();
+    TokenBucket global = new TokenBucket(null, 1000L, 100L, clock);
+    TokenBucket peer = new TokenBucket(global, 100000L, 1000L);
+    TokenBucket stream = new TokenBucket(peer, 100000L, 1000L);
+    
+    TestCase.assertEquals(0L, stream.reserve(100));
+    
+    // The global bucket is the bottleneck
+    TestCase.assertEquals(100L * MILLIS, stream.reserve(100));
+    TestCase.assertEquals(200L * MILLIS, peer.reserve(100));
+  }
+  
+  @Test
+  public void stream() throws IOException {
+    ManualClock clock = new ManualClock();
+    TokenBucket bucket = new TokenBucket(null, 1000L, 100L, clock);
+    
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    OutputStream out = new ThrottledOutputStream(baos, bucket);
+    out.write(new byte[1000]);
+    out.close();
+    
+    TestCase.assertEquals(1000, baos.size());
+    TestCase.assertEquals(900L * MILLIS, clock.nanoTime());
+    
+    clock = new ManualClock();
+    bucket = new TokenBucket(null, 1000L, 100L, clock);
+    
+    InputStream in = new ThrottledInputStream(
+        new ByteArrayInputStream(new byte[1000]), bucket);
+    StreamUtils.readFully(in, new byte[1000]);
+    TestCase.assertEquals(-1, in.read());
+    in.close();
+    
+    TestCase.assertEquals(900L * MILLIS, clock.nanoTime());
+  }
+  
+  @Test
+  public void channels() throws IOException {
+    ManualClock clock = new ManualClock();
+    TokenBucket bucket = new TokenBucket(null, 1000L, 100L, clock);
+    
+    File file = File.createTempFile("TokenBucketTest", ".tmp");
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      FileChannel channel = raf.getChannel();
+      
+      WritableByteChannel out 
+        = ThrottledChannels.newWritableChannel(channel, bucket);
+      TestCase.assertEquals(1000, out.write(ByteBuffer.allocate(1000)));
+      
+      TestCase.assertEquals(1000L, channel.size());
+      TestCase.assertEquals(900L * MILLIS, clock.nanoTime());
+      
+      channel.position(0L);
+      
+      ReadableByteChannel in 
+        = ThrottledChannels.newReadableChannel(channel, bucket);
+      ByteBuffer dst = ByteBuffer.allocate(2000);
+      while (in.read(dst) != -1) {
+        TestCase.assertTrue(dst.position() <= 1000);
+      }
+      
+      TestCase.assertEquals(1000, dst.position());
+      TestCase.assertEquals(1900L * MILLIS, clock.nanoTime());
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.io;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TransferMeterTest {
+  
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1L);
+  
+  @Test
+  public void rate() {
+    TransferMeter meter = new TransferMeter();
+    long time = System.nanoTime();
+    
+    // 1000 bytes every 100ms are 10KB/s. The timestamps are in the
+    // future so the rate doesn't decay while the test is running.
+    for (int i = 0; i < 100; i++) {
+      meter.record(1000, time, time + 10L * MILLIS);
+      time += 100L * MILLIS;
+    }
+    
+    TestCase.assertEquals(100000L, meter.getTotal());
+    TestCase.assertEquals(100L, meter.getCalls());
+    TestCase.assertEquals(1000d, meter.getAverageCallSize(), 0d);
+    TestCase.assertEquals(10000d, meter.getRate(), 100d);
+    
+    // Calls that transfer nothing pull the rate down
+    for (int i = 0; i < 60; i++) {
+      meter.record(0, time, time);
+      time += 100L * MILLIS;
+    }
+    
+    TestCase.assertEquals(100000L, meter.getTotal());
+    TestCase.assertEquals(160L, meter.getCalls());
+    TestCase.assertEquals(60L, meter.getHistogram()[0]);
+    TestCase.assertTrue(meter.getRate() < 100d);
+  }
+  
+  @Test
+  public void decay() throws InterruptedException {
+    TransferMeter meter = new TransferMeter(10L, TimeUnit.MILLISECONDS);
+    long time = System.nanoTime() + 500L * MILLIS;
+    
+    for (int i = 0; i < 10; i++) {
+      time += 10L * MILLIS;
+      meter.record(1000, time - MILLIS, time);
+    }
+    
+    double rate = meter.getRate();
+    TestCase.assertTrue(50000d < rate);
+    
+    // The rate decays while the transfer is idle
+    Thread.sleep(1000L);
+    TestCase.assertTrue(meter.getRate() < rate / 100d);
+  }
+  
+  @Test
+  public void blocked() {
+    TransferMeter meter = new TransferMeter();
+    long time = System.nanoTime();
+    
+    meter.record(100, time, time + 5L * MILLIS);
+    meter.record(100, time + 20L * MILLIS, time + 30L * MILLIS);
+    meter.record(0, time + 30L * MILLIS, time + 30L * MILLIS);
+    
+    TestCase.assertEquals(15L, meter.getBlockedTime(TimeUnit.MILLISECONDS));
+    TestCase.assertEquals(15000L,
+        meter.getBlockedTime(TimeUnit.MICROSECONDS));
+    TestCase.assertEquals(3L, meter.getCalls());
+  }
+  
+  @Test
+  public void histogram() {
+    TransferMeter meter = new TransferMeter();
+    long time = System.nanoTime();
+    
+    for (int count : new int[] { 0, 1, 2, 3, 4, 1023, 1024 }) {
+      meter.record(count, time, time);
+    }
+    
+    long[] histogram = meter.getHistogram();
+    TestCase.assertEquals(Integer.SIZE, histogram.length);
+    TestCase.assertEquals(1L, histogram[0]);
+    TestCase.assertEquals(1L, histogram[1]);
+    TestCase.assertEquals(2L, histogram[2]);
+    TestCase.assertEquals(1L, histogram[3]);
+    TestCase.assertEquals(1L, histogram[10]);
+    TestCase.assertEquals(1L, histogram[11]);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.ardverk.net.AddressResolver.ResolveListener;
+import org.junit.Test;
+
+public class AddressResolverTest {
+
+  private static final Executor DIRECT = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  private static class LocalResolver implements Resolver {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public InetAddress resolve(String host) throws UnknownHostException {
+      count.incrementAndGet();
+      if (host.equals("unknown")) {
+        throw new UnknownHostException(host);
+      }
+      return InetAddress.getByAddress(host, new byte[] { 10, 0, 0, 1 });
+    }
+  }
+
+  @Test
+  public void cache() throws Exception {
+    LocalResolver resolver = new LocalResolver();
+    AddressResolver cache = new AddressResolver(resolver, DIRECT,
+        16, 1L, 1L, TimeUnit.MINUTES);
+
+    InetSocketAddress a = cache.resolve("example", 1000).get();
+    InetSocketAddress b = cache.resolve("example", 2000).get();
+
+    TestCase.assertEquals(1000, a.getPort());
+    TestCase.assertEquals(2000, b.getPort());
+    TestCase.assertEquals(a.getAddress(), b.getAddress());
+    TestCase.assertEquals(1, resolver.count.get());
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.resolve("unknown", 1000).get();
+        TestCase.fail("Should have failed!");
+      } catch (ExecutionException expected) {
+        TestCase.assertTrue(expected.getCause() instanceof UnknownHostException);
+      }
+    }
+
+    TestCase.assertEquals(2, resolver.count.get());
+  }
+
+  @Test
+  public void resolveAll() throws Exception {
+    LocalResolver resolver = new LocalResolver();
+    AddressResolver cache = new AddressResolver(resolver);
+
+    List<Future<InetSocketAddress>> futures = cache.resolveAll(Arrays.asList(
+        NetworkUtils.createUnresolved("one", 1),
+        NetworkUtils.createUnresolved("two", 2),
+        NetworkUtils.createUnresolved("one", 3)));
+
+    TestCase.assertEquals(3, futures.size());
+    TestCase.assertEquals(3, futures.get(2).get(1L, TimeUnit.SECONDS).getPort());
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    cache.resolve("two", 4, new ResolveListener() {
+      @Override
+      public void resolved(InetSocketAddress address) {
+        latch.countDown();
+      }
+
+      @Override
+      public void failed(InetSocketAddress address, Throwable t) {
+      }
+    });
+
+    TestCase.assertTrue(latch.await(1L, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void executor() throws Exception {
+    final AtomicInteger executed = new AtomicInteger();
+    Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        executed.incrementAndGet();
+        command.run();
+      }
+    };
+
+    AddressResolver cache = new AddressResolver(
+        new LocalResolver(), executor);
+    TestCase.assertEquals(1000, cache.resolve("example", 1000).get(
+        1L, TimeUnit.SECONDS).getPort());
+    TestCase.assertEquals(1, executed.get());
+
+    // Resolved addresses don't need a lookup
+    InetSocketAddress address = new InetSocketAddress(
+        InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 }), 2000);
+    TestCase.assertSame(address, cache.resolve(address).get());
+    TestCase.assertEquals(1, executed.get());
+  }
+
+  @Test
+  public void unsupported() {
+    AddressResolver cache = new AddressResolver(new LocalResolver(), DIRECT);
+
+    try {
+      cache.resolve(new SocketAddress() {
+        private static final long serialVersionUID = 1L;
+      });
+      TestCase.fail("Should have failed!");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class AddressTrackerTest {
+
+  private static InetAddress address(int a, int b, int c, int d) {
+    return NetworkUtils.getByAddress(new byte[] {
+        (byte)a, (byte)b, (byte)c, (byte)d });
+  }
+
+  @Test
+  public void quorum() {
+    InetAddress a = address(1, 1, 1, 1);
+    InetAddress b = address(2, 2, 2, 2);
+
+    AddressTracker tracker = new AddressTracker(NetworkMask.C, 3);
+
+    TestCase.assertTrue(tracker.set(address(10, 0, 0, 1), a));
+
+    // The same network can't vote twice
+    TestCase.assertFalse(tracker.set(address(10, 0, 0, 2), a));
+
+    // A conflicting vote doesn't discard the votes for a
+    TestCase.assertTrue(tracker.set(address(10, 0, 1, 1), b));
+    TestCase.assertTrue(tracker.set(address(10, 0, 2, 1), a));
+
+    TestCase.assertEquals(2, tracker.getVotes(a));
+    TestCase.assertEquals(1, tracker.getVotes(b));
+    TestCase.assertNull(tracker.get());
+
+    TestCase.assertTrue(tracker.set(address(10, 0, 3, 1), a));
+    TestCase.assertEquals(a, tracker.get());
+    TestCase.assertEquals(0, tracker.getVotes(b));
+  }
+
+  @Test
+  public void reset() throws InterruptedException {
+    final InetAddress a = address(1, 1, 1, 1);
+    final InetAddress b = address(2, 2, 2, 2);
+
+    final AddressTracker tracker = new AddressTracker(NetworkMask.C, 2);
+    final AtomicInteger networks = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+
+    Thread[] voters = new Thread[4];
+    for (int i = 0; i < voters.length; i++) {
+      voters[i] = new Thread() {
+        @Override
+        public void run() {
+          while (latch.getCount() != 0L) {
+            int network = networks.incrementAndGet();
+            tracker.set(address(10, network >>> 8, network, 1), a);
+          }
+        }
+      };
+      voters[i].start();
+    }
+
+    try {
+      for (int i = 0; i < 10000; i++) {
+        tracker.set(b);
+        if (i % 100 == 0) {
+          Thread.yield();
+        }
+      }
+    } finally {
+      latch.countDown();
+    }
+
+    for (Thread voter : voters) {
+      voter.join();
+    }
+
+    // No stale round can change the outcome once the voters are gone
+    tracker.set(b);
+    TestCase.assertEquals(b, tracker.get());
+    TestCase.assertEquals(0, tracker.getCandidateCount());
+    TestCase.assertEquals(0, tracker.getVotes(a));
+
+    TestCase.assertTrue(tracker.set(address(10, 1, 0, 1), a));
+    TestCase.assertEquals(b, tracker.get());
+    TestCase.assertTrue(tracker.set(address(10, 2, 0, 1), a));
+    TestCase.assertEquals(a, tracker.get());
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class DatagramReactorTest {
+  
+  @Test
+  public void receive() throws IOException, InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(2);
+    final AtomicInteger sum = new AtomicInteger();
+    
+    DatagramHandler handler = new DatagramHandler() {
+      @Override
+      public void handle(DatagramReactor reactor, SocketAddress src,
+          ByteBuffer packet) {
+        sum.addAndGet(packet.get());
+        latch.countDown();
+      }
+    };
+    
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    DatagramReactor reactor = new DatagramReactor(handler, executor, 4, 1024);
+    reactor.addFilter(new DatagramFilter() {
+      @Override
+      public boolean accept(SocketAddress src, ByteBuffer packet) {
+        return packet.get() != 0;
+      }
+    });
+    
+    InetAddress loopback = InetAddress.getByName("127.0.0.1");
+    reactor.bind(new InetSocketAddress(loopback, 0));
+    
+    try (DatagramSocket socket = new DatagramSocket()) {
+      SocketAddress dst = reactor.getLocalAddress();
+      for (byte value : new byte[] { 0, 1, 2 }) {
+        socket.send(new DatagramPacket(new byte[] { value }, 1, dst));
+      }
+      
+      TestCase.assertTrue(latch.await(5L, TimeUnit.SECONDS));
+      TestCase.assertEquals(3, sum.get());
+      TestCase.assertTrue(awaitRejected(reactor, 1L));
+      TestCase.assertEquals(3L, reactor.getReceived());
+    } finally {
+      reactor.close();
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void filterException() throws IOException, InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    
+    DatagramHandler handler = new DatagramHandler() {
+      @Override
+      public void handle(DatagramReactor reactor, SocketAddress src,
+          ByteBuffer packet) {
+        latch.countDown();
+      }
+    };
+    
+    // The receive thread must survive the exception
+    DatagramReactor reactor = new DatagramReactor(handler, null, 4, 1024);
+    reactor.addFilter(new DatagramFilter() {
+      @Override
+      public boolean accept(SocketAddress src, ByteBuffer packet) {
+        return packet.get() != 0;
+      }
+    });
+    
+    InetAddress loopback = InetAddress.getByName("127.0.0.1");
+    reactor.bind(new InetSocketAddress(loopback, 0));
+    
+    try (DatagramSocket socket = new DatagramSocket()) {
+      SocketAddress dst = reactor.getLocalAddress();
+      socket.send(new DatagramPacket(new byte[0], 0, dst));
+      
+      TestCase.assertTrue(awaitRejected(reactor, 1L));
+      
+      socket.send(new DatagramPacket(new byte[] { 1 }, 1, dst));
+      
+      TestCase.assertTrue(latch.await(5L, TimeUnit.SECONDS));
+      TestCase.assertEquals(1L, reactor.getRejected());
+    } finally {
+      reactor.close();
+    }
+  }
+  
+  /**
+   * Waits for the given number of rejected datagrams.
+   */
+  private static boolean awaitRejected(DatagramReactor reactor, 
+      long expected) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + 5000L;
+    while (reactor.getRejected() < expected 
+        && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10L);
+    }
+    return reactor.getRejected() == expected;
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.ardverk.io.DataUtils;
+import org.ardverk.utils.ManagementUtils;
+import org.junit.Test;
+
+public class NetworkCounterTest {
+
+  @Test
+  public void snapshot() throws IOException {
+    NetworkCounter counter = new NetworkCounter(NetworkMask.C);
+    for (int i = 0; i < 1000; i++) {
+      counter.add(new byte[] { 10, (byte)(i % 7), (byte)i, 1 });
+    }
+    counter.add(new byte[16]);
+
+    File file = File.createTempFile("NetworkCounterTest", ".bin");
+    try {
+      counter.store(file);
+
+      NetworkCounter restored = new NetworkCounter(NetworkMask.C);
+      TestCase.assertEquals(counter.size(), restored.load(file));
+      TestCase.assertEquals(counter.toString(), restored.toString());
+
+      // Loading it again adds up the counts
+      restored.load(file);
+      TestCase.assertEquals(2 * counter.get(new byte[] { 10, 0, 0, 1 }),
+          restored.get(new byte[] { 10, 0, 0, 1 }));
+
+      try {
+        new NetworkCounter(NetworkMask.B).load(file);
+        TestCase.fail("Should have failed!");
+      } catch (IOException expected) {}
+
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void serialize() throws IOException, ClassNotFoundException {
+    NetworkCounter counter = new NetworkCounter(NetworkMask.C);
+    counter.add(new byte[] { 10, 0, 0, 1 });
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+      out.writeObject(counter);
+    }
+
+    NetworkCounter copy = null;
+    try (ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(baos.toByteArray()))) {
+      copy = (NetworkCounter)in.readObject();
+    }
+
+    TestCase.assertEquals(counter.toString(), copy.toString());
+    TestCase.assertEquals(0L, copy.getAdded());
+
+    TestCase.assertEquals(2, copy.add(new byte[] { 10, 0, 0, 2 }));
+    TestCase.assertEquals(1L, copy.getAdded());
+  }
+
+  @Test
+  public void corrupt() throws IOException {
+    NetworkCounter counter = new NetworkCounter(NetworkMask.C);
+    for (int i = 0; i < 10; i++) {
+      counter.add(new byte[] { 10, 0, (byte)i, 1 });
+    }
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    counter.writeTo(baos);
+    byte[] snapshot = baos.toByteArray();
+
+    // Truncated snapshots
+    for (int i = 0; i < snapshot.length; i++) {
+      try {
+        new NetworkCounter(NetworkMask.C).readFrom(
+            ByteBuffer.wrap(snapshot, 0, i));
+        TestCase.fail("Should have failed!");
+      } catch (IOException expected) {}
+    }
+
+    // A huge number of networks (magic, mask length, mask, size)
+    baos.reset();
+    baos.write(snapshot, 0, 6);
+    DataUtils.int2vbeb(Integer.MAX_VALUE, baos);
+    baos.write(snapshot, 7, snapshot.length - 7);
+
+    try {
+      new NetworkCounter(NetworkMask.C).readFrom(
+          ByteBuffer.wrap(baos.toByteArray()));
+      TestCase.fail("Should have failed!");
+    } catch (IOException expected) {}
+  }
+
+  @Test
+  public void statistics() throws JMException {
+    NetworkCounter counter = new NetworkCounter(NetworkMask.C);
+    for (int i = 0; i < 10; i++) {
+      for (int j = 0; j <= i; j++) {
+        counter.add(new byte[] { 10, 0, (byte)i, (byte)j });
+      }
+    }
+    counter.remove(new byte[] { 10, 0, 9, 1 });
+
+    NetworkCounter.Statistics statistics = counter.getStatistics();
+    TestCase.assertEquals(10, statistics.getNetworkCount());
+    TestCase.assertEquals(54L, statistics.getAddressCount());
+    TestCase.assertEquals(9, statistics.getMaxCount());
+    TestCase.assertEquals(55L, statistics.getAdded());
+    TestCase.assertEquals(1L, statistics.getRemoved());
+    TestCase.assertEquals(1, statistics.getPercentile(0.0));
+    TestCase.assertEquals(5, statistics.getPercentile(50.0));
+    TestCase.assertEquals(9, statistics.getPercentile(90.0));
+
+    ObjectName name = ManagementUtils.register(
+        counter, "NetworkCounter", "test");
+    try {
+      TestCase.assertEquals(9, ManagementFactory.getPlatformMBeanServer()
+          .getAttribute(name, "MaxCount"));
+    } finally {
+      ManagementUtils.unregister(name);
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class NetworkSelectorTest {
+
+  private static InetAddress address(int a, int b, int c, int d) {
+    return NetworkUtils.getByAddress(new byte[] {
+        (byte)a, (byte)b, (byte)c, (byte)d });
+  }
+
+  @Test
+  public void select() {
+    InetAddress a1 = address(10, 0, 0, 1);
+    InetAddress a2 = address(10, 0, 0, 2);
+    InetAddress a3 = address(10, 0, 0, 3);
+    InetAddress b1 = address(10, 0, 1, 1);
+    InetAddress c1 = address(10, 0, 2, 1);
+    InetAddress c2 = address(10, 0, 2, 2);
+
+    List<InetAddress> candidates = Arrays.asList(a1, a2, a3, b1, c1, c2);
+
+    TestCase.assertEquals(Arrays.asList(a1, b1, c1),
+        NetworkSelector.selectInetAddresses(candidates, NetworkMask.C, 3));
+
+    TestCase.assertEquals(Arrays.asList(a1, a2, b1, c1),
+        NetworkSelector.selectInetAddresses(candidates, NetworkMask.C, 4));
+
+    TestCase.assertEquals(Arrays.asList(a1, a2, b1, c1, c2),
+        NetworkSelector.selectInetAddresses(candidates, NetworkMask.C, 5));
+
+    TestCase.assertEquals(Arrays.asList(a1, a2),
+        NetworkSelector.selectInetAddresses(candidates, NetworkMask.B, 2));
+
+    TestCase.assertEquals(candidates,
+        NetworkSelector.selectInetAddresses(candidates, NetworkMask.C, 10));
+  }
+
+  @Test
+  public void ipv6() {
+    byte[] address = new byte[16];
+    address[0] = 0x20;
+    address[1] = 0x01;
+
+    // Two /64 networks with two hosts each
+    InetAddress[] addresses = new InetAddress[4];
+    for (int i = 0; i < addresses.length; i++) {
+      address[7] = (byte)(i / 2);
+      address[15] = (byte)(i % 2 + 1);
+      addresses[i] = NetworkUtils.getByAddress(address.clone());
+    }
+
+    NetworkMask mask = new NetworkMask(new byte[] {
+        -1, -1, -1, -1, -1, -1, -1, -1, 0, 0, 0, 0, 0, 0, 0, 0 });
+
+    List<InetAddress> candidates = Arrays.asList(addresses);
+    TestCase.assertEquals(Arrays.asList(addresses[0], addresses[2]),
+        NetworkSelector.selectInetAddresses(candidates, mask, 2));
+
+    // The same as NetworkMask's notion of a network
+    TestCase.assertTrue(mask.isSameNetwork(addresses[0], addresses[1]));
+    TestCase.assertFalse(mask.isSameNetwork(addresses[0], addresses[2]));
+  }
+
+  @Test
+  public void noAddress() {
+    NetworkSelector.AddressProvider<String> provider
+        = new NetworkSelector.AddressProvider<String>() {
+      @Override
+      public InetAddress getAddress(String value) {
+        return value.isEmpty() ? null : address(10, 0, 0, 1);
+      }
+    };
+
+    try {
+      NetworkSelector.select(Arrays.asList("a", "", "b"),
+          provider, NetworkMask.C, 2);
+      TestCase.fail("Should have failed!");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2010-2012 Roger Kapsi
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package org.ardverk.net;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class PortAllocatorTest {
+
+  @Test
+  public void lease() {
+    PortRange range = PortRange.valueOf(1024, 1124);
+    PortAllocator allocator = new PortAllocator(range, new Random());
+
+    Set<Integer> ports = new HashSet<Integer>();
+    for (int i = 0; i < range.size(); i++) {
+      int port = allocator.lease();
+      TestCase.assertTrue(range.contains(port));
+      TestCase.assertTrue(ports.add(port));
+      TestCase.assertTrue(allocator.isLeased(port));
+    }
+
+    TestCase.assertEquals(PortAllocator.NONE, allocator.lease());
+    TestCase.assertEquals(range.size(), allocator.getLeased());
+
+    TestCase.assertTrue(allocator.release(1050));
+    TestCase.assertFalse(allocator.release(1050));
+    TestCase.assertEquals(1050, allocator.lease());
+  }
+
+  @Test
+  public void batch() {
+    PortRange range = PortRange.valueOf(2000, 2009);
+    PortAllocator allocator = new PortAllocator(range, new Random());
+
+    TestCase.assertTrue(allocator.lease(2005));
+
+    int[] ports = new int[20];
+    TestCase.assertEquals(9, allocator.lease(ports));
+    TestCase.assertEquals(0, allocator.getAvailable());
+
+    TestCase.assertEquals(9, allocator.release(ports, 0, 9));
+    TestCase.assertEquals(1, allocator.getLeased());
+  }
+}